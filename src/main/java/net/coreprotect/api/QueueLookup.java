@@ -3,16 +3,15 @@ package net.coreprotect.api;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.ListIterator;
-import java.util.Map;
 
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.block.Block;
-import org.bukkit.block.BlockState;
 
 import net.coreprotect.config.Config;
 import net.coreprotect.consumer.Consumer;
+import net.coreprotect.consumer.ConsumerBuffer;
+import net.coreprotect.consumer.ConsumerEvent;
 import net.coreprotect.consumer.Queue;
 import net.coreprotect.consumer.process.Process;
 import net.coreprotect.utility.MaterialUtils;
@@ -61,42 +60,40 @@ public class QueueLookup extends Queue {
             }
 
             // Get data from the current consumer
-            int currentConsumer = Consumer.currentConsumer;
-            ArrayList<Object[]> consumerData = Consumer.consumer.get(currentConsumer);
-            Map<Integer, String[]> users = Consumer.consumerUsers.get(currentConsumer);
-            Map<Integer, Object> consumerObject = Consumer.consumerObjects.get(currentConsumer);
+            ConsumerBuffer consumerBuffer = Consumer.getBuffer(Consumer.currentConsumer);
+            int consumerDataSize = consumerBuffer.size();
 
             // Current block location for comparison with actions in the queue
             Location blockLocation = block.getLocation();
+            int blockWorldId = WorldUtils.getWorldId(blockLocation.getWorld().getName());
+            int blockX = blockLocation.getBlockX();
+            int blockY = blockLocation.getBlockY();
+            int blockZ = blockLocation.getBlockZ();
 
             // Check for block actions in the processing queue
-            ListIterator<Object[]> iterator = consumerData.listIterator();
-            while (iterator.hasNext()) {
-                Object[] data = iterator.next();
-                int id = (int) data[0];
-                int action = (int) data[1];
+            for (int i = 0; i < consumerDataSize; i++) {
+                ConsumerEvent event = consumerBuffer.get(i);
+                if (!event.ready) {
+                    // slot claimed by a listener, but not written yet
+                    continue;
+                }
+                int action = event.action;
 
                 // Only process block break and place actions
                 if (action != Process.BLOCK_BREAK && action != Process.BLOCK_PLACE) {
                     continue;
                 }
 
-                String[] userData = users.get(id);
-                Object objectData = consumerObject.get(id);
-
                 // Verify the action pertains to the requested block
-                if (isActionForBlock(userData, objectData, blockLocation)) {
-                    Material blockType = (Material) data[2];
-                    int legacyData = (int) data[3];
-                    String blockData = (String) data[7];
-                    String user = userData[0];
-                    BlockState blockState = (BlockState) objectData;
-                    Location location = blockState.getLocation();
-                    int worldId = WorldUtils.getWorldId(location.getWorld().getName());
+                String user = event.user;
+                Material blockType = event.type;
+                if (user != null && event.isAt(blockWorldId, blockX, blockY, blockZ)) {
+                    int legacyData = event.data;
+                    String blockData = event.blockData;
                     int resultType = MaterialUtils.getBlockId(blockType);
                     int time = (int) (System.currentTimeMillis() / 1000L);
 
-                    String[] lookupData = new String[] { String.valueOf(time), user, String.valueOf(location.getBlockX()), String.valueOf(location.getBlockY()), String.valueOf(location.getBlockZ()), String.valueOf(resultType), String.valueOf(legacyData), String.valueOf(action), "0", String.valueOf(worldId), blockData };
+                    String[] lookupData = new String[] { String.valueOf(time), user, String.valueOf(blockX), String.valueOf(blockY), String.valueOf(blockZ), String.valueOf(resultType), String.valueOf(legacyData), String.valueOf(action), "0", String.valueOf(blockWorldId), blockData };
 
                     result.add(StringUtils.toStringArray(lookupData));
                 }
@@ -127,19 +124,4 @@ public class QueueLookup extends Queue {
             return Consumer.getConsumerSize(consumerId) + currentConsumerSize;
         }
     }
-
-    /**
-     * Determines if an action in the queue pertains to the specified block location.
-     * 
-     * @param userData
-     *            User data associated with the action
-     * @param objectData
-     *            Object data associated with the action
-     * @param blockLocation
-     *            Location of the block being looked up
-     * @return true if the action pertains to the specified block, false otherwise
-     */
-    private static boolean isActionForBlock(String[] userData, Object objectData, Location blockLocation) {
-        return userData != null && objectData != null && (objectData instanceof BlockState) && ((BlockState) objectData).getLocation().equals(blockLocation);
-    }
 }
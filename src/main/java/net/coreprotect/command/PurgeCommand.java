@@ -5,6 +5,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
+import java.sql.Statement;
 import java.text.NumberFormat;
 import java.util.Arrays;
 import java.util.List;
@@ -22,9 +23,14 @@ import net.coreprotect.config.Config;
 import net.coreprotect.config.ConfigHandler;
 import net.coreprotect.consumer.Consumer;
 import net.coreprotect.database.Database;
+import net.coreprotect.database.SQLiteConnection;
+import net.coreprotect.database.SpatialIndex;
+import net.coreprotect.database.TablePartitions;
+import net.coreprotect.database.statement.MetaBlobStatement;
 import net.coreprotect.language.Phrase;
 import net.coreprotect.language.Selector;
 import net.coreprotect.patch.Patch;
+import net.coreprotect.thread.OnlinePurge;
 import net.coreprotect.utility.Chat;
 import net.coreprotect.utility.ChatMessage;
 import net.coreprotect.utility.Color;
@@ -56,7 +62,7 @@ public class PurgeCommand extends Consumer {
             Chat.sendMessage(player, Color.DARK_AQUA + "CoreProtect " + Color.WHITE + "- " + Phrase.build(Phrase.UPGRADE_IN_PROGRESS));
             return;
         }
-        if (ConfigHandler.purgeRunning) {
+        if (ConfigHandler.purgeRunning || OnlinePurge.isRunning()) {
             Chat.sendMessage(player, Color.DARK_AQUA + "CoreProtect " + Color.WHITE + "- " + Phrase.build(Phrase.PURGE_IN_PROGRESS));
             return;
         }
@@ -171,6 +177,22 @@ public class PurgeCommand extends Consumer {
             }
         }
 
+        if (!optimizeCheck) {
+            // purge without pausing the consumer, #optimize still rebuilds the tables
+            long timestamp = (System.currentTimeMillis() / 1000L);
+            if (!OnlinePurge.start(player, startTime > 0 ? (timestamp - startTime) : 0, timestamp - endTime, argWid, includeBlock)) {
+                Chat.sendMessage(player, Color.DARK_AQUA + "CoreProtect " + Color.WHITE + "- " + Phrase.build(Phrase.PURGE_IN_PROGRESS));
+                return;
+            }
+
+            Chat.sendGlobalMessage(player, Phrase.build(Phrase.PURGE_STARTED, argWid > 0 ? CommandParser.parseWorldName(args, false) : "#global"));
+            if (hasBlock) {
+                Chat.sendGlobalMessage(player, Phrase.build(Phrase.ROLLBACK_INCLUDE, restrict.toString(), Selector.FIRST, Selector.FIRST, (restrictCount == 1 ? Selector.FIRST : Selector.SECOND))); // include
+            }
+            Chat.sendGlobalMessage(player, Phrase.build(Phrase.PURGE_ONLINE));
+            return;
+        }
+
         final StringBuilder restrictTargets = restrict;
         final String includeBlockFinal = includeBlock;
         final boolean optimize = optimizeCheck;
@@ -275,6 +297,9 @@ public class PurgeCommand extends Consumer {
                             int columnCount = resultSetMetaData.getColumnCount();
                             for (int i = 1; i <= columnCount; i++) {
                                 String name = resultSetMetaData.getColumnName(i);
+                                if (name.equals(SpatialIndex.COLUMN)) {
+                                    continue; // generated by the database
+                                }
                                 if (columns.length() == 0) {
                                     columns = name;
                                 }
@@ -305,7 +330,7 @@ public class PurgeCommand extends Consumer {
                                             timeLimit = " WHERE " + blockRestriction + "(time >= '" + timeEnd + "' OR time < '" + timeStart + "'))";
                                         }
                                     }
-                                    query = "INSERT INTO " + purgePrefix + table + " SELECT " + columns + " FROM " + ConfigHandler.prefix + table + timeLimit;
+                                    query = "INSERT INTO " + purgePrefix + table + " (" + columns + ") SELECT " + columns + " FROM " + ConfigHandler.prefix + table + timeLimit;
                                     preparedStmt = connection.prepareStatement(query);
                                     preparedStmt.execute();
                                     preparedStmt.close();
@@ -342,7 +367,7 @@ public class PurgeCommand extends Consumer {
 
                                 try {
                                     String index = " NOT INDEXED";
-                                    query = "INSERT INTO " + purgePrefix + table + " SELECT " + columns + " FROM " + ConfigHandler.prefix + table + index;
+                                    query = "INSERT INTO " + purgePrefix + table + " (" + columns + ") SELECT " + columns + " FROM " + ConfigHandler.prefix + table + index;
                                     preparedStmt = connection.prepareStatement(query);
                                     preparedStmt.execute();
                                     preparedStmt.close();
@@ -439,6 +464,13 @@ public class PurgeCommand extends Consumer {
                                     purge = false;
                                 }
 
+                                if (purge && timeStart == 0 && argWid == 0 && !hasBlockRestriction && TablePartitions.isPartitioned(table)) {
+                                    // drop the months that are purged entirely, the remaining rows are deleted below
+                                    try (Statement statement = connection.createStatement()) {
+                                        removed = removed + TablePartitions.dropPartitions(statement, ConfigHandler.prefix, table, timeEnd);
+                                    }
+                                }
+
                                 if (purge) {
                                     query = "DELETE FROM " + ConfigHandler.prefix + table + " WHERE " + blockRestriction + "time < '" + timeEnd + "' AND time >= '" + timeStart + "'" + worldRestriction;
                                     preparedStmt = connection.prepareStatement(query);
@@ -458,9 +490,31 @@ public class PurgeCommand extends Consumer {
                         }
                     }
 
+                    if (!abort && timeStart == 0 && argWid == 0 && !hasBlockRestriction) {
+                        // remove the shared metadata only referenced by purged rows
+                        try {
+                            String blobPrefix = Config.getGlobal().MYSQL ? ConfigHandler.prefix : purgePrefix;
+                            while (MetaBlobStatement.purge(connection, blobPrefix, timeEnd) > 0) {
+                                // deleted in batches
+                            }
+                        }
+                        catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                    }
+
                     if (Config.getGlobal().MYSQL && optimize) {
                         Chat.sendGlobalMessage(player, Phrase.build(Phrase.PURGE_OPTIMIZING));
                         for (String table : ConfigHandler.databaseTables) {
+                            try (Statement statement = connection.createStatement()) {
+                                if (TablePartitions.isPending(statement, ConfigHandler.prefix, table)) {
+                                    // rebuilds the table, so it doesn't need to be optimized as well
+                                    Chat.sendGlobalMessage(player, Phrase.build(Phrase.PURGE_PARTITIONING, table.replaceAll("_", " ")));
+                                    TablePartitions.partition(statement, ConfigHandler.prefix, table);
+                                    continue;
+                                }
+                            }
+
                             query = "OPTIMIZE LOCAL TABLE " + ConfigHandler.prefix + table + "";
                             preparedStmt = connection.prepareStatement(query);
                             preparedStmt.execute();
@@ -482,6 +536,7 @@ public class PurgeCommand extends Consumer {
                     }
 
                     if (!Config.getGlobal().MYSQL) {
+                        SQLiteConnection.closeAll();
                         (new File(ConfigHandler.path + ConfigHandler.sqlite)).delete();
                         (new File(ConfigHandler.path + ConfigHandler.sqlite + ".tmp")).renameTo(new File(ConfigHandler.path + ConfigHandler.sqlite));
                     }
@@ -10,10 +10,13 @@ import net.coreprotect.CoreProtect;
 import net.coreprotect.config.Config;
 import net.coreprotect.config.ConfigHandler;
 import net.coreprotect.consumer.Consumer;
+import net.coreprotect.consumer.ConsumerSpill;
+import net.coreprotect.consumer.FlushPolicy;
 import net.coreprotect.consumer.process.Process;
 import net.coreprotect.language.Phrase;
 import net.coreprotect.language.Selector;
 import net.coreprotect.patch.Patch;
+import net.coreprotect.thread.CheckpointHandler;
 import net.coreprotect.thread.NetworkHandler;
 import net.coreprotect.utility.Chat;
 import net.coreprotect.utility.Color;
@@ -98,6 +101,28 @@ public class StatusCommand {
                         }
 
                         Chat.sendMessage(player, Color.DARK_AQUA + Phrase.build(Phrase.STATUS_CONSUMER, Color.WHITE, String.format("%,d", consumerCount), (consumerCount == 1 ? Selector.FIRST : Selector.SECOND)));
+
+                        long spilledEvents = ConsumerSpill.getSpilledEvents();
+                        if (spilledEvents > 0) {
+                            String spilledSize = String.format("%.2f", ConsumerSpill.getSpilledBytes() / (1024.0 * 1024.0));
+                            String drainTime = "-";
+                            double eventCost = FlushPolicy.getEventCost();
+                            if (eventCost > 0) {
+                                drainTime = String.format("%,d", (long) Math.ceil(((consumerCount + spilledEvents) * eventCost) / 1000.0)) + "s";
+                            }
+                            Chat.sendMessage(player, Color.DARK_AQUA + Phrase.build(Phrase.STATUS_SPILL, Color.WHITE, String.format("%,d", spilledEvents), spilledSize, drainTime, (spilledEvents == 1 ? Selector.FIRST : Selector.SECOND)));
+                        }
+
+                        int lastBatchSize = FlushPolicy.getLastBatchSize();
+                        if (lastBatchSize > 0) {
+                            Chat.sendMessage(player, Color.DARK_AQUA + Phrase.build(Phrase.STATUS_FLUSH, Color.WHITE, String.format("%,d", lastBatchSize), String.format("%,d", FlushPolicy.getLastCommitTime()), String.format("%,d", FlushPolicy.getAverageBatchSize()), String.format("%,d", FlushPolicy.getAverageCommitTime()), (lastBatchSize == 1 ? Selector.FIRST : Selector.SECOND)));
+                        }
+
+                        String checkpointMode = CheckpointHandler.getLastCheckpointMode();
+                        if (checkpointMode != null) {
+                            String walSize = String.format("%.2f", CheckpointHandler.getWalSize() / (1024.0 * 1024.0));
+                            Chat.sendMessage(player, Color.DARK_AQUA + Phrase.build(Phrase.STATUS_WAL, Color.WHITE, walSize, String.format("%,d", CheckpointHandler.getLastCheckpointDuration()), checkpointMode));
+                        }
                     }
                     catch (Exception e) {
                         e.printStackTrace();
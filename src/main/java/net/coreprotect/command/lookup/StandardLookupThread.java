@@ -5,6 +5,7 @@ import java.sql.Connection;
 import java.sql.Statement;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -169,6 +170,7 @@ public class StandardLookupThread implements Runnable {
                     }
 
                     Long[] rowData = new Long[] { 0L, 0L, 0L, 0L };
+                    Map<Integer, Long[]> pagePositions = new HashMap<>();
                     long rowMax = (long) page * displayResults;
                     long pageStart = rowMax - displayResults;
                     long rows = 0L;
@@ -177,6 +179,7 @@ public class StandardLookupThread implements Runnable {
                     if (typeLookup == 5 && page > 1) {
                         rowData = ConfigHandler.lookupRows.get(player.getName());
                         rows = rowData[3];
+                        pagePositions = ConfigHandler.lookupPositions.getOrDefault(player.getName(), pagePositions);
 
                         if (pageStart < rows) {
                             checkRows = false;
@@ -193,7 +196,16 @@ public class StandardLookupThread implements Runnable {
                         Chat.sendMessage(player, Color.DARK_AQUA + "CoreProtect " + Color.WHITE + "- " + Phrase.build(Phrase.LOOKUP_ROWS_FOUND, row_format, (rows == 1 ? Selector.FIRST : Selector.SECOND)));
                     }
                     else if (pageStart < rows) {
-                        List<String[]> lookupList = Lookup.performPartialLookup(statement, player, uuidList, userList, blockList, excludedBlocks, excludedUsers, actions, finalLocation, radius, rowData, timeStart, timeEnd, (int) pageStart, displayResults, restrict_world, true);
+                        // continue from where the previous page ended, rather than skipping over every earlier row
+                        Long[] pageData = new Long[] { 0L, 0L, 0L, rows, null };
+                        Long[] position = pagePositions.get(page - 1);
+                        if (position != null) {
+                            pageData = position.clone();
+                        }
+
+                        List<String[]> lookupList = Lookup.performPartialLookup(statement, player, uuidList, userList, blockList, excludedBlocks, excludedUsers, actions, finalLocation, radius, pageData, timeStart, timeEnd, (int) pageStart, displayResults, restrict_world, true);
+                        pagePositions.put(page, pageData);
+                        ConfigHandler.lookupPositions.put(player.getName(), pagePositions);
 
                         Chat.sendMessage(player, Color.WHITE + "----- " + Color.DARK_AQUA + Phrase.build(Phrase.LOOKUP_HEADER, "CoreProtect" + Color.WHITE + " | " + Color.DARK_AQUA) + Color.WHITE + " -----");
                         if (actions.contains(6) || actions.contains(7)) { // Chat/command
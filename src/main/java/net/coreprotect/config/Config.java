@@ -91,7 +91,24 @@ public class Config extends Language {
     public boolean BLOCK_DISPENSE;
     public boolean BLOCK_FERTILIZE;
     public boolean SHOW_INSPECTOR_STATUS;
+    public boolean CONSUMER_JOURNAL;
+    public boolean BLOCKDATA_REENCODE;
+    public boolean MYSQL_PARTITIONING;
     public int MAXIMUM_POOL_SIZE;
+    public int CONSUMER_MIN_INTERVAL;
+    public int CONSUMER_MAX_INTERVAL;
+    public int CONSUMER_MAX_AGE;
+    public int CONSUMER_MAX_BATCH;
+    public int CONSUMER_TARGET_LATENCY;
+    public int CONSUMER_JOURNAL_SIZE;
+    public int CONSUMER_MEMORY_BUDGET;
+    public int CONSUMER_SHARDS;
+    public int WAL_CHECKPOINT_INTERVAL;
+    public int WAL_TRUNCATE_SIZE;
+    public int METADATA_COMPRESSION_THRESHOLD;
+    public int ROLLBACK_TICK_BUDGET;
+    public int ROLLBACK_CHUNKS_IN_FLIGHT;
+    public int ROLLBACK_PREFETCH_CHUNKS;
     public int MYSQL_PORT;
     public int DEFAULT_RADIUS;
     public int MAX_RADIUS;
@@ -212,6 +229,23 @@ public class Config extends Language {
         this.NETWORK_DEBUG = this.getBoolean("network-debug", false);
         this.UNKNOWN_LOGGING = this.getBoolean("unknown-logging", false);
         this.MAXIMUM_POOL_SIZE = this.getInt("maximum-pool-size", 10);
+        this.CONSUMER_MIN_INTERVAL = this.getInt("consumer-min-interval", 50);
+        this.CONSUMER_MAX_INTERVAL = this.getInt("consumer-max-interval", 1000);
+        this.CONSUMER_MAX_AGE = this.getInt("consumer-max-age", 500);
+        this.CONSUMER_MAX_BATCH = this.getInt("consumer-max-batch", 20000);
+        this.CONSUMER_TARGET_LATENCY = this.getInt("consumer-target-latency", 250);
+        this.CONSUMER_JOURNAL = this.getBoolean("consumer-journal", false);
+        this.CONSUMER_JOURNAL_SIZE = this.getInt("consumer-journal-size", 64);
+        this.CONSUMER_MEMORY_BUDGET = this.getInt("consumer-memory-budget", 256);
+        this.CONSUMER_SHARDS = this.getInt("consumer-shards", 1);
+        this.WAL_CHECKPOINT_INTERVAL = this.getInt("wal-checkpoint-interval", 5);
+        this.WAL_TRUNCATE_SIZE = this.getInt("wal-truncate-size", 64);
+        this.BLOCKDATA_REENCODE = this.getBoolean("blockdata-reencode", false);
+        this.METADATA_COMPRESSION_THRESHOLD = this.getInt("metadata-compression-threshold", 1024);
+        this.MYSQL_PARTITIONING = this.getBoolean("mysql-partitioning", false);
+        this.ROLLBACK_TICK_BUDGET = this.getInt("rollback-tick-budget", 20);
+        this.ROLLBACK_CHUNKS_IN_FLIGHT = this.getInt("rollback-chunks-in-flight", 64);
+        this.ROLLBACK_PREFETCH_CHUNKS = this.getInt("rollback-prefetch-chunks", 16);
         this.DONATION_KEY = this.getString("donation-key");
         this.MYSQL = this.getBoolean("use-mysql");
         this.PREFIX = this.getString("table-prefix");
@@ -12,6 +12,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import org.bukkit.Bukkit;
 import org.bukkit.World;
@@ -91,7 +92,7 @@ public class ConfigHandler extends Queue {
     public static Map<Integer, String> entitiesReversed = syncMap();
     public static Map<String, Integer> art = syncMap();
     public static Map<Integer, String> artReversed = syncMap();
-    public static Map<String, int[]> rollbackHash = syncMap();
+    public static Map<String, AtomicIntegerArray> rollbackHash = syncMap();
     public static Map<String, Boolean> inspecting = syncMap();
     public static Map<String, Boolean> inspectBlocksOnly = syncMap();
     public static Map<String, Boolean> blacklist = syncMap();
@@ -127,6 +128,7 @@ public class ConfigHandler extends Queue {
     public static Map<String, Integer[]> lookupRadius = syncMap();
     public static Map<String, String> lookupTime = syncMap();
     public static Map<String, Long[]> lookupRows = syncMap();
+    public static Map<String, Map<Integer, Long[]>> lookupPositions = syncMap();
     public static Map<String, String> uuidCache = syncMap();
     public static Map<String, String> uuidCacheReversed = syncMap();
     public static Map<String, Integer> playerIdCache = syncMap();
@@ -254,7 +256,7 @@ public class ConfigHandler extends Queue {
             /* https://cdn.oreillystatic.com/en/assets/1/event/21/Connector_J%20Performance%20Gems%20Presentation.pdf */
             config.addDataSourceProperty("cachePrepStmts", "true");
             config.addDataSourceProperty("prepStmtCacheSize", "250");
-            config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+            config.addDataSourceProperty("prepStmtCacheSqlLimit", "8192");
             config.addDataSourceProperty("useServerPrepStmts", "true");
             config.addDataSourceProperty("useLocalSessionState", "true");
             config.addDataSourceProperty("rewriteBatchedStatements", "true");
@@ -274,71 +276,79 @@ public class ConfigHandler extends Queue {
         try {
             String query = "SELECT id,material FROM " + ConfigHandler.prefix + "material_map";
             ResultSet rs = statement.executeQuery(query);
-            ConfigHandler.materials.clear();
-            ConfigHandler.materialsReversed.clear();
-            materialId = 0;
-
-            while (rs.next()) {
-                int id = rs.getInt("id");
-                String material = rs.getString("material");
-                ConfigHandler.materials.put(material, id);
-                ConfigHandler.materialsReversed.put(id, material);
-                if (id > materialId) {
-                    materialId = id;
+            synchronized (ConfigHandler.materials) {
+                ConfigHandler.materials.clear();
+                ConfigHandler.materialsReversed.clear();
+                materialId = 0;
+
+                while (rs.next()) {
+                    int id = rs.getInt("id");
+                    String material = rs.getString("material");
+                    ConfigHandler.materials.put(material, id);
+                    ConfigHandler.materialsReversed.put(id, material);
+                    if (id > materialId) {
+                        materialId = id;
+                    }
                 }
+                rs.close();
             }
-            rs.close();
 
             query = "SELECT id,data FROM " + ConfigHandler.prefix + "blockdata_map";
             rs = statement.executeQuery(query);
-            ConfigHandler.blockdata.clear();
-            ConfigHandler.blockdataReversed.clear();
-            blockdataId = 0;
-
-            while (rs.next()) {
-                int id = rs.getInt("id");
-                String data = rs.getString("data");
-                ConfigHandler.blockdata.put(data, id);
-                ConfigHandler.blockdataReversed.put(id, data);
-                if (id > blockdataId) {
-                    blockdataId = id;
+            synchronized (ConfigHandler.blockdata) {
+                ConfigHandler.blockdata.clear();
+                ConfigHandler.blockdataReversed.clear();
+                blockdataId = 0;
+
+                while (rs.next()) {
+                    int id = rs.getInt("id");
+                    String data = rs.getString("data");
+                    ConfigHandler.blockdata.put(data, id);
+                    ConfigHandler.blockdataReversed.put(id, data);
+                    if (id > blockdataId) {
+                        blockdataId = id;
+                    }
                 }
+                rs.close();
             }
-            rs.close();
 
             query = "SELECT id,art FROM " + ConfigHandler.prefix + "art_map";
             rs = statement.executeQuery(query);
-            ConfigHandler.art.clear();
-            ConfigHandler.artReversed.clear();
-            artId = 0;
-
-            while (rs.next()) {
-                int id = rs.getInt("id");
-                String art = rs.getString("art");
-                ConfigHandler.art.put(art, id);
-                ConfigHandler.artReversed.put(id, art);
-                if (id > artId) {
-                    artId = id;
+            synchronized (ConfigHandler.art) {
+                ConfigHandler.art.clear();
+                ConfigHandler.artReversed.clear();
+                artId = 0;
+
+                while (rs.next()) {
+                    int id = rs.getInt("id");
+                    String art = rs.getString("art");
+                    ConfigHandler.art.put(art, id);
+                    ConfigHandler.artReversed.put(id, art);
+                    if (id > artId) {
+                        artId = id;
+                    }
                 }
+                rs.close();
             }
-            rs.close();
 
             query = "SELECT id,entity FROM " + ConfigHandler.prefix + "entity_map";
             rs = statement.executeQuery(query);
-            ConfigHandler.entities.clear();
-            ConfigHandler.entitiesReversed.clear();
-            entityId = 0;
-
-            while (rs.next()) {
-                int id = rs.getInt("id");
-                String entity = rs.getString("entity");
-                ConfigHandler.entities.put(entity, id);
-                ConfigHandler.entitiesReversed.put(id, entity);
-                if (id > entityId) {
-                    entityId = id;
+            synchronized (ConfigHandler.entities) {
+                ConfigHandler.entities.clear();
+                ConfigHandler.entitiesReversed.clear();
+                entityId = 0;
+
+                while (rs.next()) {
+                    int id = rs.getInt("id");
+                    String entity = rs.getString("entity");
+                    ConfigHandler.entities.put(entity, id);
+                    ConfigHandler.entitiesReversed.put(id, entity);
+                    if (id > entityId) {
+                        entityId = id;
+                    }
                 }
+                rs.close();
             }
-            rs.close();
         }
         catch (Exception e) {
             e.printStackTrace();
@@ -349,20 +359,22 @@ public class ConfigHandler extends Queue {
         try {
             String query = "SELECT id,world FROM " + ConfigHandler.prefix + "world";
             ResultSet rs = statement.executeQuery(query);
-            ConfigHandler.worlds.clear();
-            ConfigHandler.worldsReversed.clear();
-            worldId = 0;
-
-            while (rs.next()) {
-                int id = rs.getInt("id");
-                String world = rs.getString("world");
-                ConfigHandler.worlds.put(world, id);
-                ConfigHandler.worldsReversed.put(id, world);
-                if (id > worldId) {
-                    worldId = id;
+            synchronized (ConfigHandler.worlds) {
+                ConfigHandler.worlds.clear();
+                ConfigHandler.worldsReversed.clear();
+                worldId = 0;
+
+                while (rs.next()) {
+                    int id = rs.getInt("id");
+                    String world = rs.getString("world");
+                    ConfigHandler.worlds.put(world, id);
+                    ConfigHandler.worldsReversed.put(id, world);
+                    if (id > worldId) {
+                        worldId = id;
+                    }
                 }
+                rs.close();
             }
-            rs.close();
 
             List<World> worlds = Bukkit.getServer().getWorlds();
             for (World world : worlds) {
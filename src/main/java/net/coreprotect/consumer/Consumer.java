@@ -1,15 +1,8 @@
 package net.coreprotect.consumer;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.bukkit.Bukkit;
-import org.bukkit.block.BlockState;
-import org.bukkit.inventory.ItemStack;
 
 import net.coreprotect.CoreProtect;
 import net.coreprotect.config.ConfigHandler;
@@ -24,27 +17,10 @@ public class Consumer extends Process implements Runnable, Thread.UncaughtExcept
     public static volatile boolean interrupt = false;
     protected static volatile boolean pausedSuccess = false;
 
-    public static ConcurrentHashMap<Integer, ArrayList<Object[]>> consumer = new ConcurrentHashMap<>(4, 0.75f, 2);
-    // public static ConcurrentHashMap<Integer, Integer[]> consumer_id = new ConcurrentHashMap<>();
-    public static Map<Integer, Integer[]> consumer_id = Collections.synchronizedMap(new HashMap<>());
-    public static ConcurrentHashMap<Integer, Map<Integer, String[]>> consumerUsers = new ConcurrentHashMap<>(4, 0.75f, 2);
-    @Deprecated
-    public static ConcurrentHashMap<Integer, Map<Integer, String>> consumerStrings = new ConcurrentHashMap<>(4, 0.75f, 2);
-    @Deprecated
-    public static ConcurrentHashMap<Integer, Map<Integer, Object[]>> consumerSigns = new ConcurrentHashMap<>(4, 0.75f, 2);
-    @Deprecated
-    public static ConcurrentHashMap<Integer, Map<Integer, ItemStack[]>> consumerContainers = new ConcurrentHashMap<>(4, 0.75f, 2);
-    @Deprecated
-    public static ConcurrentHashMap<Integer, Map<Integer, Object>> consumerInventories = new ConcurrentHashMap<>(4, 0.75f, 2);
-    @Deprecated
-    public static ConcurrentHashMap<Integer, Map<Integer, List<BlockState>>> consumerBlockList = new ConcurrentHashMap<>(4, 0.75f, 2);
-    @Deprecated
-    public static ConcurrentHashMap<Integer, Map<Integer, List<Object[]>>> consumerObjectArrayList = new ConcurrentHashMap<>(4, 0.75f, 2);
-    @Deprecated
-    public static ConcurrentHashMap<Integer, Map<Integer, List<Object>>> consumerObjectList = new ConcurrentHashMap<>(4, 0.75f, 2);
-
-    public static ConcurrentHashMap<Integer, Map<Integer, Object>> consumerObjects = new ConcurrentHashMap<>(4, 0.75f, 2);
-    // ^merge maps into single object based map
+    // held by the consumer from the moment a batch is committed until its events are released from the buffer
+    public static final ReentrantReadWriteLock commitLock = new ReentrantReadWriteLock();
+
+    private static final ConsumerBuffer[] consumer = new ConsumerBuffer[] { new ConsumerBuffer(), new ConsumerBuffer() };
 
     private static void errorDelay() {
         try {
@@ -55,52 +31,41 @@ public class Consumer extends Process implements Runnable, Thread.UncaughtExcept
         }
     }
 
-    protected static int newConsumerId(int consumer) {
-        int id = Consumer.consumer_id.get(consumer)[0];
-        Consumer.consumer_id.put(consumer, new Integer[] { id + 1, 1 });
-        return id;
+    public static ConsumerBuffer getBuffer(int id) {
+        return Consumer.consumer[id];
     }
 
     public static int getConsumerSize(int id) {
         if (id == 0 || id == 1) {
-            return Consumer.consumer.get(id).size();
+            return Consumer.consumer[id].size();
         }
 
         return 0;
     }
 
     public static void initialize() {
-        Consumer.consumer.put(0, new ArrayList<>());
-        Consumer.consumer.put(1, new ArrayList<>());
-        Consumer.consumer_id.put(0, new Integer[] { 0, 0 });
-        Consumer.consumer_id.put(1, new Integer[] { 0, 0 });
-        Consumer.consumerUsers.put(0, new HashMap<>());
-        Consumer.consumerUsers.put(1, new HashMap<>());
-        Consumer.consumerObjects.put(0, new HashMap<>());
-        Consumer.consumerObjects.put(1, new HashMap<>());
-        Consumer.consumerStrings.put(0, new HashMap<>());
-        Consumer.consumerStrings.put(1, new HashMap<>());
-        Consumer.consumerSigns.put(0, new HashMap<>());
-        Consumer.consumerSigns.put(1, new HashMap<>());
-        Consumer.consumerInventories.put(0, new HashMap<>());
-        Consumer.consumerInventories.put(1, new HashMap<>());
-        Consumer.consumerBlockList.put(0, new HashMap<>());
-        Consumer.consumerBlockList.put(1, new HashMap<>());
-        Consumer.consumerObjectArrayList.put(0, new HashMap<>());
-        Consumer.consumerObjectArrayList.put(1, new HashMap<>());
-        Consumer.consumerObjectList.put(0, new HashMap<>());
-        Consumer.consumerObjectList.put(1, new HashMap<>());
-        Consumer.consumerContainers.put(0, new HashMap<>());
-        Consumer.consumerContainers.put(1, new HashMap<>());
+        Consumer.consumer[0].release(Integer.MAX_VALUE);
+        Consumer.consumer[1].release(Integer.MAX_VALUE);
     }
 
     public static boolean isRunning() {
         return consumerThread != null && consumerThread.isAlive();
     }
 
+    private static void waitForFlush(long lastFlush) {
+        try {
+            while ((ConfigHandler.serverRunning || ConfigHandler.converterRunning) && !FlushPolicy.shouldFlush(Consumer.consumer[currentConsumer], System.currentTimeMillis() - lastFlush)) {
+                Thread.sleep(FlushPolicy.POLL_INTERVAL);
+            }
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
     private static void pauseConsumer(int process_id) {
         try {
-            while ((ConfigHandler.serverRunning || ConfigHandler.converterRunning || ConfigHandler.migrationRunning) && (Consumer.isPaused || ConfigHandler.pauseConsumer || ConfigHandler.purgeRunning || Consumer.consumer_id.get(process_id)[1] == 1)) {
+            while ((ConfigHandler.serverRunning || ConfigHandler.converterRunning || ConfigHandler.migrationRunning) && (Consumer.isPaused || ConfigHandler.pauseConsumer || ConfigHandler.purgeRunning)) {
                 pausedSuccess = true;
                 Thread.sleep(100);
             }
@@ -114,12 +79,15 @@ public class Consumer extends Process implements Runnable, Thread.UncaughtExcept
     @Override
     public void run() {
         boolean lastRun = false;
+        long lastFlush = System.currentTimeMillis();
 
         while (ConfigHandler.serverRunning || ConfigHandler.converterRunning || !lastRun) {
-            if (!ConfigHandler.serverRunning && !ConfigHandler.converterRunning) {
-                lastRun = true;
-            }
             try {
+                waitForFlush(lastFlush);
+                if (!ConfigHandler.serverRunning && !ConfigHandler.converterRunning) {
+                    lastRun = true;
+                }
+
                 int process_id = 0;
                 if (currentConsumer == 0) {
                     currentConsumer = 1;
@@ -128,7 +96,7 @@ public class Consumer extends Process implements Runnable, Thread.UncaughtExcept
                     process_id = 1;
                     currentConsumer = 0;
                 }
-                Thread.sleep(500);
+                lastFlush = System.currentTimeMillis();
                 pauseConsumer(process_id);
                 Process.processConsumer(process_id, lastRun);
             }
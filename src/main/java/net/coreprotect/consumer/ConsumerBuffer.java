@@ -0,0 +1,163 @@
+package net.coreprotect.consumer;
+
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.bukkit.Material;
+
+/**
+ * Preallocated store of {@link ConsumerEvent} slots for one side of the consumer double buffer.
+ * Slots are filled in place by the listener threads and cleared (not discarded) by the consumer,
+ * so steady-state logging doesn't allocate a row per action.
+ *
+ * Producers never take a lock: a slot index is reserved with a single atomic increment and
+ * the slot is filled in place. Slots live in fixed size segments which are installed on demand,
+ * so the buffer can grow without copying while other threads are writing to it.
+ */
+public class ConsumerBuffer {
+
+    private static final int SEGMENT_SHIFT = 10;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+    private static final int MAX_SEGMENTS = 65536;
+    private static final int RETAINED_SEGMENTS = 64;
+
+    private final AtomicReferenceArray<ConsumerEvent[]> segments = new AtomicReferenceArray<>(MAX_SEGMENTS);
+    private final AtomicInteger claimed = new AtomicInteger(0);
+    private final AtomicInteger writers = new AtomicInteger(0);
+    private volatile long firstEventTime = 0;
+
+    public ConsumerBuffer() {
+        segments.set(0, allocate());
+    }
+
+    private static ConsumerEvent[] allocate() {
+        ConsumerEvent[] segment = new ConsumerEvent[SEGMENT_SIZE];
+        for (int i = 0; i < SEGMENT_SIZE; i++) {
+            segment[i] = new ConsumerEvent();
+        }
+        return segment;
+    }
+
+    private ConsumerEvent[] segment(int index) {
+        int segmentIndex = index >>> SEGMENT_SHIFT;
+        ConsumerEvent[] segment = segments.get(segmentIndex);
+        if (segment == null) {
+            segments.compareAndSet(segmentIndex, null, allocate());
+            segment = segments.get(segmentIndex);
+        }
+        return segment;
+    }
+
+    /**
+     * Registers the calling thread as writing to this buffer.
+     * Returns false if the consumer has since switched buffers, in which case the caller must retry.
+     */
+    protected boolean enter(int id) {
+        writers.incrementAndGet();
+        if (Consumer.currentConsumer != id) {
+            writers.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    protected void exit() {
+        writers.decrementAndGet();
+    }
+
+    /**
+     * Reserves and fills the next slot. Must be called between enter() and exit().
+     * Returns false if the buffer is at its hard capacity.
+     */
+    protected boolean add(int action, Material type, int data, Material replaceType, int replaceData, int forceData, String blockData, String replacedBlockData, String user, String uuid, int wid, int x, int y, int z, Object object, Object payload, long time) {
+        // only claim a slot while there's room, so a full buffer's count doesn't keep growing
+        int index;
+        do {
+            index = claimed.get();
+            if ((index >>> SEGMENT_SHIFT) >= MAX_SEGMENTS) {
+                return false;
+            }
+        }
+        while (!claimed.compareAndSet(index, index + 1));
+
+        if (index == 0) {
+            firstEventTime = System.currentTimeMillis();
+        }
+
+        segment(index)[index & SEGMENT_MASK].set(action, type, data, replaceType, replaceData, forceData, blockData, replacedBlockData, user, uuid, wid, x, y, z, object, payload, time);
+        return true;
+    }
+
+    /**
+     * Waits for threads that were still writing when the consumer switched buffers.
+     * Once this returns, no further events will be added until this buffer is current again.
+     */
+    public void awaitWriters() {
+        while (writers.get() > 0) {
+            Thread.onSpinWait();
+        }
+    }
+
+    public int size() {
+        return claimed.get();
+    }
+
+    /**
+     * Returns how long (in milliseconds) the oldest event in this buffer has been waiting, or 0 if it's empty.
+     */
+    public long oldestAge() {
+        long time = firstEventTime;
+        if (time == 0 || claimed.get() == 0) {
+            return 0;
+        }
+
+        return Math.max(0, System.currentTimeMillis() - time);
+    }
+
+    public ConsumerEvent get(int index) {
+        return segment(index)[index & SEGMENT_MASK];
+    }
+
+    /**
+     * Clears the first count slots and makes them available for reuse.
+     * Only called by the consumer while this buffer isn't current; any unprocessed events are moved to the front.
+     */
+    public void release(int count) {
+        release(count, null);
+    }
+
+    /**
+     * Clears the first count slots, except for any set in retained, which are kept (in order) ahead of the unprocessed events.
+     */
+    public void release(int count, BitSet retained) {
+        int size = size();
+        count = Math.min(count, size);
+        int remaining = 0;
+        for (int i = 0; i < size; i++) {
+            if (i < count && (retained == null || !retained.get(i))) {
+                get(i).clear();
+                continue;
+            }
+
+            if (remaining != i) {
+                ConsumerEvent[] target = segment(remaining);
+                ConsumerEvent[] source = segment(i);
+                ConsumerEvent event = target[remaining & SEGMENT_MASK];
+                target[remaining & SEGMENT_MASK] = source[i & SEGMENT_MASK];
+                source[i & SEGMENT_MASK] = event;
+            }
+            remaining++;
+        }
+        firstEventTime = (remaining > 0) ? System.currentTimeMillis() : 0;
+        claimed.set(remaining);
+
+        if (remaining == 0) {
+            // drop segments left over from a burst
+            for (int i = RETAINED_SEGMENTS; i < MAX_SEGMENTS && segments.get(i) != null; i++) {
+                segments.set(i, null);
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package net.coreprotect.consumer;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.block.BlockState;
+
+/**
+ * A single queued consumer action.
+ * Instances are preallocated by {@link ConsumerBuffer} and recycled once the
+ * consumer has processed them, so the fields are plain mutable slots.
+ */
+public final class ConsumerEvent {
+
+    public int action;
+    public Material type;
+    public int data;
+    public Material replaceType;
+    public int replaceData;
+    public int forceData;
+    public int wid = -1;
+    public int x;
+    public int y;
+    public int z;
+    public String blockData;
+    public String replacedBlockData;
+    public String user;
+    public String uuid;
+    public Object object;
+    public Object payload;
+    // when the event was queued (ms), so replayed events keep their original time
+    public long time;
+    // written last by set(), so a thread reading the buffer while it's being filled only sees complete events
+    public volatile boolean ready;
+    // set once the event has been committed mid-batch, so lookup snapshots no longer report it as pending
+    public boolean committed;
+
+    protected void set(int action, Material type, int data, Material replaceType, int replaceData, int forceData, String blockData, String replacedBlockData, String user, String uuid, int wid, int x, int y, int z, Object object, Object payload, long time) {
+        this.action = action;
+        this.type = type;
+        this.data = data;
+        this.replaceType = replaceType;
+        this.replaceData = replaceData;
+        this.forceData = forceData;
+        this.blockData = blockData;
+        this.replacedBlockData = replacedBlockData;
+        this.user = user;
+        this.uuid = uuid;
+        this.wid = wid;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.object = object;
+        this.payload = payload;
+        this.time = time;
+        this.ready = true;
+    }
+
+    protected void clear() {
+        this.ready = false;
+        this.committed = false;
+        this.type = null;
+        this.replaceType = null;
+        this.blockData = null;
+        this.replacedBlockData = null;
+        this.user = null;
+        this.uuid = null;
+        this.wid = -1;
+        this.object = null;
+        this.payload = null;
+    }
+
+    public boolean isAt(int wid, int x, int y, int z) {
+        return this.wid == wid && this.x == x && this.y == y && this.z == z;
+    }
+
+    /**
+     * Returns the BlockState or Location a queued object is positioned at, if any.
+     */
+    protected static Object position(Object object) {
+        if (object instanceof Object[]) {
+            for (Object value : (Object[]) object) {
+                if (value instanceof BlockState || value instanceof Location) {
+                    return value;
+                }
+            }
+            return null;
+        }
+        else if (object instanceof BlockState || object instanceof Location) {
+            return object;
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,363 @@
+package net.coreprotect.consumer;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.coreprotect.CoreProtect;
+import net.coreprotect.config.Config;
+import net.coreprotect.config.ConfigHandler;
+import net.coreprotect.consumer.EventCodec.EncodedBlock;
+import net.coreprotect.language.Phrase;
+import net.coreprotect.thread.Scheduler;
+import net.coreprotect.utility.Chat;
+
+/**
+ * Append-only, memory-mapped journal of queued consumer events.
+ *
+ * Each side of the consumer double buffer has its own journal file. Events are appended while the
+ * producer is registered on the buffer, and the journal is reset once the consumer has committed
+ * every event in that buffer. Anything left in a journal on startup was never committed, and is
+ * queued again through the normal consumer path.
+ *
+ * File layout: [int magic][int unused][long sequence], followed by records of
+ * [int length][int sequence][encoded event][byte 1]. The sequence changes every time the journal is
+ * reset, so stale records left behind from a previous sequence are ignored.
+ *
+ * The journal is disabled by default ("consumer-journal"), as every event is encoded on the thread
+ * queueing it. Replay is best effort:
+ * - Block states are rebuilt from the world as it is on startup, so tile entity data recorded with
+ *   the original state (such as skull owners or sign text) isn't recovered.
+ * - The journal is only reset once its whole buffer has been committed. If a batch was only partly
+ *   committed (the consumer was interrupted, or a shard failed), the committed events are still in
+ *   the journal, and are logged again if the server stops before the buffer is emptied.
+ */
+public class ConsumerJournal {
+
+    private static final int MAGIC = 0x434F4A31;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_OVERHEAD = 9;
+    private static final int RESOLVE_BATCH = 1000;
+    private static final String JOURNAL_EXTENSION = ".journal";
+    private static final String REPLAY_EXTENSION = ".replay";
+
+    private static final ConsumerJournal[] journal = new ConsumerJournal[2];
+    private static long lastSequence = 0;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final int capacity;
+    private final AtomicInteger position = new AtomicInteger(HEADER_SIZE);
+    private volatile int sequence;
+    private volatile boolean full = false;
+
+    private ConsumerJournal(File file, int capacity) throws Exception {
+        this.capacity = capacity;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.map = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        reset();
+    }
+
+    private static File getDirectory() {
+        return new File(ConfigHandler.path + "journal");
+    }
+
+    private static synchronized long nextSequence() {
+        lastSequence = Math.max(System.currentTimeMillis(), lastSequence + 1);
+        return lastSequence;
+    }
+
+    private void reset() {
+        long nextSequence = nextSequence();
+        map.putInt(0, MAGIC);
+        map.putLong(8, nextSequence);
+        sequence = (int) nextSequence;
+        position.set(HEADER_SIZE);
+        full = false;
+    }
+
+    private void write(EventCodec codec) {
+        int length = codec.length();
+        if (position.get() > capacity) {
+            return;
+        }
+
+        int offset = position.getAndAdd(length + RECORD_OVERHEAD);
+        if (offset < HEADER_SIZE || offset + length + RECORD_OVERHEAD > capacity) {
+            if (!full) {
+                full = true;
+                Chat.console(Phrase.build(Phrase.JOURNAL_FULL));
+            }
+            return;
+        }
+
+        // the length is written first, so a record interrupted mid-write can still be skipped
+        map.putInt(offset, length);
+        map.putInt(offset + 4, sequence);
+        ByteBuffer target = map.duplicate();
+        target.position(offset + 8);
+        target.put(codec.array(), 0, length);
+        map.put(offset + 8 + length, (byte) 1);
+    }
+
+    private void closeFile() {
+        try {
+            map.force();
+            channel.close();
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static boolean isEnabled() {
+        return journal[0] != null;
+    }
+
+    /**
+     * Moves any journals left from the previous run aside for replay, and opens new journals.
+     */
+    public static void open() {
+        if (isEnabled() || !Config.getGlobal().CONSUMER_JOURNAL) {
+            return;
+        }
+
+        try {
+            File directory = getDirectory();
+            if (!directory.exists()) {
+                directory.mkdirs();
+            }
+
+            long time = System.currentTimeMillis();
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (file.getName().endsWith(JOURNAL_EXTENSION)) {
+                        file.renameTo(new File(directory, time + "-" + file.getName() + REPLAY_EXTENSION));
+                    }
+                }
+            }
+
+            int capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(1, Config.getGlobal().CONSUMER_JOURNAL_SIZE) * 1024L * 1024L);
+            journal[0] = new ConsumerJournal(new File(directory, "consumer-0" + JOURNAL_EXTENSION), capacity);
+            journal[1] = new ConsumerJournal(new File(directory, "consumer-1" + JOURNAL_EXTENSION), capacity);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            close();
+        }
+    }
+
+    /**
+     * Appends an encoded event to the journal for the given consumer buffer.
+     * Must be called while registered as a writer on that buffer.
+     */
+    protected static void append(int id, EventCodec codec) {
+        ConsumerJournal current = journal[id];
+        if (current != null) {
+            current.write(codec);
+        }
+    }
+
+    /**
+     * Discards the journal for a consumer buffer once all of its events have been committed.
+     */
+    public static void truncate(int id) {
+        ConsumerJournal current = journal[id];
+        if (current != null) {
+            current.reset();
+        }
+    }
+
+    public static void close() {
+        for (int i = 0; i < journal.length; i++) {
+            if (journal[i] != null) {
+                journal[i].closeFile();
+                journal[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Queues any events left in journals from the previous run, then deletes those journals.
+     */
+    public static void replay() {
+        File[] files = getDirectory().listFiles((dir, name) -> name.endsWith(REPLAY_EXTENSION));
+        if (files == null || files.length == 0) {
+            return;
+        }
+
+        Thread thread = new Thread(() -> {
+            try {
+                List<Object[]> journals = new ArrayList<>();
+                for (File file : files) {
+                    byte[] data = Files.readAllBytes(file.toPath());
+                    if (data.length >= HEADER_SIZE && ByteBuffer.wrap(data).getInt(0) == MAGIC) {
+                        journals.add(new Object[] { ByteBuffer.wrap(data).getLong(8), data });
+                    }
+                }
+                journals.sort((a, b) -> Long.compare((Long) a[0], (Long) b[0]));
+
+                List<ConsumerEvent> events = new ArrayList<>();
+                for (Object[] data : journals) {
+                    read((byte[]) data[1], events);
+                }
+
+                int count = restore(events, true);
+                if (count > 0) {
+                    Chat.console(Phrase.build(Phrase.JOURNAL_RECOVERED, String.format("%,d", count)));
+                }
+
+                if (ConfigHandler.serverRunning) {
+                    for (File file : files) {
+                        file.delete();
+                    }
+                }
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        thread.start();
+    }
+
+    private static void read(byte[] data, List<ConsumerEvent> events) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        int sequence = (int) buffer.getLong(8);
+        int offset = HEADER_SIZE;
+        while (offset + RECORD_OVERHEAD <= data.length) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + length + RECORD_OVERHEAD > data.length || buffer.getInt(offset + 4) != sequence) {
+                break;
+            }
+
+            if (data[offset + 8 + length] == 1) {
+                try {
+                    events.add(EventCodec.decode(data, offset + 8, length));
+                }
+                catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+            offset += length + RECORD_OVERHEAD;
+        }
+    }
+
+    /**
+     * Resolves the block states of decoded events on the threads that own them, then queues the events in order.
+     * Events are only written to the spill segments if allowSpill is set.
+     * Returns the number of events queued.
+     */
+    protected static int restore(List<ConsumerEvent> events, boolean allowSpill) throws InterruptedException {
+        List<EncodedBlock> blocks = new ArrayList<>();
+        for (ConsumerEvent event : events) {
+            collectBlocks(event.object, blocks);
+            collectBlocks(event.payload, blocks);
+        }
+
+        AtomicInteger pending = new AtomicInteger(blocks.size());
+        CoreProtect plugin = CoreProtect.getInstance();
+        if (ConfigHandler.isFolia) {
+            for (EncodedBlock block : blocks) {
+                if (block.getLocation().getWorld() == null) {
+                    pending.decrementAndGet();
+                    continue;
+                }
+                Scheduler.scheduleSyncDelayedTask(plugin, () -> {
+                    block.resolve();
+                    pending.decrementAndGet();
+                }, block.getLocation(), 0);
+            }
+        }
+        else {
+            for (int i = 0; i < blocks.size(); i += RESOLVE_BATCH) {
+                List<EncodedBlock> batch = blocks.subList(i, Math.min(blocks.size(), i + RESOLVE_BATCH));
+                Scheduler.scheduleSyncDelayedTask(plugin, () -> {
+                    for (EncodedBlock block : batch) {
+                        block.resolve();
+                    }
+                    pending.addAndGet(-batch.size());
+                }, 0);
+            }
+        }
+
+        while (pending.get() > 0 && ConfigHandler.serverRunning) {
+            Thread.sleep(50);
+        }
+
+        int count = 0;
+        for (ConsumerEvent event : events) {
+            if (!ConfigHandler.serverRunning) {
+                break;
+            }
+
+            Object object = resolveValue(event.object);
+            if (object == null && event.object != null) {
+                continue;
+            }
+
+            Object payload = resolveValue(event.payload);
+            Queue.queueEvent(event.action, event.type, event.data, event.replaceType, event.replaceData, event.forceData, event.blockData, event.replacedBlockData, event.user, event.uuid, object, payload, event.time > 0 ? event.time : System.currentTimeMillis(), allowSpill);
+            count++;
+        }
+
+        return count;
+    }
+
+    private static void collectBlocks(Object value, List<EncodedBlock> blocks) {
+        if (value instanceof EncodedBlock) {
+            blocks.add((EncodedBlock) value);
+        }
+        else if (value instanceof Object[]) {
+            for (Object element : (Object[]) value) {
+                collectBlocks(element, blocks);
+            }
+        }
+        else if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                collectBlocks(element, blocks);
+            }
+        }
+    }
+
+    /**
+     * Replaces resolved block placeholders with their block state.
+     * Returns null if the value contains a block that couldn't be resolved (list entries are dropped instead).
+     */
+    private static Object resolveValue(Object value) {
+        if (value instanceof EncodedBlock) {
+            return ((EncodedBlock) value).state;
+        }
+        else if (value instanceof Object[]) {
+            Object[] array = (Object[]) value;
+            for (int i = 0; i < array.length; i++) {
+                if (array[i] instanceof EncodedBlock) {
+                    array[i] = ((EncodedBlock) array[i]).state;
+                    if (array[i] == null) {
+                        return null;
+                    }
+                }
+            }
+        }
+        else if (value instanceof List) {
+            @SuppressWarnings("unchecked")
+            List<Object> list = (List<Object>) value;
+            List<Object> resolved = new ArrayList<>(list.size());
+            for (Object element : list) {
+                Object resolvedElement = (element instanceof EncodedBlock) ? ((EncodedBlock) element).state : element;
+                if (resolvedElement != null || element == null) {
+                    resolved.add(resolvedElement);
+                }
+            }
+            return resolved;
+        }
+
+        return value;
+    }
+}
@@ -0,0 +1,331 @@
+package net.coreprotect.consumer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import net.coreprotect.config.Config;
+import net.coreprotect.config.ConfigHandler;
+
+/**
+ * Overflow for the consumer queue once the in-memory backlog exceeds the configured memory budget.
+ *
+ * While spilling, new events are encoded (see {@link EventCodec}) and handed to the spill thread instead
+ * of the consumer buffer. The spill thread appends them to segment files on disk every 100ms, or sooner
+ * once 1MB is pending, and drains the segments in order once the consumer backlog has dropped back below
+ * half of the budget. Segments left over on shutdown are drained after the next startup.
+ */
+public class ConsumerSpill implements Runnable {
+
+    private static final int ESTIMATED_EVENT_SIZE = 1024;
+    private static final long SEGMENT_SIZE = 4 * 1024 * 1024;
+    private static final long WRITE_SIZE = 1024 * 1024;
+    private static final long WRITE_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final String SEGMENT_EXTENSION = ".spill";
+
+    private static final Object lock = new Object();
+    private static final Deque<File> segments = new ArrayDeque<>();
+    private static final ConcurrentLinkedQueue<byte[]> pending = new ConcurrentLinkedQueue<>();
+    private static final AtomicLong pendingBytes = new AtomicLong(0);
+    private static final AtomicLong spilledEvents = new AtomicLong(0);
+    private static final AtomicLong spilledBytes = new AtomicLong(0);
+    private static volatile boolean spilling = false;
+    private static volatile boolean closed = false;
+    private static volatile Thread spillThread = null;
+
+    private static DataOutputStream output = null;
+    private static File outputFile = null;
+    private static long outputSize = 0;
+    private static long nextSegment = 0;
+
+    private static File getDirectory() {
+        return new File(ConfigHandler.path + "spill");
+    }
+
+    private static long getBudget() {
+        return (Config.getGlobal().CONSUMER_MEMORY_BUDGET * 1024L * 1024L) / ESTIMATED_EVENT_SIZE;
+    }
+
+    private static long getMemoryBacklog() {
+        return (long) Consumer.getConsumerSize(0) + Consumer.getConsumerSize(1);
+    }
+
+    /**
+     * Returns true if new events should be written to disk rather than the consumer buffer.
+     * Once spilling has started, it continues until the spilled backlog has been drained, so events stay in order.
+     */
+    protected static boolean shouldSpill() {
+        if (spilling) {
+            return true;
+        }
+
+        long budget = getBudget();
+        return budget > 0 && getMemoryBacklog() > budget;
+    }
+
+    /**
+     * Hands an encoded event to the spill thread, to be appended to the current spill segment.
+     * Returns false if the event couldn't be spilled, in which case it should be kept in memory.
+     */
+    protected static boolean append(EventCodec codec) {
+        Thread thread = spillThread;
+        if (thread == null || closed) {
+            return false;
+        }
+
+        // the codec is reused by the next event encoded on this thread
+        byte[] record = Arrays.copyOf(codec.array(), codec.length());
+        pending.add(record);
+        spilledEvents.incrementAndGet();
+        spilledBytes.addAndGet(record.length + 4L);
+        spilling = true;
+
+        // the spill thread has already written its last events
+        if (closed && pending.remove(record)) {
+            spilledEvents.decrementAndGet();
+            spilledBytes.addAndGet(-(record.length + 4L));
+            return false;
+        }
+
+        if (pendingBytes.addAndGet(record.length + 4L) >= WRITE_SIZE) {
+            LockSupport.unpark(thread);
+        }
+
+        return true;
+    }
+
+    /**
+     * Appends the pending events to the current spill segment, flushing once they've all been written.
+     * If they can't be written, the events are queued in memory instead.
+     */
+    private static void write() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<byte[]> written = new ArrayList<>();
+        synchronized (lock) {
+            try {
+                byte[] record;
+                while ((record = pending.poll()) != null) {
+                    written.add(record);
+                    pendingBytes.addAndGet(-(record.length + 4L));
+                    if (output == null) {
+                        File directory = getDirectory();
+                        if (!directory.exists()) {
+                            directory.mkdirs();
+                        }
+
+                        outputFile = new File(directory, String.format("%019d", nextSegment++) + SEGMENT_EXTENSION);
+                        output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile)));
+                        outputSize = 0;
+                    }
+
+                    output.writeInt(record.length);
+                    output.write(record);
+                    outputSize += record.length + 4;
+
+                    if (outputSize >= SEGMENT_SIZE) {
+                        closeSegment();
+                        written.clear();
+                    }
+                }
+
+                if (output != null) {
+                    output.flush();
+                }
+                return;
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        List<ConsumerEvent> events = new ArrayList<>();
+        for (byte[] record : written) {
+            try {
+                events.add(EventCodec.decode(record, 0, record.length));
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+            }
+            spilledEvents.decrementAndGet();
+            spilledBytes.addAndGet(-(record.length + 4L));
+        }
+
+        try {
+            ConsumerJournal.restore(events, false);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void closeSegment() throws Exception {
+        if (output != null) {
+            output.close();
+            segments.addLast(outputFile);
+            output = null;
+            outputFile = null;
+        }
+    }
+
+    /**
+     * Returns the oldest spilled segment, closing the segment being written if it's the only one left.
+     * Stops spilling once there's nothing left on disk.
+     */
+    private static File nextSegment() throws Exception {
+        write();
+        synchronized (lock) {
+            if (segments.isEmpty()) {
+                if (output != null && outputSize > 0) {
+                    closeSegment();
+                }
+                else if (pending.isEmpty()) {
+                    spilling = false;
+                    return null;
+                }
+            }
+
+            return segments.peekFirst();
+        }
+    }
+
+    private static void drain() throws Exception {
+        File segment = nextSegment();
+        if (segment == null) {
+            return;
+        }
+
+        byte[] data = Files.readAllBytes(segment.toPath());
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        List<ConsumerEvent> events = new ArrayList<>();
+        int records = 0;
+        int offset = 0;
+        while (offset + 4 <= data.length) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + 4 + length > data.length) {
+                break;
+            }
+
+            records++;
+            try {
+                events.add(EventCodec.decode(data, offset + 4, length));
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+            }
+            offset += length + 4;
+        }
+
+        ConsumerJournal.restore(events, false);
+        if (!ConfigHandler.serverRunning) {
+            return;
+        }
+
+        synchronized (lock) {
+            segments.remove(segment);
+        }
+        segment.delete();
+        spilledEvents.addAndGet(-records);
+        spilledBytes.addAndGet(-data.length);
+    }
+
+    private static void load() {
+        File[] files = getDirectory().listFiles((dir, name) -> name.endsWith(SEGMENT_EXTENSION));
+        if (files == null || files.length == 0) {
+            return;
+        }
+
+        Arrays.sort(files);
+        synchronized (lock) {
+            for (File file : files) {
+                try {
+                    String name = file.getName();
+                    long segment = Long.parseLong(name.substring(0, name.length() - SEGMENT_EXTENSION.length()));
+                    nextSegment = Math.max(nextSegment, segment + 1);
+
+                    byte[] data = Files.readAllBytes(file.toPath());
+                    ByteBuffer buffer = ByteBuffer.wrap(data);
+                    int offset = 0;
+                    while (offset + 4 <= data.length) {
+                        int length = buffer.getInt(offset);
+                        if (length <= 0 || offset + 4 + length > data.length) {
+                            break;
+                        }
+                        spilledEvents.incrementAndGet();
+                        offset += length + 4;
+                    }
+
+                    spilledBytes.addAndGet(data.length);
+                    segments.addLast(file);
+                    spilling = true;
+                }
+                catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    public static long getSpilledEvents() {
+        return spilledEvents.get();
+    }
+
+    public static long getSpilledBytes() {
+        return spilledBytes.get();
+    }
+
+    public static boolean isRunning() {
+        return spillThread != null && spillThread.isAlive();
+    }
+
+    @Override
+    public void run() {
+        while (ConfigHandler.serverRunning) {
+            try {
+                LockSupport.parkNanos(WRITE_INTERVAL);
+                write();
+                long budget = getBudget();
+                if (spilling && (budget <= 0 || getMemoryBacklog() < (budget / 2))) {
+                    drain();
+                }
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        closed = true;
+        write();
+        synchronized (lock) {
+            try {
+                closeSegment();
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public static void startSpill() {
+        if (!isRunning()) {
+            load();
+            closed = false;
+            spillThread = new Thread(new ConsumerSpill());
+            spillThread.start();
+        }
+    }
+}
@@ -0,0 +1,503 @@
+package net.coreprotect.consumer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.BlockState;
+import org.bukkit.entity.EntityType;
+import org.bukkit.util.io.BukkitObjectInputStream;
+import org.bukkit.util.io.BukkitObjectOutputStream;
+
+import net.coreprotect.consumer.process.Process;
+
+/**
+ * Compact binary encoding of a queued consumer action, used when consumer events have to leave the heap.
+ *
+ * Integers are zigzag varints and strings are length prefixed UTF-8. Block states are stored as their
+ * position and block data, and are resolved back into a block state (see {@link EncodedBlock}) before
+ * the event is queued again. Values without a dedicated tag fall back to Bukkit object serialization.
+ */
+public class EventCodec {
+
+    private static final int NULL = 0;
+    private static final int BLOCK_STATE = 1;
+    private static final int LOCATION = 2;
+    private static final int ARRAY = 3;
+    private static final int LIST = 4;
+    private static final int STRING = 5;
+    private static final int INTEGER = 6;
+    private static final int LONG = 7;
+    private static final int BOOLEAN = 8;
+    private static final int ENTITY_TYPE = 9;
+    private static final int SERIALIZED = 10;
+
+    private static final ThreadLocal<EventCodec> CODEC = ThreadLocal.withInitial(EventCodec::new);
+
+    private byte[] buffer = new byte[256];
+    private int length = 0;
+
+    /**
+     * Returns false for actions that depend on in-memory state which can't be recovered
+     * (container/item transaction tracking, and dictionary inserts which are re-resolved when the event is processed).
+     */
+    public static boolean isEncodable(int action) {
+        switch (action) {
+            case Process.CONTAINER_TRANSACTION:
+            case Process.ITEM_TRANSACTION:
+            case Process.SKULL_UPDATE:
+            case Process.WORLD_INSERT:
+            case Process.MATERIAL_INSERT:
+            case Process.ART_INSERT:
+            case Process.ENTITY_INSERT:
+            case Process.BLOCKDATA_INSERT:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    private static boolean isRollbackUpdate(int action) {
+        return action == Process.ROLLBACK_UPDATE || action == Process.CONTAINER_ROLLBACK_UPDATE || action == Process.INVENTORY_ROLLBACK_UPDATE || action == Process.INVENTORY_CONTAINER_ROLLBACK_UPDATE || action == Process.BLOCK_INVENTORY_ROLLBACK_UPDATE;
+    }
+
+    /**
+     * Encodes an event into this thread's codec buffer.
+     * Returns null if the action can't be encoded.
+     */
+    protected static EventCodec encode(int action, Material type, int data, Material replaceType, int replaceData, int forceData, String blockData, String replacedBlockData, String user, String uuid, Object object, Object payload, long time) {
+        if (!isEncodable(action)) {
+            return null;
+        }
+
+        EventCodec codec = CODEC.get();
+        codec.length = 0;
+        try {
+            codec.writeInt(action);
+            codec.writeString(type == null ? null : type.name());
+            codec.writeInt(data);
+            codec.writeString(replaceType == null ? null : replaceType.name());
+            codec.writeInt(replaceData);
+            codec.writeInt(forceData);
+            codec.writeString(blockData);
+            codec.writeString(replacedBlockData);
+            codec.writeString(user);
+            codec.writeString(uuid);
+            codec.writeValue(object);
+            if (isRollbackUpdate(action) && payload instanceof List) {
+                // only the row id and rolled back state are read when processing
+                List<?> rows = (List<?>) payload;
+                codec.writeByte(LIST);
+                codec.writeInt(rows.size());
+                for (Object row : rows) {
+                    Object[] rowData = (Object[]) row;
+                    codec.writeLong((Long) rowData[0]);
+                    codec.writeInt((Integer) rowData[9]);
+                }
+            }
+            else {
+                codec.writeValue(payload);
+            }
+            codec.writeLong(time);
+        }
+        catch (Exception e) {
+            return null;
+        }
+
+        return codec;
+    }
+
+    protected byte[] array() {
+        return buffer;
+    }
+
+    protected int length() {
+        return length;
+    }
+
+    private void ensure(int size) {
+        if (length + size > buffer.length) {
+            byte[] resized = new byte[Math.max(buffer.length * 2, length + size)];
+            System.arraycopy(buffer, 0, resized, 0, length);
+            buffer = resized;
+        }
+    }
+
+    private void writeByte(int value) {
+        ensure(1);
+        buffer[length++] = (byte) value;
+    }
+
+    private void writeVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[length++] = (byte) value;
+    }
+
+    private void writeInt(int value) {
+        writeVarLong(((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+    }
+
+    private void writeLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    private void writeBytes(byte[] value) {
+        writeVarLong(value.length);
+        ensure(value.length);
+        System.arraycopy(value, 0, buffer, length, value.length);
+        length += value.length;
+    }
+
+    private void writeString(String value) {
+        if (value == null) {
+            writeVarLong(0);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length + 1L);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    private void writeWorld(World world) {
+        writeString(world == null ? null : world.getName());
+    }
+
+    private void writeValue(Object value) throws IOException {
+        if (value == null) {
+            writeByte(NULL);
+        }
+        else if (value instanceof BlockState) {
+            BlockState block = (BlockState) value;
+            writeByte(BLOCK_STATE);
+            writeWorld(block.getWorld());
+            writeInt(block.getX());
+            writeInt(block.getY());
+            writeInt(block.getZ());
+            writeString(block.getType().name());
+            writeString(block.getBlockData().getAsString());
+        }
+        else if (value instanceof EncodedBlock) {
+            EncodedBlock block = (EncodedBlock) value;
+            writeByte(BLOCK_STATE);
+            writeWorld(block.location.getWorld());
+            writeInt(block.location.getBlockX());
+            writeInt(block.location.getBlockY());
+            writeInt(block.location.getBlockZ());
+            writeString(block.type);
+            writeString(block.blockData);
+        }
+        else if (value instanceof Location) {
+            Location location = (Location) value;
+            writeByte(LOCATION);
+            writeWorld(location.getWorld());
+            writeLong(Double.doubleToLongBits(location.getX()));
+            writeLong(Double.doubleToLongBits(location.getY()));
+            writeLong(Double.doubleToLongBits(location.getZ()));
+            writeInt(Float.floatToIntBits(location.getYaw()));
+            writeInt(Float.floatToIntBits(location.getPitch()));
+        }
+        else if (value instanceof Object[] && value.getClass() == Object[].class) {
+            Object[] array = (Object[]) value;
+            writeByte(ARRAY);
+            writeInt(array.length);
+            for (Object element : array) {
+                writeValue(element);
+            }
+        }
+        else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            writeByte(LIST);
+            writeInt(list.size());
+            for (Object element : list) {
+                writeValue(element);
+            }
+        }
+        else if (value instanceof String) {
+            writeByte(STRING);
+            writeString((String) value);
+        }
+        else if (value instanceof Integer) {
+            writeByte(INTEGER);
+            writeInt((Integer) value);
+        }
+        else if (value instanceof Long) {
+            writeByte(LONG);
+            writeLong((Long) value);
+        }
+        else if (value instanceof Boolean) {
+            writeByte(BOOLEAN);
+            writeByte((Boolean) value ? 1 : 0);
+        }
+        else if (value instanceof EntityType) {
+            writeByte(ENTITY_TYPE);
+            writeString(((EntityType) value).name());
+        }
+        else {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            BukkitObjectOutputStream oos = new BukkitObjectOutputStream(bos);
+            oos.writeObject(value);
+            oos.flush();
+            oos.close();
+            writeByte(SERIALIZED);
+            writeBytes(bos.toByteArray());
+        }
+    }
+
+    /**
+     * Decodes an event previously written by {@link #encode}.
+     * Block states are returned as {@link EncodedBlock} placeholders.
+     */
+    protected static ConsumerEvent decode(byte[] data, int offset, int length) throws IOException {
+        Input input = new Input(data, offset, offset + length);
+        ConsumerEvent event = new ConsumerEvent();
+        event.action = input.readInt();
+        event.type = input.readMaterial();
+        event.data = input.readInt();
+        event.replaceType = input.readMaterial();
+        event.replaceData = input.readInt();
+        event.forceData = input.readInt();
+        event.blockData = input.readString();
+        event.replacedBlockData = input.readString();
+        event.user = input.readString();
+        event.uuid = input.readString();
+        event.object = input.readValue();
+        if (isRollbackUpdate(event.action) && input.peek() == LIST) {
+            input.readByte();
+            int size = input.readInt();
+            List<Object[]> rows = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                Object[] row = new Object[10];
+                row[0] = input.readLong();
+                row[9] = input.readInt();
+                rows.add(row);
+            }
+            event.payload = rows;
+        }
+        else {
+            event.payload = input.readValue();
+        }
+        // records written before the time was added end here
+        if (input.position < input.limit) {
+            event.time = input.readLong();
+        }
+
+        return event;
+    }
+
+    /**
+     * A block state that was encoded by position and block data.
+     * Resolved against the world (on the owning region thread) before the event is queued again.
+     */
+    public static class EncodedBlock {
+
+        protected final Location location;
+        protected final String type;
+        protected final String blockData;
+        protected volatile BlockState state;
+
+        protected EncodedBlock(Location location, String type, String blockData) {
+            this.location = location;
+            this.type = type;
+            this.blockData = blockData;
+        }
+
+        public Location getLocation() {
+            return location;
+        }
+
+        /**
+         * Reads the block at this position and applies the encoded block data to the snapshot.
+         * Must be called from a thread that owns the location.
+         */
+        protected void resolve() {
+            try {
+                if (location.getWorld() == null) {
+                    return;
+                }
+
+                BlockState blockState = location.getBlock().getState();
+                if (blockData != null) {
+                    blockState.setBlockData(Bukkit.createBlockData(blockData));
+                }
+                else if (type != null) {
+                    Material material = Material.getMaterial(type);
+                    if (material != null) {
+                        blockState.setType(material);
+                    }
+                }
+                state = blockState;
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static class Input {
+
+        private final byte[] data;
+        private final int limit;
+        private int position;
+
+        private Input(byte[] data, int position, int limit) {
+            this.data = data;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        private int peek() throws IOException {
+            if (position >= limit) {
+                throw new IOException("Truncated event");
+            }
+            return data[position] & 0xFF;
+        }
+
+        private int readByte() throws IOException {
+            int value = peek();
+            position++;
+            return value;
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            int shift = 0;
+            while (shift < 64) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+                shift += 7;
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        private int readInt() throws IOException {
+            int value = (int) readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private long readLong() throws IOException {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private byte[] readBytes() throws IOException {
+            int size = (int) readVarLong();
+            if (size < 0 || position + size > limit) {
+                throw new IOException("Truncated event");
+            }
+            byte[] value = new byte[size];
+            System.arraycopy(data, position, value, 0, size);
+            position += size;
+            return value;
+        }
+
+        private String readString() throws IOException {
+            int size = (int) readVarLong() - 1;
+            if (size < 0) {
+                return null;
+            }
+            if (position + size > limit) {
+                throw new IOException("Truncated event");
+            }
+            String value = new String(data, position, size, StandardCharsets.UTF_8);
+            position += size;
+            return value;
+        }
+
+        private Material readMaterial() throws IOException {
+            String name = readString();
+            return name == null ? null : Material.getMaterial(name);
+        }
+
+        private World readWorld() throws IOException {
+            String name = readString();
+            return name == null ? null : Bukkit.getServer().getWorld(name);
+        }
+
+        private Object readValue() throws IOException {
+            int tag = readByte();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case BLOCK_STATE: {
+                    World world = readWorld();
+                    int x = readInt();
+                    int y = readInt();
+                    int z = readInt();
+                    String type = readString();
+                    String blockData = readString();
+                    return new EncodedBlock(new Location(world, x, y, z), type, blockData);
+                }
+                case LOCATION: {
+                    World world = readWorld();
+                    double x = Double.longBitsToDouble(readLong());
+                    double y = Double.longBitsToDouble(readLong());
+                    double z = Double.longBitsToDouble(readLong());
+                    float yaw = Float.intBitsToFloat(readInt());
+                    float pitch = Float.intBitsToFloat(readInt());
+                    return new Location(world, x, y, z, yaw, pitch);
+                }
+                case ARRAY: {
+                    Object[] array = new Object[readInt()];
+                    for (int i = 0; i < array.length; i++) {
+                        array[i] = readValue();
+                    }
+                    return array;
+                }
+                case LIST: {
+                    int size = readInt();
+                    List<Object> list = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        list.add(readValue());
+                    }
+                    return list;
+                }
+                case STRING:
+                    return readString();
+                case INTEGER:
+                    return readInt();
+                case LONG:
+                    return readLong();
+                case BOOLEAN:
+                    return readByte() == 1;
+                case ENTITY_TYPE: {
+                    String name = readString();
+                    try {
+                        return EntityType.valueOf(name.toUpperCase(Locale.ROOT));
+                    }
+                    catch (Exception e) {
+                        return null;
+                    }
+                }
+                case SERIALIZED: {
+                    byte[] bytes = readBytes();
+                    try (BukkitObjectInputStream ois = new BukkitObjectInputStream(new ByteArrayInputStream(bytes))) {
+                        return ois.readObject();
+                    }
+                    catch (ClassNotFoundException e) {
+                        throw new IOException(e);
+                    }
+                }
+                default:
+                    throw new IOException("Unknown value tag " + tag);
+            }
+        }
+    }
+}
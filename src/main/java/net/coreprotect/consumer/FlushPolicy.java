@@ -0,0 +1,101 @@
+package net.coreprotect.consumer;
+
+import net.coreprotect.config.Config;
+
+/**
+ * Decides when the consumer should switch buffers and commit the queued data.
+ *
+ * A flush is triggered once the minimum interval has passed and either the queue is deep enough
+ * to fill the target commit latency, the oldest queued event has waited too long, or the maximum
+ * interval has been reached. The per-event commit cost is tracked from previous batches, so the
+ * flush depth adapts to the speed of the database.
+ */
+public class FlushPolicy {
+
+    protected static final int POLL_INTERVAL = 10;
+
+    private static volatile int lastBatchSize = 0;
+    private static volatile long lastCommitTime = 0;
+    private static volatile double averageBatchSize = 0;
+    private static volatile double averageCommitTime = 0;
+    private static volatile double eventCost = 0; // average milliseconds per event
+
+    private FlushPolicy() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    protected static boolean shouldFlush(ConsumerBuffer buffer, long elapsed) {
+        Config config = Config.getGlobal();
+        if (elapsed < config.CONSUMER_MIN_INTERVAL) {
+            return false;
+        }
+        if (elapsed >= config.CONSUMER_MAX_INTERVAL) {
+            return true;
+        }
+
+        int size = buffer.size();
+        if (size == 0) {
+            return false;
+        }
+
+        return size >= getTargetDepth() || buffer.oldestAge() >= config.CONSUMER_MAX_AGE;
+    }
+
+    /**
+     * Returns the number of queued events expected to commit within the target latency.
+     */
+    public static int getTargetDepth() {
+        Config config = Config.getGlobal();
+        int maxBatch = Math.max(1, config.CONSUMER_MAX_BATCH);
+        double cost = eventCost;
+        if (cost <= 0) {
+            return maxBatch;
+        }
+
+        double depth = config.CONSUMER_TARGET_LATENCY / cost;
+        return (int) Math.max(1, Math.min(maxBatch, depth));
+    }
+
+    public static void recordBatch(int batchSize, long commitTime) {
+        if (batchSize <= 0) {
+            return;
+        }
+
+        lastBatchSize = batchSize;
+        lastCommitTime = commitTime;
+
+        if (averageBatchSize == 0) {
+            averageBatchSize = batchSize;
+            averageCommitTime = commitTime;
+            eventCost = (double) commitTime / batchSize;
+        }
+        else {
+            averageBatchSize = (averageBatchSize * 0.8) + (batchSize * 0.2);
+            averageCommitTime = (averageCommitTime * 0.8) + (commitTime * 0.2);
+            eventCost = (eventCost * 0.8) + (((double) commitTime / batchSize) * 0.2);
+        }
+    }
+
+    /**
+     * Returns the average commit time per event in milliseconds, or 0 if nothing has been committed yet.
+     */
+    public static double getEventCost() {
+        return eventCost;
+    }
+
+    public static int getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    public static long getLastCommitTime() {
+        return lastCommitTime;
+    }
+
+    public static int getAverageBatchSize() {
+        return (int) Math.round(averageBatchSize);
+    }
+
+    public static long getAverageCommitTime() {
+        return Math.round(averageCommitTime);
+    }
+}
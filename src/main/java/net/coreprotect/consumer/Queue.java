@@ -27,6 +27,7 @@ import net.coreprotect.model.BlockGroup;
 import net.coreprotect.thread.Scheduler;
 import net.coreprotect.utility.BlockUtils;
 import net.coreprotect.utility.EntityUtils;
+import net.coreprotect.utility.WorldUtils;
 
 public class Queue {
 
@@ -58,28 +59,84 @@ public class Queue {
         return chestId;
     }
 
-    private static synchronized void addConsumer(int currentConsumer, Object[] data) {
-        Consumer.consumer.get(currentConsumer).add(data);
+    private static void queueEvent(int action, Material type, int data, Material replaceType, int replaceData, int forceData, String blockData, String replacedBlockData, String user, String uuid, Object object, Object payload) {
+        queueEvent(action, type, data, replaceType, replaceData, forceData, blockData, replacedBlockData, user, uuid, object, payload, true);
     }
 
-    private static synchronized void queueStandardData(int consumerId, int currentConsumer, String[] user, Object object) {
-        Consumer.consumerUsers.get(currentConsumer).put(consumerId, user);
-        Consumer.consumerObjects.get(currentConsumer).put(consumerId, object);
-        Consumer.consumer_id.put(currentConsumer, new Integer[] { Consumer.consumer_id.get(currentConsumer)[0], 0 });
+    protected static void queueEvent(int action, Material type, int data, Material replaceType, int replaceData, int forceData, String blockData, String replacedBlockData, String user, String uuid, Object object, Object payload, boolean allowSpill) {
+        queueEvent(action, type, data, replaceType, replaceData, forceData, blockData, replacedBlockData, user, uuid, object, payload, System.currentTimeMillis(), allowSpill);
+    }
+
+    /**
+     * Queues an event with the time it happened at, such as when an event is read back from the journal or a spill segment.
+     */
+    protected static void queueEvent(int action, Material type, int data, Material replaceType, int replaceData, int forceData, String blockData, String replacedBlockData, String user, String uuid, Object object, Object payload, long time, boolean allowSpill) {
+        // over the memory budget, write to disk instead
+        if (allowSpill && EventCodec.isEncodable(action) && ConsumerSpill.shouldSpill()) {
+            EventCodec spillData = EventCodec.encode(action, type, data, replaceType, replaceData, forceData, blockData, replacedBlockData, user, uuid, object, payload, time);
+            if (spillData != null && ConsumerSpill.append(spillData)) {
+                return;
+            }
+        }
+
+        int wid = -1;
+        int x = 0;
+        int y = 0;
+        int z = 0;
+        Object position = ConsumerEvent.position(object);
+        if (position instanceof BlockState) {
+            BlockState block = (BlockState) position;
+            wid = WorldUtils.getWorldId(block.getWorld().getName());
+            x = block.getX();
+            y = block.getY();
+            z = block.getZ();
+        }
+        else if (position instanceof Location && ((Location) position).getWorld() != null) {
+            Location location = (Location) position;
+            wid = WorldUtils.getWorldId(location.getWorld().getName());
+            x = location.getBlockX();
+            y = location.getBlockY();
+            z = location.getBlockZ();
+        }
+
+        EventCodec journalData = null;
+        if (ConsumerJournal.isEnabled()) {
+            journalData = EventCodec.encode(action, type, data, replaceType, replaceData, forceData, blockData, replacedBlockData, user, uuid, object, payload, time);
+        }
+
+        while (true) {
+            int currentConsumer = Consumer.currentConsumer;
+            ConsumerBuffer buffer = Consumer.getBuffer(currentConsumer);
+            if (!buffer.enter(currentConsumer)) {
+                continue;
+            }
+
+            boolean added = false;
+            try {
+                added = buffer.add(action, type, data, replaceType, replaceData, forceData, blockData, replacedBlockData, user, uuid, wid, x, y, z, object, payload, time);
+                if (added && journalData != null) {
+                    ConsumerJournal.append(currentConsumer, journalData);
+                }
+            }
+            finally {
+                buffer.exit();
+            }
+
+            if (added) {
+                return;
+            }
+
+            // buffer is full, wait for the consumer to switch buffers
+            Thread.yield();
+        }
     }
 
     protected static void queueAdvancedBreak(String user, BlockState block, Material type, String blockData, int data, Material breakType, int blockNumber) {
-        int currentConsumer = Consumer.currentConsumer;
-        int consumerId = Consumer.newConsumerId(currentConsumer);
-        addConsumer(currentConsumer, new Object[] { consumerId, Process.BLOCK_BREAK, type, data, breakType, 0, blockNumber, blockData });
-        queueStandardData(consumerId, currentConsumer, new String[] { user, null }, block);
+        queueEvent(Process.BLOCK_BREAK, type, data, breakType, 0, blockNumber, blockData, null, user, null, block, null);
     }
 
     protected static void queueArtInsert(int id, String name) {
-        int currentConsumer = Consumer.currentConsumer;
-        int consumerId = Consumer.newConsumerId(currentConsumer);
-        addConsumer(currentConsumer, new Object[] { consumerId, Process.ART_INSERT, null, 0, null, 0, id, null });
-        queueStandardData(consumerId, currentConsumer, new String[] { null, null }, name);
+        queueEvent(Process.ART_INSERT, null, 0, null, 0, id, null, null, null, null, name, null);
     }
 
     protected static void queueBlockBreak(String user, BlockState block, Material type, String blockData, int extraData) {
@@ -128,10 +185,7 @@ public class Queue {
             }
         }
 
-        int currentConsumer = Consumer.currentConsumer;
-        int consumerId = Consumer.newConsumerId(currentConsumer);
-        addConsumer(currentConsumer, new Object[] { consumerId, Process.BLOCK_BREAK, type, extraData, breakType, 0, blockNumber, blockData });
-        queueStandardData(consumerId, currentConsumer, new String[] { user, null }, block);
+        queueEvent(Process.BLOCK_BREAK, type, extraData, breakType, 0, blockNumber, blockData, null, user, null, block, null);
     }
 
     protected static void queueBlockPlace(String user, BlockState blockLocation, Material blockType, BlockState blockReplaced, Material forceType, int forceD, int forceData, String blockData) {
@@ -173,10 +227,7 @@ public class Queue {
             replacedBlockData = blockReplaced.getBlockData().getAsString();
         }
 
-        int currentConsumer = Consumer.currentConsumer;
-        int consumerId = Consumer.newConsumerId(currentConsumer);
-        addConsumer(currentConsumer, new Object[] { consumerId, Process.BLOCK_PLACE, type, data, replaceType, replaceData, forceData, blockData, replacedBlockData });
-        queueStandardData(consumerId, currentConsumer, new String[] { user, null }, blockLocation);
+        queueEvent(Process.BLOCK_PLACE, type, data, replaceType, replaceData, forceData, blockData, replacedBlockData, user, null, blockLocation, null);
     }
 
     protected static void queueBlockPlaceDelayed(final String user, final Location placed, final Material type, final String blockData, final BlockState replaced, int ticks) {
@@ -224,62 +275,35 @@ public class Queue {
     }
 
     protected static void queueContainerBreak(String user, Location location, Material type, ItemStack[] oldInventory) {
-        int currentConsumer = Consumer.currentConsumer;
-        int consumerId = Consumer.newConsumerId(currentConsumer);
-        addConsumer(currentConsumer, new Object[] { consumerId, Process.CONTAINER_BREAK, type, 0, null, 0, 0, null });
-        Consumer.consumerContainers.get(currentConsumer).put(consumerId, oldInventory);
-        queueStandardData(consumerId, currentConsumer, new String[] { user, null }, location);
+        queueEvent(Process.CONTAINER_BREAK, type, 0, null, 0, 0, null, null, user, null, location, oldInventory);
     }
 
-    protected static synchronized void queueContainerTransaction(String user, Location location, Material type, Object inventory, int chestId) {
-        int currentConsumer = Consumer.currentConsumer;
-        int consumerId = Consumer.newConsumerId(currentConsumer);
-        addConsumer(currentConsumer, new Object[] { consumerId, Process.CONTAINER_TRANSACTION, type, 0, null, 0, chestId, null });
-        Consumer.consumerInventories.get(currentConsumer).put(consumerId, inventory);
-        queueStandardData(consumerId, currentConsumer, new String[] { user, null }, location);
+    protected static void queueContainerTransaction(String user, Location location, Material type, Object inventory, int chestId) {
+        queueEvent(Process.CONTAINER_TRANSACTION, type, 0, null, 0, chestId, null, null, user, null, location, inventory);
     }
 
     protected static void queueItemTransaction(String user, Location location, int time, int offset, int itemId) {
-        int currentConsumer = Consumer.currentConsumer;
-        int consumerId = Consumer.newConsumerId(currentConsumer);
-        addConsumer(currentConsumer, new Object[] { consumerId, Process.ITEM_TRANSACTION, null, offset, null, time, itemId, null });
-        queueStandardData(consumerId, currentConsumer, new String[] { user, null }, location);
+        queueEvent(Process.ITEM_TRANSACTION, null, offset, null, time, itemId, null, null, user, null, location, null);
     }
 
     protected static void queueEntityInsert(int id, String name) {
-        int currentConsumer = Consumer.currentConsumer;
-        int consumerId = Consumer.newConsumerId(currentConsumer);
-        addConsumer(currentConsumer, new Object[] { consumerId, Process.ENTITY_INSERT, null, 0, null, 0, id, null });
-        queueStandardData(consumerId, currentConsumer, new String[] { null, null }, name);
+        queueEvent(Process.ENTITY_INSERT, null, 0, null, 0, id, null, null, null, null, name, null);
     }
 
     protected static void queueEntityKill(String user, Location location, List<Object> data, EntityType type) {
-        int currentConsumer = Consumer.currentConsumer;
-        int consumerId = Consumer.newConsumerId(currentConsumer);
-        addConsumer(currentConsumer, new Object[] { consumerId, Process.ENTITY_KILL, null, 0, null, 0, 0 });
-        Consumer.consumerObjectList.get(currentConsumer).put(consumerId, data);
-        queueStandardData(consumerId, currentConsumer, new String[] { user, null }, new Object[] { location.getBlock().getState(), type, null });
+        queueEvent(Process.ENTITY_KILL, null, 0, null, 0, 0, null, null, user, null, new Object[] { location.getBlock().getState(), type, null }, data);
     }
 
     protected static void queueEntitySpawn(String user, BlockState block, EntityType type, int data) {
-        int currentConsumer = Consumer.currentConsumer;
-        int consumerId = Consumer.newConsumerId(currentConsumer);
-        addConsumer(currentConsumer, new Object[] { consumerId, Process.ENTITY_SPAWN, null, 0, null, 0, data, null });
-        queueStandardData(consumerId, currentConsumer, new String[] { user, null }, new Object[] { block, type });
+        queueEvent(Process.ENTITY_SPAWN, null, 0, null, 0, data, null, null, user, null, new Object[] { block, type }, null);
     }
 
     protected static void queueMaterialInsert(int id, String name) {
-        int currentConsumer = Consumer.currentConsumer;
-        int consumerId = Consumer.newConsumerId(currentConsumer);
-        addConsumer(currentConsumer, new Object[] { consumerId, Process.MATERIAL_INSERT, null, 0, null, 0, id, null });
-        queueStandardData(consumerId, currentConsumer, new String[] { null, null }, name);
+        queueEvent(Process.MATERIAL_INSERT, null, 0, null, 0, id, null, null, null, null, name, null);
     }
 
     protected static void queueBlockDataInsert(int id, String data) {
-        int currentConsumer = Consumer.currentConsumer;
-        int consumerId = Consumer.newConsumerId(currentConsumer);
-        addConsumer(currentConsumer, new Object[] { consumerId, Process.BLOCKDATA_INSERT, null, 0, null, 0, id, null });
-        queueStandardData(consumerId, currentConsumer, new String[] { null, null }, data);
+        queueEvent(Process.BLOCKDATA_INSERT, null, 0, null, 0, id, null, null, null, null, data, null);
     }
 
     protected static void queueNaturalBlockBreak(String user, BlockState block, Block relative, Material type, String blockData, int data) {
@@ -288,57 +312,32 @@ public class Queue {
             blockStates.add(relative.getState());
         }
 
-        int currentConsumer = Consumer.currentConsumer;
-        int consumerId = Consumer.newConsumerId(currentConsumer);
-        addConsumer(currentConsumer, new Object[] { consumerId, Process.NATURAL_BLOCK_BREAK, type, data, null, 0, 0, blockData });
-        Consumer.consumerBlockList.get(currentConsumer).put(consumerId, blockStates);
-        queueStandardData(consumerId, currentConsumer, new String[] { user, null }, block);
+        queueEvent(Process.NATURAL_BLOCK_BREAK, type, data, null, 0, 0, blockData, null, user, null, block, blockStates);
     }
 
     protected static void queuePlayerChat(Player player, String message, long timestamp) {
-        int currentConsumer = Consumer.currentConsumer;
-        int consumerId = Consumer.newConsumerId(currentConsumer);
-        addConsumer(currentConsumer, new Object[] { consumerId, Process.PLAYER_CHAT, null, 0, null, 0, 0, null });
-        Consumer.consumerStrings.get(currentConsumer).put(consumerId, message);
-        queueStandardData(consumerId, currentConsumer, new String[] { player.getName(), null }, new Object[] { timestamp, player.getLocation().clone() });
+        queueEvent(Process.PLAYER_CHAT, null, 0, null, 0, 0, null, null, player.getName(), null, new Object[] { timestamp, player.getLocation().clone() }, message);
     }
 
     protected static void queuePlayerCommand(Player player, String message, long timestamp) {
-        int currentConsumer = Consumer.currentConsumer;
-        int consumerId = Consumer.newConsumerId(currentConsumer);
-        addConsumer(currentConsumer, new Object[] { consumerId, Process.PLAYER_COMMAND, null, 0, null, 0, 0, null });
-        Consumer.consumerStrings.get(currentConsumer).put(consumerId, message);
-        queueStandardData(consumerId, currentConsumer, new String[] { player.getName(), null }, new Object[] { timestamp, player.getLocation().clone() });
+        queueEvent(Process.PLAYER_COMMAND, null, 0, null, 0, 0, null, null, player.getName(), null, new Object[] { timestamp, player.getLocation().clone() }, message);
     }
 
     protected static void queuePlayerInteraction(String user, BlockState block, Material type) {
-        int currentConsumer = Consumer.currentConsumer;
-        int consumerId = Consumer.newConsumerId(currentConsumer);
-        addConsumer(currentConsumer, new Object[] { consumerId, Process.PLAYER_INTERACTION, type, 0, null, 0, 0, null });
-        queueStandardData(consumerId, currentConsumer, new String[] { user, null }, block);
+        queueEvent(Process.PLAYER_INTERACTION, type, 0, null, 0, 0, null, null, user, null, block, null);
     }
 
     protected static void queuePlayerKill(String user, Location location, String player) {
-        int currentConsumer = Consumer.currentConsumer;
-        int consumerId = Consumer.newConsumerId(currentConsumer);
-        addConsumer(currentConsumer, new Object[] { consumerId, Process.PLAYER_KILL, null, 0, null, 0, 0, null });
-        queueStandardData(consumerId, currentConsumer, new String[] { user, null }, new Object[] { location.getBlock().getState(), player });
+        queueEvent(Process.PLAYER_KILL, null, 0, null, 0, 0, null, null, user, null, new Object[] { location.getBlock().getState(), player }, null);
     }
 
     protected static void queuePlayerLogin(Player player, int time, int configSessions, int configUsernames) {
-        int currentConsumer = Consumer.currentConsumer;
-        int consumerId = Consumer.newConsumerId(currentConsumer);
         String uuid = player.getUniqueId().toString();
-        addConsumer(currentConsumer, new Object[] { consumerId, Process.PLAYER_LOGIN, null, configSessions, null, configUsernames, time, null });
-        Consumer.consumerStrings.get(currentConsumer).put(consumerId, uuid);
-        queueStandardData(consumerId, currentConsumer, new String[] { player.getName(), uuid }, player.getLocation().clone());
+        queueEvent(Process.PLAYER_LOGIN, null, configSessions, null, configUsernames, time, null, null, player.getName(), uuid, player.getLocation().clone(), null);
     }
 
     protected static void queuePlayerQuit(Player player, int time) {
-        int currentConsumer = Consumer.currentConsumer;
-        int consumerId = Consumer.newConsumerId(currentConsumer);
-        addConsumer(currentConsumer, new Object[] { consumerId, Process.PLAYER_LOGOUT, null, 0, null, 0, time, null });
-        queueStandardData(consumerId, currentConsumer, new String[] { player.getName(), null }, player.getLocation().clone());
+        queueEvent(Process.PLAYER_LOGOUT, null, 0, null, 0, time, null, null, player.getName(), null, player.getLocation().clone(), null);
     }
 
     protected static void queueRollbackUpdate(String user, Location location, List<Object[]> list, int table, int action) {
@@ -346,11 +345,7 @@ public class Queue {
             location = new Location(Bukkit.getServer().getWorlds().get(0), 0, 0, 0);
         }
 
-        int currentConsumer = Consumer.currentConsumer;
-        int consumerId = Consumer.newConsumerId(currentConsumer);
-        addConsumer(currentConsumer, new Object[] { consumerId, table, null, 0, null, 0, action, null });
-        Consumer.consumerObjectArrayList.get(currentConsumer).put(consumerId, list);
-        queueStandardData(consumerId, currentConsumer, new String[] { user, null }, location);
+        queueEvent(table, null, 0, null, 0, action, null, null, user, null, location, list);
     }
 
     protected static void queueSignText(String user, Location location, int action, int color, int colorSecondary, boolean frontGlowing, boolean backGlowing, boolean isWaxed, boolean isFront, String line1, String line2, String line3, String line4, String line5, String line6, String line7, String line8, int offset) {
@@ -359,39 +354,22 @@ public class Queue {
             return;
         }
         */
-        int currentConsumer = Consumer.currentConsumer;
-        int consumerId = Consumer.newConsumerId(currentConsumer);
-        addConsumer(currentConsumer, new Object[] { consumerId, Process.SIGN_TEXT, null, color, null, action, offset, null });
-        Consumer.consumerSigns.get(currentConsumer).put(consumerId, new Object[] { colorSecondary, BlockUtils.getSignData(frontGlowing, backGlowing), isWaxed, isFront, line1, line2, line3, line4, line5, line6, line7, line8 });
-        queueStandardData(consumerId, currentConsumer, new String[] { user, null }, location);
+        queueEvent(Process.SIGN_TEXT, null, color, null, action, offset, null, null, user, null, location, new Object[] { colorSecondary, BlockUtils.getSignData(frontGlowing, backGlowing), isWaxed, isFront, line1, line2, line3, line4, line5, line6, line7, line8 });
     }
 
     protected static void queueSignUpdate(String user, BlockState block, int action, int time) {
-        int currentConsumer = Consumer.currentConsumer;
-        int consumerId = Consumer.newConsumerId(currentConsumer);
-        addConsumer(currentConsumer, new Object[] { consumerId, Process.SIGN_UPDATE, null, action, null, 0, time, null });
-        queueStandardData(consumerId, currentConsumer, new String[] { user, null }, block);
+        queueEvent(Process.SIGN_UPDATE, null, action, null, 0, time, null, null, user, null, block, null);
     }
 
     protected static void queueSkullUpdate(String user, BlockState block, int rowId) {
-        int currentConsumer = Consumer.currentConsumer;
-        int consumerId = Consumer.newConsumerId(currentConsumer);
-        addConsumer(currentConsumer, new Object[] { consumerId, Process.SKULL_UPDATE, null, 0, null, 0, rowId, null });
-        queueStandardData(consumerId, currentConsumer, new String[] { user, null }, block);
+        queueEvent(Process.SKULL_UPDATE, null, 0, null, 0, rowId, null, null, user, null, block, null);
     }
 
     protected static void queueStructureGrow(String user, BlockState block, List<BlockState> blockList, int replacedListSize) {
-        int currentConsumer = Consumer.currentConsumer;
-        int consumerId = Consumer.newConsumerId(currentConsumer);
-        addConsumer(currentConsumer, new Object[] { consumerId, Process.STRUCTURE_GROWTH, null, 0, null, 0, replacedListSize, null });
-        Consumer.consumerBlockList.get(currentConsumer).put(consumerId, blockList);
-        queueStandardData(consumerId, currentConsumer, new String[] { user, null }, block);
+        queueEvent(Process.STRUCTURE_GROWTH, null, 0, null, 0, replacedListSize, null, null, user, null, block, blockList);
     }
 
     protected static void queueWorldInsert(int id, String world) {
-        int currentConsumer = Consumer.currentConsumer;
-        int consumerId = Consumer.newConsumerId(currentConsumer);
-        addConsumer(currentConsumer, new Object[] { consumerId, Process.WORLD_INSERT, null, 0, null, 0, id, null });
-        queueStandardData(consumerId, currentConsumer, new String[] { null, null }, world);
+        queueEvent(Process.WORLD_INSERT, null, 0, null, 0, id, null, null, null, null, world, null);
     }
 }
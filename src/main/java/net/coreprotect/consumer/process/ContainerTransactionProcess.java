@@ -7,7 +7,6 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Set;
 
 import org.bukkit.Location;
@@ -16,17 +15,15 @@ import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
 
 import net.coreprotect.config.ConfigHandler;
-import net.coreprotect.consumer.Consumer;
 import net.coreprotect.database.logger.ContainerLogger;
 
 class ContainerTransactionProcess {
 
-    static void process(PreparedStatement preparedStmtContainer, PreparedStatement preparedStmtItems, int batchCount, int processId, int id, Material type, int forceData, String user, Object object) {
+    static void process(PreparedStatement preparedStmtContainer, PreparedStatement preparedStmtItems, int batchCount, Material type, int forceData, String user, Object object, Object payload) {
         if (object instanceof Location) {
             Location location = (Location) object;
-            Map<Integer, Object> inventories = Consumer.consumerInventories.get(processId);
-            if (inventories.get(id) != null) {
-                Object inventory = inventories.get(id);
+            if (payload != null) {
+                Object inventory = payload;
                 String transactingChestId = location.getWorld().getUID().toString() + "." + location.getBlockX() + "." + location.getBlockY() + "." + location.getBlockZ();
                 String loggingChestId = user.toLowerCase(Locale.ROOT) + "." + location.getBlockX() + "." + location.getBlockY() + "." + location.getBlockZ();
                 if (ConfigHandler.loggingChest.get(loggingChestId) != null) {
@@ -84,7 +81,6 @@ class ContainerTransactionProcess {
                         }
                     }
                 }
-                inventories.remove(id);
             }
         }
     }
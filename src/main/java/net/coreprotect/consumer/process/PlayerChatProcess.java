@@ -1,29 +1,25 @@
 package net.coreprotect.consumer.process;
 
 import java.sql.PreparedStatement;
-import java.util.Map;
 
 import org.bukkit.Location;
 
-import net.coreprotect.consumer.Consumer;
 import net.coreprotect.database.logger.ChatLogger;
 
 class PlayerChatProcess {
 
-    static void process(PreparedStatement preparedStmt, int batchCount, int processId, int id, Object object, String user) {
+    static void process(PreparedStatement preparedStmt, int batchCount, Object object, Object payload, String user) {
         if (!(object instanceof Object[])) {
             return;
         }
 
         Object[] data = (Object[]) object;
         if (data[1] instanceof Location) {
-            Map<Integer, String> strings = Consumer.consumerStrings.get(processId);
-            if (strings.get(id) != null) {
-                String message = strings.get(id);
+            if (payload instanceof String) {
+                String message = (String) payload;
                 Long timestamp = (Long) data[0];
                 Location location = (Location) data[1];
                 ChatLogger.log(preparedStmt, batchCount, timestamp, location, user, message);
-                strings.remove(id);
             }
         }
     }
@@ -8,7 +8,7 @@ import net.coreprotect.database.logger.PlayerKillLogger;
 
 class PlayerKillProcess {
 
-    static void process(PreparedStatement preparedStmt, int batchCount, int id, Object object, String user) {
+    static void process(PreparedStatement preparedStmt, int batchCount, Object object, String user) {
         if (object instanceof Object[]) {
             BlockState block = (BlockState) ((Object[]) object)[0];
             String player = (String) ((Object[]) object)[1];
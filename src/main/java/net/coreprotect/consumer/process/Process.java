@@ -1,18 +1,19 @@
 package net.coreprotect.consumer.process;
 
 import java.sql.Connection;
-import java.sql.PreparedStatement;
 import java.sql.Statement;
-import java.util.ArrayList;
 import java.util.Locale;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.bukkit.Material;
 
 import net.coreprotect.config.Config;
 import net.coreprotect.config.ConfigHandler;
 import net.coreprotect.consumer.Consumer;
+import net.coreprotect.consumer.ConsumerBuffer;
+import net.coreprotect.consumer.ConsumerEvent;
+import net.coreprotect.consumer.ConsumerJournal;
+import net.coreprotect.consumer.FlushPolicy;
 import net.coreprotect.database.Database;
 import net.coreprotect.database.statement.UserStatement;
 
@@ -48,10 +49,21 @@ public class Process {
     public static final int BLOCK_INVENTORY_ROLLBACK_UPDATE = 29;
 
     public static int lastLockUpdate = 0;
-    private static volatile int currentConsumerSize = 0;
+    private static final AtomicInteger currentConsumerSize = new AtomicInteger(0);
+    // queue time of the event each consumer thread is processing
+    private static final ThreadLocal<long[]> eventTime = ThreadLocal.withInitial(() -> new long[1]);
 
     public static int getCurrentConsumerSize() {
-        return currentConsumerSize;
+        return currentConsumerSize.get();
+    }
+
+    /**
+     * Returns the unix time the event being processed on this thread was queued at,
+     * or the current time outside of the consumer.
+     */
+    public static int getEventTime() {
+        long time = eventTime.get()[0];
+        return (int) ((time > 0 ? time : System.currentTimeMillis()) / 1000L);
     }
 
     protected static void updateLockTable(Statement statement, int locked) {
@@ -69,244 +81,248 @@ public class Process {
     }
 
     protected static void processConsumer(int processId, boolean lastRun) {
-        try (Connection connection = Database.getConnection(false, 500)) {
+        try (Connection connection = Database.getConsumerConnection(500)) {
             if (connection == null) {
                 return;
             }
 
             Statement statement = connection.createStatement();
-            Database.performCheckpoint(statement, Config.getGlobal().MYSQL);
 
             Consumer.isPaused = true;
-            ArrayList<Object[]> consumerData = Consumer.consumer.get(processId);
-            Map<Integer, String[]> users = Consumer.consumerUsers.get(processId);
-            Map<Integer, Object> consumerObject = Consumer.consumerObjects.get(processId);
-            int consumerDataSize = consumerData.size();
-            currentConsumerSize = consumerDataSize;
+            ConsumerBuffer consumerBuffer = Consumer.getBuffer(processId);
+            consumerBuffer.awaitWriters();
+            int consumerDataSize = consumerBuffer.size();
+            currentConsumerSize.set(consumerDataSize);
 
-            if (currentConsumerSize == 0) { // No data, skip processing
+            if (consumerDataSize == 0) { // No data, skip processing
                 updateLockTable(statement, (lastRun ? 0 : 1));
                 statement.close();
-                Consumer.consumer_id.put(processId, new Integer[] { 0, 0 });
                 Consumer.isPaused = false;
                 return;
             }
 
+            long commitStart = System.currentTimeMillis();
             Database.beginTransaction(statement, Config.getGlobal().MYSQL);
             // Scan through usernames, ensure everything is loaded in memory.
-            for (Entry<Integer, String[]> entry : users.entrySet()) {
-                String[] data = entry.getValue();
-                if (data != null) {
-                    String user = data[0];
-                    String uuid = data[1];
-                    if (user != null && ConfigHandler.playerIdCache.get(user.toLowerCase(Locale.ROOT)) == null) {
-                        UserStatement.loadId(connection, user, uuid);
-                    }
+            for (int i = 0; i < consumerDataSize; i++) {
+                ConsumerEvent event = consumerBuffer.get(i);
+                String user = event.user;
+                if (user != null && ConfigHandler.playerIdCache.get(user.toLowerCase(Locale.ROOT)) == null) {
+                    UserStatement.loadId(connection, user, event.uuid);
                 }
             }
             updateLockTable(statement, (lastRun ? 0 : 1));
             Database.commitTransaction(statement, Config.getGlobal().MYSQL);
 
-            // Create prepared statements
-            PreparedStatement preparedStmtSigns = Database.prepareStatement(connection, Database.SIGN, false);
-            PreparedStatement preparedStmtBlocks = Database.prepareStatement(connection, Database.BLOCK, false);
-            PreparedStatement preparedStmtSkulls = Database.prepareStatement(connection, Database.SKULL, true);
-            PreparedStatement preparedStmtContainers = Database.prepareStatement(connection, Database.CONTAINER, false);
-            PreparedStatement preparedStmtItems = Database.prepareStatement(connection, Database.ITEM, false);
-            PreparedStatement preparedStmtWorlds = Database.prepareStatement(connection, Database.WORLD, false);
-            PreparedStatement preparedStmtChat = Database.prepareStatement(connection, Database.CHAT, false);
-            PreparedStatement preparedStmtCommand = Database.prepareStatement(connection, Database.COMMAND, false);
-            PreparedStatement preparedStmtSession = Database.prepareStatement(connection, Database.SESSION, false);
-            PreparedStatement preparedStmtEntities = Database.prepareStatement(connection, Database.ENTITY, true);
-            PreparedStatement preparedStmtMaterials = Database.prepareStatement(connection, Database.MATERIAL, false);
-            PreparedStatement preparedStmtArt = Database.prepareStatement(connection, Database.ART, false);
-            PreparedStatement preparedStmtEntity = Database.prepareStatement(connection, Database.ENTITY_MAP, false);
-            PreparedStatement preparedStmtBlockdata = Database.prepareStatement(connection, Database.BLOCKDATA, false);
-
-            // Scan through consumer data
-            Database.beginTransaction(statement, Config.getGlobal().MYSQL);
-            for (int i = 0; i < consumerDataSize; i++) {
-                Object[] data = consumerData.get(i);
-                if (data != null) {
-                    int id = (int) data[0];
-                    int action = (int) data[1];
-                    Material blockType = (Material) data[2];
-                    int blockData = (int) data[3];
-                    Material replaceType = (Material) data[4];
-                    int replaceData = (int) data[5];
-                    int forceData = (int) data[6];
-
-                    if (users.get(id) != null && consumerObject.get(id) != null) {
-                        String user = users.get(id)[0];
-                        Object object = consumerObject.get(id);
-
-                        try {
-                            switch (action) {
-                                case Process.BLOCK_BREAK:
-                                    BlockBreakProcess.process(preparedStmtBlocks, preparedStmtSkulls, i, processId, id, blockType, blockData, replaceType, forceData, user, object, (String) data[7]);
-                                    break;
-                                case Process.BLOCK_PLACE:
-                                    BlockPlaceProcess.process(preparedStmtBlocks, preparedStmtSkulls, i, blockType, blockData, replaceType, replaceData, forceData, user, object, (String) data[7], (String) data[8]);
-                                    break;
-                                case Process.SIGN_TEXT:
-                                    SignTextProcess.process(preparedStmtSigns, i, processId, id, forceData, user, object, replaceData, blockData);
-                                    break;
-                                case Process.CONTAINER_BREAK:
-                                    ContainerBreakProcess.process(preparedStmtContainers, i, processId, id, blockType, user, object);
-                                    break;
-                                case Process.PLAYER_INTERACTION:
-                                    PlayerInteractionProcess.process(preparedStmtBlocks, i, user, object, blockType);
-                                    break;
-                                case Process.CONTAINER_TRANSACTION:
-                                    ContainerTransactionProcess.process(preparedStmtContainers, preparedStmtItems, i, processId, id, blockType, forceData, user, object);
-                                    break;
-                                case Process.ITEM_TRANSACTION:
-                                    ItemTransactionProcess.process(preparedStmtItems, i, processId, id, forceData, replaceData, blockData, user, object);
-                                    break;
-                                case Process.STRUCTURE_GROWTH:
-                                    StructureGrowthProcess.process(statement, preparedStmtBlocks, i, processId, id, user, object, forceData);
-                                    break;
-                                case Process.ROLLBACK_UPDATE:
-                                    RollbackUpdateProcess.process(statement, processId, id, forceData, 0);
-                                    break;
-                                case Process.CONTAINER_ROLLBACK_UPDATE:
-                                    RollbackUpdateProcess.process(statement, processId, id, forceData, 1);
-                                    break;
-                                case Process.INVENTORY_ROLLBACK_UPDATE:
-                                    RollbackUpdateProcess.process(statement, processId, id, forceData, 2);
-                                    break;
-                                case Process.INVENTORY_CONTAINER_ROLLBACK_UPDATE:
-                                    RollbackUpdateProcess.process(statement, processId, id, forceData, 3);
-                                    break;
-                                case Process.BLOCK_INVENTORY_ROLLBACK_UPDATE:
-                                    RollbackUpdateProcess.process(statement, processId, id, forceData, 4);
-                                    break;
-                                case Process.WORLD_INSERT:
-                                    WorldInsertProcess.process(preparedStmtWorlds, i, statement, object, forceData);
-                                    break;
-                                case Process.SIGN_UPDATE:
-                                    SignUpdateProcess.process(statement, object, user, blockData, forceData);
-                                    break;
-                                case Process.SKULL_UPDATE:
-                                    SkullUpdateProcess.process(statement, object, forceData);
-                                    break;
-                                case Process.PLAYER_CHAT:
-                                    PlayerChatProcess.process(preparedStmtChat, i, processId, id, object, user);
-                                    break;
-                                case Process.PLAYER_COMMAND:
-                                    PlayerCommandProcess.process(preparedStmtCommand, i, processId, id, object, user);
-                                    break;
-                                case Process.PLAYER_LOGIN:
-                                    PlayerLoginProcess.process(connection, preparedStmtSession, i, processId, id, object, blockData, replaceData, forceData, user);
-                                    break;
-                                case Process.PLAYER_LOGOUT:
-                                    PlayerLogoutProcess.process(preparedStmtSession, i, object, forceData, user);
-                                    break;
-                                case Process.ENTITY_KILL:
-                                    EntityKillProcess.process(preparedStmtBlocks, preparedStmtEntities, i, processId, id, object, user);
-                                    break;
-                                case Process.ENTITY_SPAWN:
-                                    EntitySpawnProcess.process(statement, object, forceData);
-                                    break;
-                                case Process.NATURAL_BLOCK_BREAK:
-                                    NaturalBlockBreakProcess.process(statement, preparedStmtBlocks, i, processId, id, user, object, blockType, blockData, (String) data[7]);
-                                    break;
-                                case Process.MATERIAL_INSERT:
-                                    MaterialInsertProcess.process(preparedStmtMaterials, statement, i, object, forceData);
-                                    break;
-                                case Process.ART_INSERT:
-                                    ArtInsertProcess.process(preparedStmtArt, statement, i, object, forceData);
-                                    break;
-                                case Process.ENTITY_INSERT:
-                                    EntityInsertProcess.process(preparedStmtEntity, statement, i, object, forceData);
-                                    break;
-                                case Process.PLAYER_KILL:
-                                    PlayerKillProcess.process(preparedStmtBlocks, i, id, object, user);
-                                    break;
-                                case Process.BLOCKDATA_INSERT:
-                                    BlockDataInsertProcess.process(preparedStmtBlockdata, statement, i, object, forceData);
-                                    break;
-                            }
+            int shardCount = ProcessShards.getShardCount();
+            if (shardCount > 1) {
+                // write through the shard connections, this connection is only used for the lock table
+                ProcessShards.process(consumerBuffer, consumerDataSize, shardCount);
+                statement.close();
+            }
+            else {
+                // Create prepared statements
+                ProcessStatements statements = new ProcessStatements(connection);
 
-                            // If database connection goes missing, remove processed data from consumer and abort
-                            if (statement.isClosed()) {
-                                for (int index = (i - 1); index >= 0; index--) {
-                                    consumerData.remove(index);
-                                }
-                                currentConsumerSize = 0;
-                                Consumer.consumer_id.put(processId, new Integer[] { 0, 0 });
-                                Consumer.isPaused = false;
-                                return;
-                            }
+                // Scan through consumer data
+                Database.beginTransaction(statement, Config.getGlobal().MYSQL);
+                int processed = processEvents(connection, statement, statements, consumerBuffer, null, consumerDataSize);
 
-                            // If interrupt requested, commit data, sleep, and resume processing
-                            if (Consumer.interrupt) {
-                                commit(statement, preparedStmtSigns, preparedStmtBlocks, preparedStmtSkulls, preparedStmtContainers, preparedStmtItems, preparedStmtWorlds, preparedStmtChat, preparedStmtCommand, preparedStmtSession, preparedStmtEntities, preparedStmtMaterials, preparedStmtArt, preparedStmtEntity, preparedStmtBlockdata);
-                                Thread.sleep(500);
-                                Database.beginTransaction(statement, Config.getGlobal().MYSQL);
-                            }
-                        }
-                        catch (Exception e) {
-                            e.printStackTrace();
-                        }
+                // If database connection went missing, remove processed data from consumer and abort
+                if (processed < consumerDataSize) {
+                    Consumer.commitLock.writeLock().lock();
+                    try {
+                        consumerBuffer.release(processed);
+                    }
+                    finally {
+                        Consumer.commitLock.writeLock().unlock();
                     }
+                    currentConsumerSize.set(0);
+                    Consumer.isPaused = false;
+                    return;
                 }
-                currentConsumerSize--;
-            }
 
-            // commit data to database
-            commit(statement, preparedStmtSigns, preparedStmtBlocks, preparedStmtSkulls, preparedStmtContainers, preparedStmtItems, preparedStmtWorlds, preparedStmtChat, preparedStmtCommand, preparedStmtSession, preparedStmtEntities, preparedStmtMaterials, preparedStmtArt, preparedStmtEntity, preparedStmtBlockdata);
+                // commit data to database, and recycle the processed slots before lookups can take a new snapshot
+                Consumer.commitLock.writeLock().lock();
+                try {
+                    statements.commit(statement);
+                    consumerBuffer.release(consumerDataSize);
+                }
+                finally {
+                    Consumer.commitLock.writeLock().unlock();
+                }
 
-            // close connections/statements
-            preparedStmtSigns.close();
-            preparedStmtBlocks.close();
-            preparedStmtSkulls.close();
-            preparedStmtContainers.close();
-            preparedStmtItems.close();
-            preparedStmtWorlds.close();
-            preparedStmtChat.close();
-            preparedStmtCommand.close();
-            preparedStmtSession.close();
-            preparedStmtEntities.close();
-            preparedStmtMaterials.close();
-            preparedStmtArt.close();
-            preparedStmtEntity.close();
-            preparedStmtBlockdata.close();
-            statement.close();
+                // close connections/statements
+                statements.close();
+                statement.close();
+            }
 
-            // clear maps
-            users.clear();
-            consumerObject.clear();
-            consumerData.clear();
+            if (consumerBuffer.size() == 0) {
+                ConsumerJournal.truncate(processId);
+            }
+            FlushPolicy.recordBatch(consumerDataSize, System.currentTimeMillis() - commitStart);
         }
         catch (Exception e) {
             e.printStackTrace();
         }
 
-        Consumer.consumer_id.put(processId, new Integer[] { 0, 0 });
         Consumer.isPaused = false;
     }
 
-    private static void commit(Statement statement, PreparedStatement preparedStmtSigns, PreparedStatement preparedStmtBlocks, PreparedStatement preparedStmtSkulls, PreparedStatement preparedStmtContainers, PreparedStatement preparedStmtItems, PreparedStatement preparedStmtWorlds, PreparedStatement preparedStmtChat, PreparedStatement preparedStmtCommand, PreparedStatement preparedStmtSession, PreparedStatement preparedStmtEntities, PreparedStatement preparedStmtMaterials, PreparedStatement preparedStmtArt, PreparedStatement preparedStmtEntity, PreparedStatement preparedStmtBlockdata) {
+    /**
+     * Commits the first count events processed from the buffer (or from indexes, if given), and marks
+     * them as committed before lookups can take a new snapshot, so they aren't reported twice.
+     */
+    protected static void commit(Statement statement, ProcessStatements statements, ConsumerBuffer consumerBuffer, int[] indexes, int count) {
+        Consumer.commitLock.writeLock().lock();
         try {
-            preparedStmtSigns.executeBatch();
-            preparedStmtBlocks.executeBatch();
-            preparedStmtSkulls.executeBatch();
-            preparedStmtContainers.executeBatch();
-            preparedStmtItems.executeBatch();
-            preparedStmtWorlds.executeBatch();
-            preparedStmtChat.executeBatch();
-            preparedStmtCommand.executeBatch();
-            preparedStmtSession.executeBatch();
-            preparedStmtEntities.executeBatch();
-            preparedStmtMaterials.executeBatch();
-            preparedStmtArt.executeBatch();
-            preparedStmtEntity.executeBatch();
-            preparedStmtBlockdata.executeBatch();
-            Database.commitTransaction(statement, Config.getGlobal().MYSQL);
+            statements.commit(statement);
+            for (int i = 0; i < count; i++) {
+                consumerBuffer.get(indexes == null ? i : indexes[i]).committed = true;
+            }
         }
-        catch (Exception e) {
-            e.printStackTrace();
+        finally {
+            Consumer.commitLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the given consumer events using the statements for one connection.
+     * If indexes is null, the first count events in the buffer are processed.
+     * Returns the number of events processed, which is less than count if the connection went missing.
+     */
+    protected static int processEvents(Connection connection, Statement statement, ProcessStatements statements, ConsumerBuffer consumerBuffer, int[] indexes, int count) {
+        long[] currentTime = eventTime.get();
+        try {
+            return processEvents(connection, statement, statements, consumerBuffer, indexes, count, currentTime);
+        }
+        finally {
+            currentTime[0] = 0;
+        }
+    }
+
+    private static int processEvents(Connection connection, Statement statement, ProcessStatements statements, ConsumerBuffer consumerBuffer, int[] indexes, int count, long[] currentTime) {
+        for (int batchCount = 0; batchCount < count; batchCount++) {
+            ConsumerEvent event = consumerBuffer.get(indexes == null ? batchCount : indexes[batchCount]);
+            currentTime[0] = event.time;
+            if (event.object != null) {
+                int action = event.action;
+                Material blockType = event.type;
+                int blockData = event.data;
+                Material replaceType = event.replaceType;
+                int replaceData = event.replaceData;
+                int forceData = event.forceData;
+                String user = event.user;
+                Object object = event.object;
+                Object payload = event.payload;
+
+                try {
+                    switch (action) {
+                        case Process.BLOCK_BREAK:
+                            BlockBreakProcess.process(statements.get(Database.BLOCK), statements.get(Database.SKULL), batchCount, blockType, blockData, replaceType, forceData, user, object, event.blockData);
+                            break;
+                        case Process.BLOCK_PLACE:
+                            BlockPlaceProcess.process(statements.get(Database.BLOCK), statements.get(Database.SKULL), batchCount, blockType, blockData, replaceType, replaceData, forceData, user, object, event.blockData, event.replacedBlockData);
+                            break;
+                        case Process.SIGN_TEXT:
+                            SignTextProcess.process(statements.get(Database.SIGN), batchCount, forceData, user, object, payload, replaceData, blockData);
+                            break;
+                        case Process.CONTAINER_BREAK:
+                            ContainerBreakProcess.process(statements.get(Database.CONTAINER), batchCount, blockType, user, object, payload);
+                            break;
+                        case Process.PLAYER_INTERACTION:
+                            PlayerInteractionProcess.process(statements.get(Database.BLOCK), batchCount, user, object, blockType);
+                            break;
+                        case Process.CONTAINER_TRANSACTION:
+                            ContainerTransactionProcess.process(statements.get(Database.CONTAINER), statements.get(Database.ITEM), batchCount, blockType, forceData, user, object, payload);
+                            break;
+                        case Process.ITEM_TRANSACTION:
+                            ItemTransactionProcess.process(statements.get(Database.ITEM), batchCount, forceData, replaceData, blockData, user, object);
+                            break;
+                        case Process.STRUCTURE_GROWTH:
+                            StructureGrowthProcess.process(statement, statements.get(Database.BLOCK), batchCount, user, object, payload, forceData);
+                            break;
+                        case Process.ROLLBACK_UPDATE:
+                            RollbackUpdateProcess.process(statement, payload, forceData, 0);
+                            break;
+                        case Process.CONTAINER_ROLLBACK_UPDATE:
+                            RollbackUpdateProcess.process(statement, payload, forceData, 1);
+                            break;
+                        case Process.INVENTORY_ROLLBACK_UPDATE:
+                            RollbackUpdateProcess.process(statement, payload, forceData, 2);
+                            break;
+                        case Process.INVENTORY_CONTAINER_ROLLBACK_UPDATE:
+                            RollbackUpdateProcess.process(statement, payload, forceData, 3);
+                            break;
+                        case Process.BLOCK_INVENTORY_ROLLBACK_UPDATE:
+                            RollbackUpdateProcess.process(statement, payload, forceData, 4);
+                            break;
+                        case Process.WORLD_INSERT:
+                            WorldInsertProcess.process(statements.get(Database.WORLD), batchCount, statement, object, forceData);
+                            break;
+                        case Process.SIGN_UPDATE:
+                            SignUpdateProcess.process(statement, object, user, blockData, forceData);
+                            break;
+                        case Process.SKULL_UPDATE:
+                            SkullUpdateProcess.process(statement, object, forceData);
+                            break;
+                        case Process.PLAYER_CHAT:
+                            PlayerChatProcess.process(statements.get(Database.CHAT), batchCount, object, payload, user);
+                            break;
+                        case Process.PLAYER_COMMAND:
+                            PlayerCommandProcess.process(statements.get(Database.COMMAND), batchCount, object, payload, user);
+                            break;
+                        case Process.PLAYER_LOGIN:
+                            PlayerLoginProcess.process(connection, statements.get(Database.SESSION), batchCount, object, event.uuid, blockData, replaceData, forceData, user);
+                            break;
+                        case Process.PLAYER_LOGOUT:
+                            PlayerLogoutProcess.process(statements.get(Database.SESSION), batchCount, object, forceData, user);
+                            break;
+                        case Process.ENTITY_KILL:
+                            EntityKillProcess.process(statements.get(Database.BLOCK), statements.get(Database.ENTITY), batchCount, object, payload, user);
+                            break;
+                        case Process.ENTITY_SPAWN:
+                            EntitySpawnProcess.process(statement, object, forceData);
+                            break;
+                        case Process.NATURAL_BLOCK_BREAK:
+                            NaturalBlockBreakProcess.process(statement, statements.get(Database.BLOCK), batchCount, user, object, payload, blockType, blockData, event.blockData);
+                            break;
+                        case Process.MATERIAL_INSERT:
+                            MaterialInsertProcess.process(statements.get(Database.MATERIAL), statement, batchCount, object, forceData);
+                            break;
+                        case Process.ART_INSERT:
+                            ArtInsertProcess.process(statements.get(Database.ART), statement, batchCount, object, forceData);
+                            break;
+                        case Process.ENTITY_INSERT:
+                            EntityInsertProcess.process(statements.get(Database.ENTITY_MAP), statement, batchCount, object, forceData);
+                            break;
+                        case Process.PLAYER_KILL:
+                            PlayerKillProcess.process(statements.get(Database.BLOCK), batchCount, object, user);
+                            break;
+                        case Process.BLOCKDATA_INSERT:
+                            BlockDataInsertProcess.process(statements.get(Database.BLOCKDATA), statement, batchCount, object, forceData);
+                            break;
+                    }
+
+                    // If database connection goes missing, abort
+                    if (statement.isClosed()) {
+                        return batchCount;
+                    }
+
+                    // If interrupt requested, commit data, sleep, and resume processing
+                    if (Consumer.interrupt) {
+                        commit(statement, statements, consumerBuffer, indexes, batchCount + 1);
+                        Thread.sleep(500);
+                        Database.beginTransaction(statement, Config.getGlobal().MYSQL);
+                    }
+                }
+                catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+            currentConsumerSize.decrementAndGet();
         }
+
+        return count;
     }
 }
@@ -0,0 +1,243 @@
+package net.coreprotect.consumer.process;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.coreprotect.config.Config;
+import net.coreprotect.config.ConfigHandler;
+import net.coreprotect.consumer.Consumer;
+import net.coreprotect.consumer.ConsumerBuffer;
+import net.coreprotect.consumer.ConsumerEvent;
+import net.coreprotect.database.Database;
+
+/**
+ * Splits a consumer batch across several writer threads, each with its own pooled MySQL connection and transaction.
+ *
+ * Dictionary inserts (world, material, blockdata, entity and art) are written and committed first, in allocation
+ * order. Shard 0 then handles chat, commands, sessions and rollback updates. With three or more shards, container
+ * and item transactions get a shard of their own. The remaining shards write block table actions, routed by world
+ * and 512x512 region so actions at the same location stay in order. Structure growth and natural block breaks can
+ * touch several regions, so they are written on their own between the events queued before and after them.
+ */
+class ProcessShards {
+
+    private static final int REGION_SHIFT = 9;
+    private static final int DICTIONARY = -1;
+    private static final int SERIAL = -2;
+
+    private static ExecutorService executor = null;
+    private static int executorSize = 0;
+
+    private ProcessShards() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    protected static int getShardCount() {
+        if (!Config.getGlobal().MYSQL) {
+            return 1;
+        }
+
+        // leave a connection free for the consumer itself and for lookups
+        return Math.max(1, Math.min(Config.getGlobal().CONSUMER_SHARDS, ConfigHandler.maximumPoolSize - 2));
+    }
+
+    private static synchronized ExecutorService getExecutor(int shardCount) {
+        if (executor == null || executorSize != shardCount) {
+            if (executor != null) {
+                executor.shutdown();
+            }
+
+            executor = Executors.newFixedThreadPool(shardCount, runnable -> {
+                Thread thread = new Thread(runnable, "CoreProtect Consumer Shard");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executorSize = shardCount;
+        }
+
+        return executor;
+    }
+
+    private static boolean isDictionary(int action) {
+        switch (action) {
+            case Process.WORLD_INSERT:
+            case Process.MATERIAL_INSERT:
+            case Process.BLOCKDATA_INSERT:
+            case Process.ENTITY_INSERT:
+            case Process.ART_INSERT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isMultiBlock(int action) {
+        // logged at one position, but write blocks that can be in other regions
+        return action == Process.STRUCTURE_GROWTH || action == Process.NATURAL_BLOCK_BREAK;
+    }
+
+    private static int getShard(ConsumerEvent event, int shardCount) {
+        switch (event.action) {
+            case Process.CONTAINER_BREAK:
+            case Process.CONTAINER_TRANSACTION:
+            case Process.ITEM_TRANSACTION:
+                return shardCount > 2 ? 1 : 0;
+            case Process.BLOCK_BREAK:
+            case Process.BLOCK_PLACE:
+            case Process.PLAYER_INTERACTION:
+            case Process.ENTITY_KILL:
+            case Process.ENTITY_SPAWN:
+            case Process.PLAYER_KILL:
+            case Process.SIGN_TEXT:
+            case Process.SIGN_UPDATE:
+            case Process.SKULL_UPDATE:
+                if (event.wid < 0) {
+                    return 0;
+                }
+
+                int firstBlockShard = shardCount > 2 ? 2 : 1;
+                int blockShards = shardCount - firstBlockShard;
+                int region = ((event.wid * 31) + (event.x >> REGION_SHIFT)) * 31 + (event.z >> REGION_SHIFT);
+                return firstBlockShard + Math.floorMod(region, blockShards);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Writes every event in the buffer across the shards, then releases the processed events.
+     * Events left unprocessed by a shard that lost its connection are kept in the buffer, along with every event after them.
+     */
+    protected static void process(ConsumerBuffer consumerBuffer, int consumerDataSize, int shardCount) throws Exception {
+        ExecutorService shardExecutor = getExecutor(shardCount);
+        BitSet pending = new BitSet(consumerDataSize);
+        pending.set(0, consumerDataSize);
+
+        int[] routes = new int[consumerDataSize];
+        int[] dictionary = new int[consumerDataSize];
+        int dictionaryCount = 0;
+        for (int i = 0; i < consumerDataSize; i++) {
+            ConsumerEvent event = consumerBuffer.get(i);
+            if (isDictionary(event.action)) {
+                routes[i] = DICTIONARY;
+                dictionary[dictionaryCount++] = i;
+            }
+            else if (isMultiBlock(event.action)) {
+                routes[i] = SERIAL;
+            }
+            else {
+                routes[i] = getShard(event, shardCount);
+            }
+        }
+
+        // dictionary rows are committed before any of the rows that refer to them
+        boolean complete = dictionaryCount == 0 || processPhase(shardExecutor, consumerBuffer, new int[][] { Arrays.copyOf(dictionary, dictionaryCount) }, pending);
+
+        // multi-block events run on their own, after everything queued before them is written
+        int start = 0;
+        while (complete && start < consumerDataSize) {
+            boolean serial = routes[start] == SERIAL;
+            int end = start;
+            while (end < consumerDataSize && (routes[end] == DICTIONARY || (routes[end] == SERIAL) == serial)) {
+                end++;
+            }
+
+            int[][] indexes = serial ? new int[1][] : new int[shardCount][];
+            int[] counts = new int[indexes.length];
+            for (int i = start; i < end; i++) {
+                if (routes[i] != DICTIONARY) {
+                    counts[serial ? 0 : routes[i]]++;
+                }
+            }
+            for (int group = 0; group < indexes.length; group++) {
+                indexes[group] = new int[counts[group]];
+                counts[group] = 0;
+            }
+            for (int i = start; i < end; i++) {
+                if (routes[i] != DICTIONARY) {
+                    int group = serial ? 0 : routes[i];
+                    indexes[group][counts[group]++] = i;
+                }
+            }
+
+            complete = processPhase(shardExecutor, consumerBuffer, indexes, pending);
+            start = end;
+        }
+
+        Consumer.commitLock.writeLock().lock();
+        try {
+            consumerBuffer.release(consumerDataSize, pending);
+        }
+        finally {
+            Consumer.commitLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes each group of events on its own shard and waits for all of them, clearing processed events from pending.
+     */
+    private static boolean processPhase(ExecutorService shardExecutor, ConsumerBuffer consumerBuffer, int[][] indexes, BitSet pending) {
+        @SuppressWarnings("unchecked")
+        Future<Integer>[] results = new Future[indexes.length];
+        for (int group = 0; group < indexes.length; group++) {
+            int[] groupIndexes = indexes[group];
+            if (groupIndexes.length > 0) {
+                results[group] = shardExecutor.submit(() -> processShard(consumerBuffer, groupIndexes));
+            }
+        }
+
+        boolean complete = true;
+        for (int group = 0; group < indexes.length; group++) {
+            if (results[group] == null) {
+                continue;
+            }
+
+            int processed = 0;
+            try {
+                processed = results[group].get();
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+            }
+
+            for (int i = 0; i < processed; i++) {
+                pending.clear(indexes[group][i]);
+            }
+            if (processed < indexes[group].length) {
+                complete = false;
+            }
+        }
+
+        return complete;
+    }
+
+    private static int processShard(ConsumerBuffer consumerBuffer, int[] indexes) {
+        int processed = 0;
+        try (Connection connection = Database.getConnection(false, 500)) {
+            if (connection == null) {
+                return processed;
+            }
+
+            Statement statement = connection.createStatement();
+            ProcessStatements statements = new ProcessStatements(connection);
+            Database.beginTransaction(statement, Config.getGlobal().MYSQL);
+            processed = Process.processEvents(connection, statement, statements, consumerBuffer, indexes, indexes.length);
+            if (processed == indexes.length) {
+                // each shard commits on its own, marking its events as committed for lookup snapshots
+                Process.commit(statement, statements, consumerBuffer, indexes, indexes.length);
+                statements.close();
+                statement.close();
+            }
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        return processed;
+    }
+}
@@ -0,0 +1,64 @@
+package net.coreprotect.consumer.process;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+import net.coreprotect.config.Config;
+import net.coreprotect.database.Database;
+import net.coreprotect.database.SQLiteConnection;
+import net.coreprotect.database.statement.MetaBlobStatement;
+
+/**
+ * The insert statements used by the consumer for a single connection.
+ * Statements are only prepared once a batch needs them. On a persistent SQLite connection, they're
+ * cached by the connection and reused by the following batches. Shared metadata written by the batch is
+ * only reused by other connections once it has been committed.
+ */
+class ProcessStatements {
+
+    private final Connection connection;
+    private final PreparedStatement[] statements = new PreparedStatement[Database.ITEM + 1];
+
+    protected ProcessStatements(Connection connection) {
+        this.connection = connection;
+        MetaBlobStatement.begin();
+    }
+
+    protected PreparedStatement get(int type) {
+        PreparedStatement preparedStatement = statements[type];
+        if (preparedStatement == null) {
+            preparedStatement = Database.prepareStatement(connection, type, (type == Database.SKULL || type == Database.ENTITY));
+            statements[type] = preparedStatement;
+        }
+
+        return preparedStatement;
+    }
+
+    protected void commit(Statement statement) {
+        try {
+            for (PreparedStatement preparedStatement : statements) {
+                if (preparedStatement != null) {
+                    preparedStatement.executeBatch();
+                }
+            }
+            Database.commitTransaction(statement, Config.getGlobal().MYSQL);
+            MetaBlobStatement.commit();
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    protected void close() throws Exception {
+        if (SQLiteConnection.isPersistent(connection)) {
+            return;
+        }
+
+        for (PreparedStatement preparedStatement : statements) {
+            if (preparedStatement != null) {
+                preparedStatement.close();
+            }
+        }
+    }
+}
@@ -2,18 +2,16 @@ package net.coreprotect.consumer.process;
 
 import java.sql.Statement;
 import java.util.List;
-import java.util.Map;
 
-import net.coreprotect.consumer.Consumer;
 import net.coreprotect.database.Database;
 import net.coreprotect.utility.MaterialUtils;
 
 class RollbackUpdateProcess {
 
-    static void process(Statement statement, int processId, int id, int action, int table) {
-        Map<Integer, List<Object[]>> updateLists = Consumer.consumerObjectArrayList.get(processId);
-        if (updateLists.get(id) != null) {
-            List<Object[]> list = updateLists.get(id);
+    static void process(Statement statement, Object payload, int action, int table) {
+        if (payload instanceof List) {
+            @SuppressWarnings("unchecked")
+            List<Object[]> list = (List<Object[]>) payload;
             for (Object[] listRow : list) {
                 long rowid = (Long) listRow[0];
                 int rolledBack = (Integer) listRow[9];
@@ -21,7 +19,6 @@ class RollbackUpdateProcess {
                     Database.performUpdate(statement, rowid, rolledBack, table);
                 }
             }
-            updateLists.remove(id);
         }
     }
 }
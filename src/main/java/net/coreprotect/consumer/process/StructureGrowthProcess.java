@@ -3,11 +3,9 @@ package net.coreprotect.consumer.process;
 import java.sql.PreparedStatement;
 import java.sql.Statement;
 import java.util.List;
-import java.util.Map;
 
 import org.bukkit.block.BlockState;
 
-import net.coreprotect.consumer.Consumer;
 import net.coreprotect.database.Lookup;
 import net.coreprotect.database.logger.BlockBreakLogger;
 import net.coreprotect.database.logger.BlockPlaceLogger;
@@ -16,12 +14,12 @@ import net.coreprotect.utility.Util;
 
 class StructureGrowthProcess {
 
-    static void process(Statement statement, PreparedStatement preparedStmt, int batchCount, int processId, int id, String user, Object object, int replaceBlockCount) {
+    static void process(Statement statement, PreparedStatement preparedStmt, int batchCount, String user, Object object, Object payload, int replaceBlockCount) {
         if (object instanceof BlockState) {
             BlockState block = (BlockState) object;
-            Map<Integer, List<BlockState>> blockLists = Consumer.consumerBlockList.get(processId);
-            if (blockLists.get(id) != null) {
-                List<BlockState> blockStates = blockLists.get(id);
+            if (payload instanceof List) {
+                @SuppressWarnings("unchecked")
+                List<BlockState> blockStates = (List<BlockState>) payload;
                 String resultData = Lookup.whoPlacedCache(block);
                 if (resultData.isEmpty()) {
                     resultData = Lookup.whoPlaced(statement, block);
@@ -39,7 +37,6 @@ class StructureGrowthProcess {
                     }
                     count++;
                 }
-                blockLists.remove(id);
             }
         }
     }
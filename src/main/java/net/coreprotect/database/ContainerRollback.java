@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import org.bukkit.Location;
 import org.bukkit.Material;
@@ -50,16 +51,12 @@ public class ContainerRollback extends Rollback {
             Queue.queueRollbackUpdate(userString, location, lookupList, Process.CONTAINER_ROLLBACK_UPDATE, rollbackType); // Perform update transaction in consumer
 
             final String finalUserString = userString;
-            ConfigHandler.rollbackHash.put(userString, new int[] { 0, 0, 0, 0, 0 });
+            ConfigHandler.rollbackHash.put(userString, new AtomicIntegerArray(6));
 
             Scheduler.scheduleSyncDelayedTask(CoreProtect.getInstance(), new Runnable() {
                 @Override
                 public void run() {
                     try {
-                        int[] rollbackHashData = ConfigHandler.rollbackHash.get(finalUserString);
-                        int itemCount = rollbackHashData[0];
-                        // int blockCount = rollbackHashData[1];
-                        int entityCount = rollbackHashData[2];
                         Block block = location.getBlock();
 
                         if (!block.getWorld().isChunkLoaded(block.getChunk())) {
@@ -144,7 +141,10 @@ public class ContainerRollback extends Rollback {
                         }
                         matchingFrames.clear();
 
-                        ConfigHandler.rollbackHash.put(finalUserString, new int[] { itemCount, modifyCount, entityCount, 1, 1 });
+                        AtomicIntegerArray rollbackHashData = ConfigHandler.rollbackHash.get(finalUserString);
+                        rollbackHashData.addAndGet(1, modifyCount);
+                        rollbackHashData.set(4, 1);
+                        rollbackHashData.set(3, 1);
                     }
                     catch (Exception e) {
                         e.printStackTrace();
@@ -152,23 +152,21 @@ public class ContainerRollback extends Rollback {
                 }
             }, location, 0);
 
-            int[] rollbackHashData = ConfigHandler.rollbackHash.get(finalUserString);
-            int next = rollbackHashData[3];
+            AtomicIntegerArray rollbackHashData = ConfigHandler.rollbackHash.get(finalUserString);
+            int next = rollbackHashData.get(3);
             int sleepTime = 0;
 
             while (next == 0) {
                 sleepTime = sleepTime + 5;
                 Thread.sleep(5);
-                rollbackHashData = ConfigHandler.rollbackHash.get(finalUserString);
-                next = rollbackHashData[3];
+                next = rollbackHashData.get(3);
                 if (sleepTime > 300000) {
                     Chat.console(Phrase.build(Phrase.ROLLBACK_ABORTED));
                     break;
                 }
             }
 
-            rollbackHashData = ConfigHandler.rollbackHash.get(finalUserString);
-            int blockCount = rollbackHashData[1];
+            int blockCount = rollbackHashData.get(1);
             long timeFinish = System.currentTimeMillis();
             double totalSeconds = (timeFinish - timeStart) / 1000.0;
 
@@ -112,12 +112,6 @@ public class Database extends Queue {
         }
     }
 
-    public static void performCheckpoint(Statement statement, boolean isMySQL) throws SQLException {
-        if (!isMySQL) {
-            statement.executeUpdate("PRAGMA wal_checkpoint(TRUNCATE)");
-        }
-    }
-
     public static void setMultiInt(PreparedStatement statement, int value, int count) {
         try {
             for (int i = 1; i <= count; i++) {
@@ -156,14 +150,25 @@ public class Database extends Queue {
 
     public static Connection getConnection(boolean onlyCheckTransacting) {
         // Previously 250ms; long consumer commit time may be due to batching (investigate removing batching for SQLite connections)
-        return getConnection(false, false, onlyCheckTransacting, 1000);
+        return getConnection(false, false, onlyCheckTransacting, 1000, SQLiteConnection.READER);
     }
 
     public static Connection getConnection(boolean force, int waitTime) {
         return getConnection(force, false, false, waitTime);
     }
 
+    /**
+     * Returns the connection used by the consumer. On SQLite, this is a persistent connection that's reused between batches.
+     */
+    public static Connection getConsumerConnection(int waitTime) {
+        return getConnection(false, false, false, waitTime, SQLiteConnection.WRITER);
+    }
+
     public static Connection getConnection(boolean force, boolean startup, boolean onlyCheckTransacting, int waitTime) {
+        return getConnection(force, startup, onlyCheckTransacting, waitTime, SQLiteConnection.NONE);
+    }
+
+    private static Connection getConnection(boolean force, boolean startup, boolean onlyCheckTransacting, int waitTime, int pool) {
         Connection connection = null;
         try {
             if (!force && (ConfigHandler.converterRunning || ConfigHandler.purgeRunning)) {
@@ -181,12 +186,14 @@ public class Database extends Queue {
                 }
             }
             else {
-                if (Consumer.transacting && onlyCheckTransacting) {
+                // in WAL mode, lookup connections read alongside the consumer rather than interrupting it
+                boolean snapshotReader = (pool == SQLiteConnection.READER && !Config.getGlobal().DISABLE_WAL);
+                if (Consumer.transacting && onlyCheckTransacting && !snapshotReader) {
                     Consumer.interrupt = true;
                 }
 
                 long startTime = System.nanoTime();
-                while (Consumer.isPaused && !force && (Consumer.transacting || !onlyCheckTransacting)) {
+                while (Consumer.isPaused && !force && !snapshotReader && (Consumer.transacting || !onlyCheckTransacting)) {
                     Thread.sleep(1);
                     long pauseTime = (System.nanoTime() - startTime) / 1000000;
 
@@ -195,8 +202,17 @@ public class Database extends Queue {
                     }
                 }
 
-                String database = "jdbc:sqlite:" + ConfigHandler.path + ConfigHandler.sqlite + "";
-                connection = DriverManager.getConnection(database);
+                if (pool == SQLiteConnection.WRITER) {
+                    connection = SQLiteConnection.getWriter();
+                }
+                else if (pool == SQLiteConnection.READER) {
+                    connection = SQLiteConnection.getReader();
+                }
+
+                if (connection == null) {
+                    String database = "jdbc:sqlite:" + ConfigHandler.path + ConfigHandler.sqlite + "";
+                    connection = DriverManager.getConnection(database);
+                }
 
                 ConfigHandler.databaseReachable = true;
             }
@@ -210,6 +226,7 @@ public class Database extends Queue {
 
     public static void closeConnection() {
         try {
+            SQLiteConnection.closeAll();
             if (ConfigHandler.hikariDataSource != null) {
                 ConfigHandler.hikariDataSource.close();
                 ConfigHandler.hikariDataSource = null;
@@ -239,12 +256,26 @@ public class Database extends Queue {
     }
 
     public static PreparedStatement prepareStatement(Connection connection, int type, boolean keys) {
-        PreparedStatement preparedStatement = null;
+        PreparedStatement preparedStatement = SQLiteConnection.getStatement(connection, type);
+        if (preparedStatement != null) {
+            return preparedStatement;
+        }
+
         try {
             String query = SQL_QUERIES.get(type);
             if (query != null) {
+                // statements on a persistent connection are prepared once and cached
+                Connection statementConnection = SQLiteConnection.getStatementConnection(connection);
+                if (statementConnection == null) {
+                    statementConnection = connection;
+                }
+
                 query = query.replace("%sprefix%", ConfigHandler.prefix);
-                preparedStatement = prepareStatement(connection, query, keys);
+                preparedStatement = prepareStatement(statementConnection, query, keys);
+
+                if (statementConnection != connection && preparedStatement != null) {
+                    SQLiteConnection.cacheStatement(connection, type, preparedStatement);
+                }
             }
         }
         catch (Exception e) {
@@ -306,7 +337,7 @@ public class Database extends Queue {
         }
     }
 
-    private static final List<String> DATABASE_TABLES = Arrays.asList("art_map", "block", "chat", "command", "container", "item", "database_lock", "entity", "entity_map", "material_map", "blockdata_map", "session", "sign", "skull", "user", "username_log", "version", "world");
+    private static final List<String> DATABASE_TABLES = Arrays.asList("art_map", "block", "chat", "command", "container", "item", "database_lock", "entity", "entity_map", "material_map", "blockdata_map", "meta_blob", "session", "sign", "skull", "user", "username_log", "version", "world");
 
     public static void createDatabaseTables(String prefix, boolean forcePrefix, Connection forceConnection, boolean mySQL, boolean purge) {
         ConfigHandler.databaseTables.clear();
@@ -328,6 +359,7 @@ public class Database extends Queue {
                 createMySQLTableStructures(prefix, statement);
                 if (!purge && forceConnection == null) {
                     initializeTables(prefix, statement);
+                    TablePartitions.maintain(statement, prefix);
                 }
                 statement.close();
                 success = true;
@@ -349,8 +381,8 @@ public class Database extends Queue {
         statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + prefix + "art_map(rowid int NOT NULL AUTO_INCREMENT,PRIMARY KEY(rowid),id int,art varchar(255)" + index + ") ENGINE=InnoDB DEFAULT CHARACTER SET utf8mb4");
 
         // Block
-        index = ", INDEX(wid,x,z,time), INDEX(user,time), INDEX(type,time)";
-        statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + prefix + "block(rowid bigint NOT NULL AUTO_INCREMENT,PRIMARY KEY(rowid), time int, user int, wid int, x int, y int, z int, type int, data int, meta mediumblob, blockdata blob, action tinyint, rolled_back tinyint" + index + ") ENGINE=InnoDB DEFAULT CHARACTER SET utf8mb4");
+        index = ", INDEX(wid,x,z,time), INDEX(user,time), INDEX(type,time), INDEX(" + SpatialIndex.COLUMN + ",time)";
+        statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + prefix + "block(rowid bigint NOT NULL AUTO_INCREMENT,PRIMARY KEY(rowid), time int, user int, wid int, x int, y int, z int, type int, data int, meta mediumblob, blockdata blob, action tinyint, rolled_back tinyint, " + SpatialIndex.getColumnDefinition(true) + index + ") ENGINE=InnoDB DEFAULT CHARACTER SET utf8mb4");
 
         // Chat
         index = ", INDEX(time), INDEX(user,time), INDEX(wid,x,z,time)";
@@ -386,6 +418,10 @@ public class Database extends Queue {
         index = ", INDEX(id)";
         statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + prefix + "blockdata_map(rowid int NOT NULL AUTO_INCREMENT,PRIMARY KEY(rowid),id int,data varchar(255)" + index + ") ENGINE=InnoDB DEFAULT CHARACTER SET utf8mb4");
 
+        // Metadata blobs
+        index = ", UNIQUE INDEX(hash), INDEX(time)";
+        statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + prefix + "meta_blob(rowid int NOT NULL AUTO_INCREMENT,PRIMARY KEY(rowid),hash binary(32),data mediumblob,time int" + index + ") ENGINE=InnoDB DEFAULT CHARACTER SET utf8mb4");
+
         // Session
         index = ", INDEX(wid,x,z,time), INDEX(action,time), INDEX(user,time), INDEX(time)";
         statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + prefix + "session(rowid int NOT NULL AUTO_INCREMENT,PRIMARY KEY(rowid),time int, user int, wid int, x int, y int (3), z int, action tinyint" + index + ") ENGINE=InnoDB DEFAULT CHARACTER SET utf8mb4");
@@ -462,7 +498,7 @@ public class Database extends Queue {
             statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + prefix + "art_map (id INTEGER, art TEXT);");
         }
         if (!tableData.contains(prefix + "block")) {
-            statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + prefix + "block (time INTEGER, user INTEGER, wid INTEGER, x INTEGER, y INTEGER, z INTEGER, type INTEGER, data INTEGER, meta BLOB, blockdata BLOB, action INTEGER, rolled_back INTEGER);");
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + prefix + "block (time INTEGER, user INTEGER, wid INTEGER, x INTEGER, y INTEGER, z INTEGER, type INTEGER, data INTEGER, meta BLOB, blockdata BLOB, action INTEGER, rolled_back INTEGER, " + SpatialIndex.getColumnDefinition(false) + ");");
         }
         if (!tableData.contains(prefix + "chat")) {
             statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + prefix + "chat (time INTEGER, user INTEGER, wid INTEGER, x INTEGER, y INTEGER, z INTEGER, message TEXT);");
@@ -491,6 +527,9 @@ public class Database extends Queue {
         if (!tableData.contains(prefix + "blockdata_map")) {
             statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + prefix + "blockdata_map (id INTEGER, data TEXT);");
         }
+        if (!tableData.contains(prefix + "meta_blob")) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + prefix + "meta_blob (rowid INTEGER PRIMARY KEY ASC, hash BLOB, data BLOB, time INTEGER);");
+        }
         if (!tableData.contains(prefix + "session")) {
             statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + prefix + "session (time INTEGER, user INTEGER, wid INTEGER, x INTEGER, y INTEGER, z INTEGER, action INTEGER);");
         }
@@ -535,6 +574,8 @@ public class Database extends Queue {
             createSQLiteIndex(statement, indexData, attachDatabase, "item_type_index", prefix + "item(type,time)");
             createSQLiteIndex(statement, indexData, attachDatabase, "entity_map_id_index", prefix + "entity_map(id)");
             createSQLiteIndex(statement, indexData, attachDatabase, "material_map_id_index", prefix + "material_map(id)");
+            createSQLiteIndex(statement, indexData, attachDatabase, "meta_blob_hash_index", prefix + "meta_blob(hash)", true);
+            createSQLiteIndex(statement, indexData, attachDatabase, "meta_blob_time_index", prefix + "meta_blob(time)");
             createSQLiteIndex(statement, indexData, attachDatabase, "session_index", prefix + "session(wid,x,z,time)");
             createSQLiteIndex(statement, indexData, attachDatabase, "session_action_index", prefix + "session(action,time)");
             createSQLiteIndex(statement, indexData, attachDatabase, "session_user_index", prefix + "session(user,time)");
@@ -553,11 +594,22 @@ public class Database extends Queue {
                 e.printStackTrace();
             }
         }
+
+        try {
+            createSQLiteIndex(statement, indexData, attachDatabase, "block_chunk_index", prefix + "block(" + SpatialIndex.COLUMN + ",time)");
+        }
+        catch (Exception e) {
+            // existing databases get the chunk_key column from a patch
+        }
     }
 
     private static void createSQLiteIndex(Statement statement, List<String> indexData, String attachDatabase, String indexName, String indexColumns) throws SQLException {
+        createSQLiteIndex(statement, indexData, attachDatabase, indexName, indexColumns, false);
+    }
+
+    private static void createSQLiteIndex(Statement statement, List<String> indexData, String attachDatabase, String indexName, String indexColumns, boolean unique) throws SQLException {
         if (!indexData.contains(indexName)) {
-            statement.executeUpdate("CREATE INDEX IF NOT EXISTS " + attachDatabase + indexName + " ON " + indexColumns + ";");
+            statement.executeUpdate("CREATE " + (unique ? "UNIQUE " : "") + "INDEX IF NOT EXISTS " + attachDatabase + indexName + " ON " + indexColumns + ";");
         }
     }
 
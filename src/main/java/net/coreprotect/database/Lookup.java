@@ -19,11 +19,17 @@ public class Lookup extends Queue {
     public static long countLookupRows(Statement statement, CommandSender user, List<String> checkUuids, List<String> checkUsers, List<Object> restrictList, Map<Object, Boolean> excludeList, List<String> excludeUserList, List<Integer> actionList, Location location, Integer[] radius, Long[] rowData, long startTime, long endTime, boolean restrictWorld, boolean lookup) {
         Long rows = 0L;
 
+        LookupSnapshot snapshot = null;
         try {
-            while (Consumer.isPaused) {
-                Thread.sleep(1);
+            if (lookup && LookupSnapshot.isSupported()) {
+                snapshot = LookupSnapshot.open(statement, checkUuids, checkUsers, restrictList, excludeList, excludeUserList, actionList, location, radius, startTime, endTime, restrictWorld, lookup);
+            }
+            else {
+                while (Consumer.isPaused) {
+                    Thread.sleep(1);
+                }
+                Consumer.isPaused = true;
             }
-            Consumer.isPaused = true;
 
             ResultSet results = LookupRaw.rawLookupResultSet(statement, user, checkUuids, checkUsers, restrictList, excludeList, excludeUserList, actionList, location, radius, null, startTime, endTime, -1, -1, restrictWorld, lookup, true);
             while (results.next()) {
@@ -33,12 +39,23 @@ public class Lookup extends Queue {
                 rows += count;
             }
             results.close();
+
+            if (snapshot != null) {
+                int pending = snapshot.getPending().size();
+                rowData[0] = (rowData[0] != null ? rowData[0] : 0L) + pending;
+                rows += pending;
+            }
         }
         catch (Exception e) {
             e.printStackTrace();
         }
 
-        Consumer.isPaused = false;
+        if (snapshot != null) {
+            snapshot.close();
+        }
+        else {
+            Consumer.isPaused = false;
+        }
 
         return rows;
     }
@@ -92,6 +109,10 @@ public class Lookup extends Queue {
         return LookupRaw.performLookupRaw(statement, user, checkUuids, checkUsers, restrictList, excludeList, excludeUserList, actionList, location, radius, rowData, startTime, endTime, limitOffset, limitCount, restrictWorld, lookup);
     }
 
+    protected static LookupCursor openRollbackCursor(Statement statement, CommandSender user, List<String> checkUuids, List<String> checkUsers, List<Object> restrictList, Map<Object, Boolean> excludeList, List<String> excludeUserList, List<Integer> actionList, Location location, Integer[] radius, long startTime, long endTime, boolean restrictWorld) {
+        return LookupCursor.open(statement, user, checkUuids, checkUsers, restrictList, excludeList, excludeUserList, actionList, location, radius, startTime, endTime, restrictWorld);
+    }
+
     // Maintain backward compatibility
     private static ResultSet rawLookupResultSet(Statement statement, CommandSender user, List<String> checkUuids, List<String> checkUsers, List<Object> restrictList, Map<Object, Boolean> excludeList, List<String> excludeUserList, List<Integer> actionList, Location location, Integer[] radius, Long[] rowData, long startTime, long endTime, int limitOffset, int limitCount, boolean restrictWorld, boolean lookup, boolean count) {
         return LookupRaw.rawLookupResultSet(statement, user, checkUuids, checkUsers, restrictList, excludeList, excludeUserList, actionList, location, radius, rowData, startTime, endTime, limitOffset, limitCount, restrictWorld, lookup, count);
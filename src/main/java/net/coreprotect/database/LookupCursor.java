@@ -0,0 +1,266 @@
+package net.coreprotect.database;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import org.bukkit.Location;
+import org.bukkit.command.CommandSender;
+
+import net.coreprotect.config.Config;
+import net.coreprotect.config.ConfigHandler;
+
+/**
+ * Reads the rows of a rollback one at a time, sorted by world and chunk.
+ *
+ * Rows for the same chunk are read together, newest first, so a rollback can apply each chunk as soon
+ * as its rows have been read instead of loading every row up front. The cursor reads alongside the
+ * consumer, which isn't paused (see {@link #isSupported()}). On MySQL, rows are streamed from the server
+ * on a connection of their own, as the lookup's connection is still used while the cursor is open.
+ *
+ * On SQLite, an open result set holds a read transaction, which keeps WAL checkpoints from resetting the
+ * log. The lookup is run once up front, only reading the id and chunk of each row, which are grouped by
+ * chunk in memory. Rows are then read back by id in pages of PAGE_SIZE, so each page is a primary key
+ * lookup rather than a sort of every matching row. Rows added after the cursor was opened are left out,
+ * as with a single query.
+ */
+public class LookupCursor {
+
+    private static final int PAGE_SIZE = 10000;
+
+    private final Statement statement;
+    private final Connection connection;
+    private final List<Integer> actionList;
+    private final List<Integer> invalidRollbackActions;
+    private final Function<QueryBuilder, ResultSet> query;
+    private final String table;
+    private final Deque<Object[]> page = new ArrayDeque<>();
+    private ResultSet results = null;
+    // row ids by chunk key, in the order they're read
+    private Iterator<RowIds> chunks = null;
+    private RowIds chunk = null;
+    private int chunkPosition = 0;
+    private Object[] next = null;
+
+    private LookupCursor(Statement statement, Connection connection, List<Integer> actionList, Function<QueryBuilder, ResultSet> query, String table) {
+        this.statement = statement;
+        this.connection = connection;
+        this.actionList = actionList;
+        this.invalidRollbackActions = LookupRaw.getInvalidRollbackActions(actionList);
+        this.query = query;
+        this.table = table;
+    }
+
+    private static class RowIds {
+        private long[] ids = new long[16];
+        private int size = 0;
+
+        private void add(long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    /**
+     * Returns true if a cursor can be left open while the consumer writes.
+     * SQLite only supports this in WAL mode, where readers don't block the writer.
+     */
+    public static boolean isSupported() {
+        return LookupSnapshot.isSupported();
+    }
+
+    /**
+     * Opens a rollback lookup on the block or container table. Returns null if it couldn't be run.
+     */
+    protected static LookupCursor open(Statement statement, CommandSender user, List<String> checkUuids, List<String> checkUsers, List<Object> restrictList, Map<Object, Boolean> excludeList, List<String> excludeUserList, List<Integer> actionList, Location location, Integer[] radius, long startTime, long endTime, boolean restrictWorld) {
+        Connection connection = null;
+        try {
+            Connection streamConnection = statement.getConnection();
+            if (Config.getGlobal().MYSQL) {
+                connection = Database.getConnection(false, 1000);
+                if (connection == null) {
+                    return null;
+                }
+                streamConnection = connection;
+            }
+
+            Connection queryConnection = streamConnection;
+            Function<QueryBuilder, ResultSet> query = order -> LookupRaw.rawLookupResultSet(statement, user, checkUuids, checkUsers, restrictList, excludeList, excludeUserList, actionList, location, radius, null, startTime, endTime, -1, -1, restrictWorld, false, false, order, queryConnection);
+
+            String table = null;
+            if (!Config.getGlobal().MYSQL) {
+                table = (actionList.contains(4) || actionList.contains(5)) ? "container" : "block";
+            }
+
+            LookupCursor cursor = new LookupCursor(statement, connection, actionList, query, table);
+            if (cursor.open()) {
+                cursor.advance();
+                return cursor;
+            }
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        if (connection != null) {
+            try {
+                connection.close();
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Runs the query for the whole lookup on MySQL, or reads the id and chunk of every row on SQLite. Returns false if it couldn't be run.
+     */
+    private boolean open() throws Exception {
+        if (table == null) {
+            results = query.apply(new QueryBuilder(" ORDER BY wid, FLOOR(x / 16), FLOOR(z / 16), rowid DESC"));
+            return results != null;
+        }
+
+        TreeMap<Long, RowIds> chunkMap = new TreeMap<>();
+        try (ResultSet idResults = query.apply(new QueryBuilder(""))) {
+            if (idResults == null) {
+                return false;
+            }
+
+            long lastKey = 0;
+            RowIds rowIds = null;
+            while (idResults.next()) {
+                long key = SpatialIndex.getKey(idResults.getInt("wid"), idResults.getInt("x") >> 4, idResults.getInt("z") >> 4);
+                if (rowIds == null || key != lastKey) {
+                    rowIds = chunkMap.computeIfAbsent(key, k -> new RowIds());
+                    lastKey = key;
+                }
+                rowIds.add(idResults.getLong("id"));
+            }
+        }
+
+        for (RowIds rowIds : chunkMap.values()) {
+            Arrays.sort(rowIds.ids, 0, rowIds.size);
+        }
+        chunks = chunkMap.values().iterator();
+        return true;
+    }
+
+    /**
+     * Reads the next PAGE_SIZE rows on SQLite, by id. Returns false if there are no more rows.
+     */
+    private boolean readPage() throws Exception {
+        StringBuilder ids = new StringBuilder();
+        int count = 0;
+        while (count < PAGE_SIZE) {
+            if (chunk == null || chunkPosition == chunk.size) {
+                if (!chunks.hasNext()) {
+                    break;
+                }
+                chunk = chunks.next();
+                chunkPosition = 0;
+            }
+
+            // newest first
+            long id = chunk.ids[chunk.size - 1 - chunkPosition++];
+            ids.append(count++ > 0 ? "," : "").append(id);
+        }
+        if (count == 0) {
+            return false;
+        }
+
+        String pageQuery = "SELECT '0' as tbl,rowid as id,* FROM " + ConfigHandler.prefix + table + " WHERE rowid IN(" + ids + ") ORDER BY wid, (x >> 4), (z >> 4), rowid DESC";
+        try (Statement pageStatement = statement.getConnection().createStatement(); ResultSet pageResults = pageStatement.executeQuery(pageQuery)) {
+            while (pageResults.next()) {
+                page.add(LookupRaw.getRawRow(statement, pageResults, actionList, false));
+            }
+        }
+
+        return true;
+    }
+
+    private Object[] read() throws Exception {
+        if (table == null) {
+            return results.next() ? LookupRaw.getRawRow(statement, results, actionList, false) : null;
+        }
+        // a page can come back empty if its rows were purged since
+        while (page.isEmpty()) {
+            if (!readPage()) {
+                return null;
+            }
+        }
+
+        return page.poll();
+    }
+
+    private void advance() throws Exception {
+        next = null;
+        Object[] row;
+        while (next == null && (row = read()) != null) {
+            if (!invalidRollbackActions.contains((Integer) row[8])) {
+                next = row;
+            }
+        }
+    }
+
+    /**
+     * Returns the next row without reading past it, or null if there are no more rows.
+     */
+    public Object[] peek() {
+        return next;
+    }
+
+    /**
+     * Returns the next row, or null if there are no more rows.
+     */
+    public Object[] next() throws Exception {
+        Object[] row = next;
+        if (row != null) {
+            advance();
+        }
+
+        return row;
+    }
+
+    /**
+     * Compares the world and chunk of two rows, in the order they're read.
+     */
+    public static int compareChunks(Object[] row, Object[] otherRow) {
+        int result = Integer.compare((Integer) row[10], (Integer) otherRow[10]);
+        if (result == 0) {
+            result = Integer.compare((Integer) row[3] >> 4, (Integer) otherRow[3] >> 4);
+        }
+        if (result == 0) {
+            result = Integer.compare((Integer) row[5] >> 4, (Integer) otherRow[5] >> 4);
+        }
+
+        return result;
+    }
+
+    public void close() {
+        try {
+            page.clear();
+            if (results != null) {
+                results.close();
+            }
+            if (connection != null) {
+                connection.close();
+            }
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package net.coreprotect.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.PriorityQueue;
+
+/**
+ * Merges the block, container and item results of a paged lookup.
+ *
+ * Each table is read through its own cursor, sorted by time and id, and the cursors are merged in
+ * the order the combined lookup is displayed in (newest first, then by table and id). Reading stops
+ * as soon as the page is filled, so neither database has to sort the combined rows. The position of
+ * the last row returned is saved in the lookup's row data, and reading the next page continues from
+ * there instead of skipping over every earlier row again.
+ *
+ * Lookups on a single table are paged the same way, by rowid.
+ *
+ * The merged rows are returned as a result set that reads from whichever cursor holds the current row.
+ */
+public class LookupMerge implements InvocationHandler {
+
+    // row data: [0] rows before the saved position, [1] time, [2] id, [3] row count, [4] table
+    private static final int POSITION_OFFSET = 0;
+    private static final int POSITION_TIME = 1;
+    private static final int POSITION_ID = 2;
+    private static final int POSITION_TABLE = 4;
+    // saved in place of a table for single table lookups
+    private static final long ROWID_ORDER = -1;
+
+    private final ResultSet[] cursors;
+    private final long[] times;
+    private final long[] ids;
+    private final PriorityQueue<Integer> heap;
+    private final Long[] rowData;
+    private final boolean rowidOrder;
+    private ResultSet current = null;
+    private int skip;
+    private int remaining;
+    private long position;
+
+    private LookupMerge(ResultSet[] cursors, int skip, int count, long position, Long[] rowData, boolean rowidOrder) throws Exception {
+        this.cursors = cursors;
+        this.rowidOrder = rowidOrder;
+        this.times = new long[cursors.length];
+        this.ids = new long[cursors.length];
+        this.skip = skip;
+        this.remaining = count;
+        this.position = position;
+        this.rowData = rowData;
+        this.heap = new PriorityQueue<>((a, b) -> {
+            if (times[a] != times[b]) {
+                return Long.compare(times[b], times[a]);
+            }
+            if (!a.equals(b)) {
+                return Integer.compare(b, a);
+            }
+            return Long.compare(ids[b], ids[a]);
+        });
+
+        for (int table = 0; table < cursors.length; table++) {
+            advance(table);
+        }
+    }
+
+    /**
+     * Runs the per-table queries and returns their merged rows, skipping the first offset rows.
+     * Each query is indexed by its table number, and may be null if the table isn't read.
+     */
+    protected static ResultSet open(Statement statement, QueryBuilder[] queries, int offset, int count, Long[] rowData) throws Exception {
+        boolean seek = hasPosition(rowData, offset, false);
+        int limit = seek ? count : offset + count;
+        ResultSet[] cursors = new ResultSet[queries.length];
+        try {
+            for (int table = 0; table < queries.length; table++) {
+                if (queries[table] == null) {
+                    continue;
+                }
+
+                QueryBuilder query = new QueryBuilder().append(queries[table]);
+                if (seek) {
+                    long time = rowData[POSITION_TIME];
+                    int positionTable = rowData[POSITION_TABLE].intValue();
+                    if (table < positionTable) {
+                        query.append(" AND time <= ?", time);
+                    }
+                    else if (table == positionTable) {
+                        query.append(" AND (time < ? OR (time = ? AND rowid < ?))", time, time, rowData[POSITION_ID]);
+                    }
+                    else {
+                        query.append(" AND time < ?", time);
+                    }
+                }
+
+                query.append(" ORDER BY time DESC, id DESC LIMIT ?", limit);
+                cursors[table] = query.executeQuery(statement);
+            }
+        }
+        catch (Exception e) {
+            for (ResultSet cursor : cursors) {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+            throw e;
+        }
+
+        return getResultSet(new LookupMerge(cursors, seek ? 0 : offset, count, seek ? rowData[POSITION_OFFSET] : 0, rowData, false));
+    }
+
+    /**
+     * Runs a single table query, newest rowid first, and returns a page of its rows.
+     */
+    protected static ResultSet openPage(Statement statement, QueryBuilder query, int offset, int count, Long[] rowData) throws Exception {
+        QueryBuilder pageQuery = new QueryBuilder().append(query);
+        if (hasPosition(rowData, offset, true)) {
+            pageQuery.append(" AND rowid < ? ORDER BY rowid DESC LIMIT ?", rowData[POSITION_ID], count);
+        }
+        else {
+            pageQuery.append(" ORDER BY rowid DESC LIMIT ?, ?", offset, count);
+        }
+
+        ResultSet[] cursors = new ResultSet[] { pageQuery.executeQuery(statement) };
+        return getResultSet(new LookupMerge(cursors, 0, count, offset, rowData, true));
+    }
+
+    private static ResultSet getResultSet(LookupMerge merge) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class }, merge);
+    }
+
+    private static boolean hasPosition(Long[] rowData, int offset, boolean rowidOrder) {
+        if (rowData == null || rowData.length <= POSITION_TABLE || rowData[POSITION_TABLE] == null || offset <= 0 || rowData[POSITION_OFFSET] != offset) {
+            return false;
+        }
+
+        return rowidOrder == (rowData[POSITION_TABLE] == ROWID_ORDER);
+    }
+
+    private void advance(int table) throws Exception {
+        ResultSet cursor = cursors[table];
+        if (cursor != null && cursor.next()) {
+            times[table] = cursor.getLong("time");
+            ids[table] = cursor.getLong("id");
+            heap.add(table);
+        }
+    }
+
+    private boolean next() throws Exception {
+        if (current != null) {
+            int table = heap.poll();
+            advance(table);
+            current = null;
+        }
+
+        while (remaining > 0 && !heap.isEmpty()) {
+            int table = heap.peek();
+            position++;
+            if (skip > 0) {
+                skip--;
+                heap.poll();
+                advance(table);
+                continue;
+            }
+
+            remaining--;
+            current = cursors[table];
+            if (rowData != null && rowData.length > POSITION_TABLE) {
+                rowData[POSITION_OFFSET] = position;
+                rowData[POSITION_TIME] = times[table];
+                rowData[POSITION_ID] = ids[table];
+                rowData[POSITION_TABLE] = rowidOrder ? ROWID_ORDER : table;
+            }
+            return true;
+        }
+
+        return false;
+    }
+
+    private void close() throws Exception {
+        for (ResultSet cursor : cursors) {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "next":
+                return next();
+            case "close":
+                close();
+                return null;
+            default:
+                break;
+        }
+
+        if (method.getDeclaringClass() == Object.class) {
+            return method.invoke(this, args);
+        }
+        if (current == null) {
+            throw new IllegalStateException("No current row");
+        }
+
+        try {
+            return method.invoke(current, args);
+        }
+        catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
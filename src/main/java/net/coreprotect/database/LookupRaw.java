@@ -1,5 +1,6 @@
 package net.coreprotect.database;
 
+import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.Statement;
 import java.util.ArrayList;
@@ -19,6 +20,7 @@ import net.coreprotect.config.ConfigHandler;
 import net.coreprotect.consumer.Consumer;
 import net.coreprotect.consumer.Queue;
 import net.coreprotect.database.logger.ItemLogger;
+import net.coreprotect.database.statement.MetaBlobStatement;
 import net.coreprotect.database.statement.UserStatement;
 import net.coreprotect.listener.channel.PluginChannelHandshakeListener;
 import net.coreprotect.utility.EntityUtils;
@@ -29,23 +31,32 @@ public class LookupRaw extends Queue {
 
     protected static List<Object[]> performLookupRaw(Statement statement, CommandSender user, List<String> checkUuids, List<String> checkUsers, List<Object> restrictList, Map<Object, Boolean> excludeList, List<String> excludeUserList, List<Integer> actionList, Location location, Integer[] radius, Long[] rowData, long startTime, long endTime, int limitOffset, int limitCount, boolean restrictWorld, boolean lookup) {
         List<Object[]> list = new ArrayList<>();
-        List<Integer> invalidRollbackActions = new ArrayList<>();
-        invalidRollbackActions.add(2);
-
-        if (!Config.getGlobal().ROLLBACK_ENTITIES && !actionList.contains(3)) {
-            invalidRollbackActions.add(3);
-        }
-
-        if (actionList.contains(4) && actionList.contains(11)) {
-            invalidRollbackActions.clear();
-        }
+        List<Integer> invalidRollbackActions = getInvalidRollbackActions(actionList);
 
+        LookupSnapshot snapshot = null;
         try {
-            while (Consumer.isPaused) {
-                Thread.sleep(1);
+            if (lookup && LookupSnapshot.isSupported()) {
+                // read from a snapshot instead of pausing the consumer, and include any matching rows still in the queue
+                snapshot = LookupSnapshot.open(statement, checkUuids, checkUsers, restrictList, excludeList, excludeUserList, actionList, location, radius, startTime, endTime, restrictWorld, lookup);
+                List<Object[]> pending = snapshot.getPending();
+                if (limitOffset > -1 && limitCount > -1) {
+                    int pendingStart = Math.min(limitOffset, pending.size());
+                    int pendingEnd = Math.min(limitOffset + limitCount, pending.size());
+                    list.addAll(pending.subList(pendingStart, pendingEnd));
+                    limitOffset = Math.max(0, limitOffset - pending.size());
+                    limitCount = limitCount - (pendingEnd - pendingStart);
+                }
+                else {
+                    list.addAll(pending);
+                }
             }
+            else {
+                while (Consumer.isPaused) {
+                    Thread.sleep(1);
+                }
 
-            Consumer.isPaused = true;
+                Consumer.isPaused = true;
+            }
 
             ResultSet results = rawLookupResultSet(statement, user, checkUuids, checkUsers, restrictList, excludeList, excludeUserList, actionList, location, radius, rowData, startTime, endTime, limitOffset, limitCount, restrictWorld, lookup, false);
 
@@ -160,52 +171,9 @@ public class LookupRaw extends Queue {
                     list.add(dataArray);
                 }
                 else {
-                    int resultData = 0;
-                    int resultAmount = -1;
-                    int resultTable = 0;
-                    byte[] resultMeta = null;
-                    byte[] resultBlockData = null;
-                    long resultId = results.getLong("id");
-                    int resultUserId = results.getInt("user");
-                    int resultAction = results.getInt("action");
-                    int resultRolledBack = results.getInt("rolled_back");
-                    int resultType = results.getInt("type");
-                    int resultTime = results.getInt("time");
-                    int resultX = results.getInt("x");
-                    int resultY = results.getInt("y");
-                    int resultZ = results.getInt("z");
-                    int resultWorldId = results.getInt("wid");
-
-                    boolean hasTbl = false;
-                    if ((lookup && actionList.size() == 0) || actionList.contains(4) || actionList.contains(5) || actionList.contains(11)) {
-                        resultData = results.getInt("data");
-                        resultAmount = results.getInt("amount");
-                        resultMeta = results.getBytes("metadata");
-                        resultTable = results.getInt("tbl");
-                        hasTbl = true;
-                    }
-                    else {
-                        resultData = results.getInt("data");
-                        resultMeta = results.getBytes("meta");
-                        resultBlockData = results.getBytes("blockdata");
-                    }
-
-                    boolean valid = true;
-                    if (!lookup) {
-                        if (invalidRollbackActions.contains(resultAction)) {
-                            valid = false;
-                        }
-                    }
-
-                    if (valid) {
-                        if (hasTbl) {
-                            Object[] dataArray = new Object[] { resultId, resultTime, resultUserId, resultX, resultY, resultZ, resultType, resultData, resultAction, resultRolledBack, resultWorldId, resultAmount, resultMeta, resultBlockData, resultTable };
-                            list.add(dataArray);
-                        }
-                        else {
-                            Object[] dataArray = new Object[] { resultId, resultTime, resultUserId, resultX, resultY, resultZ, resultType, resultData, resultAction, resultRolledBack, resultWorldId, resultAmount, resultMeta, resultBlockData };
-                            list.add(dataArray);
-                        }
+                    Object[] dataArray = getRawRow(statement, results, actionList, lookup);
+                    if (lookup || !invalidRollbackActions.contains((Integer) dataArray[8])) {
+                        list.add(dataArray);
                     }
                 }
             }
@@ -215,11 +183,77 @@ public class LookupRaw extends Queue {
             e.printStackTrace();
         }
 
-        Consumer.isPaused = false;
+        if (snapshot != null) {
+            snapshot.close();
+        }
+        else {
+            Consumer.isPaused = false;
+        }
         return list;
     }
 
+    /**
+     * Returns the actions that are read by a lookup but not rolled back.
+     */
+    protected static List<Integer> getInvalidRollbackActions(List<Integer> actionList) {
+        List<Integer> invalidRollbackActions = new ArrayList<>();
+        invalidRollbackActions.add(2);
+
+        if (!Config.getGlobal().ROLLBACK_ENTITIES && !actionList.contains(3)) {
+            invalidRollbackActions.add(3);
+        }
+
+        if (actionList.contains(4) && actionList.contains(11)) {
+            invalidRollbackActions.clear();
+        }
+
+        return invalidRollbackActions;
+    }
+
+    /**
+     * Reads the current row of a block, container or item lookup.
+     */
+    protected static Object[] getRawRow(Statement statement, ResultSet results, List<Integer> actionList, boolean lookup) throws Exception {
+        int resultData = 0;
+        int resultAmount = -1;
+        int resultTable = 0;
+        byte[] resultMeta = null;
+        byte[] resultBlockData = null;
+        long resultId = results.getLong("id");
+        int resultUserId = results.getInt("user");
+        int resultAction = results.getInt("action");
+        int resultRolledBack = results.getInt("rolled_back");
+        int resultType = results.getInt("type");
+        int resultTime = results.getInt("time");
+        int resultX = results.getInt("x");
+        int resultY = results.getInt("y");
+        int resultZ = results.getInt("z");
+        int resultWorldId = results.getInt("wid");
+
+        if ((lookup && actionList.size() == 0) || actionList.contains(4) || actionList.contains(5) || actionList.contains(11)) {
+            resultData = results.getInt("data");
+            resultAmount = results.getInt("amount");
+            resultMeta = MetaBlobStatement.resolve(statement.getConnection(), results.getBytes("metadata"));
+            resultTable = results.getInt("tbl");
+            return new Object[] { resultId, resultTime, resultUserId, resultX, resultY, resultZ, resultType, resultData, resultAction, resultRolledBack, resultWorldId, resultAmount, resultMeta, resultBlockData, resultTable };
+        }
+
+        resultData = results.getInt("data");
+        resultMeta = MetaBlobStatement.resolve(statement.getConnection(), results.getBytes("meta"));
+        resultBlockData = results.getBytes("blockdata");
+        return new Object[] { resultId, resultTime, resultUserId, resultX, resultY, resultZ, resultType, resultData, resultAction, resultRolledBack, resultWorldId, resultAmount, resultMeta, resultBlockData };
+    }
+
     static ResultSet rawLookupResultSet(Statement statement, CommandSender user, List<String> checkUuids, List<String> checkUsers, List<Object> restrictList, Map<Object, Boolean> excludeList, List<String> excludeUserList, List<Integer> actionList, Location location, Integer[] radius, Long[] rowData, long startTime, long endTime, int limitOffset, int limitCount, boolean restrictWorld, boolean lookup, boolean count) {
+        return rawLookupResultSet(statement, user, checkUuids, checkUsers, restrictList, excludeList, excludeUserList, actionList, location, radius, rowData, startTime, endTime, limitOffset, limitCount, restrictWorld, lookup, count, null, null);
+    }
+
+    /**
+     * Runs a lookup on a single table, with the given clause (further conditions starting with AND, and
+     * an ORDER BY) in place of the default ORDER BY rowid. If a connection is given, the rows are read
+     * from it as they're consumed (see {@link QueryBuilder#executeStream(Connection)}).
+     */
+    static ResultSet rawLookupResultSet(Statement statement, CommandSender user, List<String> checkUuids, List<String> checkUsers, List<Object> restrictList, Map<Object, Boolean> excludeList, List<String> excludeUserList, List<Integer> actionList, Location location, Integer[] radius, Long[] rowData, long startTime, long endTime, int limitOffset, int limitCount, boolean restrictWorld, boolean lookup, boolean count, QueryBuilder order, Connection streamConnection) {
         ResultSet results = null;
 
         try {
@@ -230,9 +264,9 @@ public class LookupRaw extends Queue {
 
             boolean inventoryQuery = (actionList.contains(4) && actionList.contains(11));
             boolean validAction = false;
-            String queryBlock = "";
-            String queryEntity = "";
-            String queryLimit = "";
+            QueryBuilder queryBlock = new QueryBuilder();
+            QueryBuilder queryEntity = null;
+            QueryBuilder queryLimit = new QueryBuilder();
             String queryTable = "block";
             String action = "";
             String actionExclude = "";
@@ -240,47 +274,23 @@ public class LookupRaw extends Queue {
             String includeEntity = "";
             String excludeBlock = "";
             String excludeEntity = "";
-            String users = "";
-            String uuids = "";
-            String excludeUsers = "";
-            String unionLimit = "";
+            List<Integer> users = new ArrayList<>();
+            List<Integer> excludeUsers = new ArrayList<>();
+            QueryBuilder unionLimit = new QueryBuilder();
             String index = "";
-            String query = "";
-
-            if (checkUuids.size() > 0) {
-                String list = "";
-
-                for (String value : checkUuids) {
-                    if (list.length() == 0) {
-                        list = "'" + value + "'";
-                    }
-                    else {
-                        list = list + ",'" + value + "'";
-                    }
-                }
-
-                uuids = list;
-            }
+            QueryBuilder query = new QueryBuilder();
+            QueryBuilder spatialQuery = null;
 
             if (!checkUsers.contains("#global")) {
-                StringBuilder checkUserText = new StringBuilder();
-
                 for (String checkUser : checkUsers) {
                     if (!checkUser.equals("#container")) {
                         if (ConfigHandler.playerIdCache.get(checkUser.toLowerCase(Locale.ROOT)) == null) {
                             UserStatement.loadId(statement.getConnection(), checkUser, null);
                         }
 
-                        int userId = ConfigHandler.playerIdCache.get(checkUser.toLowerCase(Locale.ROOT));
-                        if (checkUserText.length() == 0) {
-                            checkUserText = checkUserText.append(userId);
-                        }
-                        else {
-                            checkUserText.append(",").append(userId);
-                        }
+                        users.add(ConfigHandler.playerIdCache.get(checkUser.toLowerCase(Locale.ROOT)));
                     }
                 }
-                users = checkUserText.toString();
             }
 
             if (restrictList.size() > 0) {
@@ -357,24 +367,12 @@ public class LookupRaw extends Queue {
                 excludeEntity = excludeListEntity.toString();
             }
 
-            if (excludeUserList.size() > 0) {
-                StringBuilder excludeUserText = new StringBuilder();
-
-                for (String excludeTarget : excludeUserList) {
-                    if (ConfigHandler.playerIdCache.get(excludeTarget.toLowerCase(Locale.ROOT)) == null) {
-                        UserStatement.loadId(statement.getConnection(), excludeTarget, null);
-                    }
-
-                    int userId = ConfigHandler.playerIdCache.get(excludeTarget.toLowerCase(Locale.ROOT));
-                    if (excludeUserText.length() == 0) {
-                        excludeUserText = excludeUserText.append(userId);
-                    }
-                    else {
-                        excludeUserText.append(",").append(userId);
-                    }
+            for (String excludeTarget : excludeUserList) {
+                if (ConfigHandler.playerIdCache.get(excludeTarget.toLowerCase(Locale.ROOT)) == null) {
+                    UserStatement.loadId(statement.getConnection(), excludeTarget, null);
                 }
 
-                excludeUsers = excludeUserText.toString();
+                excludeUsers.add(ConfigHandler.playerIdCache.get(excludeTarget.toLowerCase(Locale.ROOT)));
             }
 
             // Specify actions to exclude from a:item
@@ -452,7 +450,7 @@ public class LookupRaw extends Queue {
 
             if (restrictWorld) {
                 int wid = WorldUtils.getWorldId(location.getWorld().getName());
-                queryBlock = queryBlock + " wid=" + wid + " AND";
+                queryBlock.append(" wid=? AND", wid);
             }
 
             if (radius != null) {
@@ -462,13 +460,14 @@ public class LookupRaw extends Queue {
                 Integer ymax = radius[4];
                 Integer zmin = radius[5];
                 Integer zmax = radius[6];
-                String queryY = "";
-
+                queryBlock.append(" x >= ? AND x <= ? AND z >= ? AND z <= ? AND", xmin, xmax, zmin, zmax);
                 if (ymin != null && ymax != null) {
-                    queryY = " y >= '" + ymin + "' AND y <= '" + ymax + "' AND";
+                    queryBlock.append(" y >= ? AND y <= ? AND", ymin, ymax);
                 }
 
-                queryBlock = queryBlock + " x >= '" + xmin + "' AND x <= '" + xmax + "' AND z >= '" + zmin + "' AND z <= '" + zmax + "' AND" + queryY;
+                if ((xmax - xmin) > 50 || (zmax - zmin) > 50) {
+                    spatialQuery = SpatialIndex.getCondition(statement, WorldUtils.getWorldId(location.getWorld().getName()), xmin, xmax, zmin, zmax);
+                }
             }
             else if (actionList.contains(5)) {
                 int worldId = WorldUtils.getWorldId(location.getWorld().getName());
@@ -477,54 +476,51 @@ public class LookupRaw extends Queue {
                 int x2 = (int) Math.ceil(location.getX());
                 int z2 = (int) Math.ceil(location.getZ());
 
-                queryBlock = queryBlock + " wid=" + worldId + " AND (x = '" + x + "' OR x = '" + x2 + "') AND (z = '" + z + "' OR z = '" + z2 + "') AND y = '" + location.getBlockY() + "' AND";
+                queryBlock.append(" wid=? AND (x = ? OR x = ?) AND (z = ? OR z = ?) AND y = ? AND", worldId, x, x2, z, z2, location.getBlockY());
             }
 
             if (validAction) {
-                queryBlock = queryBlock + " action IN(" + action + ") AND";
+                queryBlock.append(" action IN(" + action + ") AND");
             }
             else if (inventoryQuery || actionExclude.length() > 0 || includeBlock.length() > 0 || includeEntity.length() > 0 || excludeBlock.length() > 0 || excludeEntity.length() > 0) {
-                queryBlock = queryBlock + " action NOT IN(-1) AND";
+                queryBlock.append(" action NOT IN(-1) AND");
             }
 
             if (includeBlock.length() > 0 || includeEntity.length() > 0) {
-                queryBlock = queryBlock + " type IN(" + (includeBlock.length() > 0 ? includeBlock : "0") + ") AND";
+                queryBlock.append(" type IN(" + (includeBlock.length() > 0 ? includeBlock : "0") + ") AND");
             }
 
             if (excludeBlock.length() > 0 || excludeEntity.length() > 0) {
-                queryBlock = queryBlock + " type NOT IN(" + (excludeBlock.length() > 0 ? excludeBlock : "0") + ") AND";
+                queryBlock.append(" type NOT IN(" + (excludeBlock.length() > 0 ? excludeBlock : "0") + ") AND");
             }
 
-            if (uuids.length() > 0) {
-                queryBlock = queryBlock + " uuid IN(" + uuids + ") AND";
+            if (checkUuids.size() > 0) {
+                queryBlock.append(" uuid IN(").appendList(checkUuids).append(") AND");
             }
 
-            if (users.length() > 0) {
-                queryBlock = queryBlock + " user IN(" + users + ") AND";
+            if (users.size() > 0) {
+                queryBlock.append(" user IN(").appendList(users).append(") AND");
             }
 
-            if (excludeUsers.length() > 0) {
-                queryBlock = queryBlock + " user NOT IN(" + excludeUsers + ") AND";
+            if (excludeUsers.size() > 0) {
+                queryBlock.append(" user NOT IN(").appendList(excludeUsers).append(") AND");
             }
 
             if (startTime > 0) {
-                queryBlock = queryBlock + " time > '" + startTime + "' AND";
+                queryBlock.append(" time > ? AND", startTime);
             }
 
             if (endTime > 0) {
-                queryBlock = queryBlock + " time <= '" + endTime + "' AND";
+                queryBlock.append(" time <= ? AND", endTime);
             }
 
             if (actionList.contains(10)) {
-                queryBlock = queryBlock + " action = '1' AND (LENGTH(line_1) > 0 OR LENGTH(line_2) > 0 OR LENGTH(line_3) > 0 OR LENGTH(line_4) > 0 OR LENGTH(line_5) > 0 OR LENGTH(line_6) > 0 OR LENGTH(line_7) > 0 OR LENGTH(line_8) > 0) AND";
-            }
-
-            if (queryBlock.length() > 0) {
-                queryBlock = queryBlock.substring(0, queryBlock.length() - 4);
+                queryBlock.append(" action = '1' AND (LENGTH(line_1) > 0 OR LENGTH(line_2) > 0 OR LENGTH(line_3) > 0 OR LENGTH(line_4) > 0 OR LENGTH(line_5) > 0 OR LENGTH(line_6) > 0 OR LENGTH(line_7) > 0 OR LENGTH(line_8) > 0) AND");
             }
 
+            queryBlock.removeEnd(" AND");
             if (queryBlock.length() == 0) {
-                queryBlock = " 1";
+                queryBlock.append(" 1");
             }
 
             queryEntity = queryBlock;
@@ -535,10 +531,10 @@ public class LookupRaw extends Queue {
                 queryEntity = queryEntity.replace("type NOT IN(" + (excludeBlock.length() > 0 ? excludeBlock : "0") + ")", "type NOT IN(" + (excludeEntity.length() > 0 ? excludeEntity : "0") + ")");
             }
 
-            String baseQuery = ((!includeEntity.isEmpty() || !excludeEntity.isEmpty()) ? queryEntity : queryBlock);
+            QueryBuilder baseQuery = ((!includeEntity.isEmpty() || !excludeEntity.isEmpty()) ? queryEntity : queryBlock);
             if (limitOffset > -1 && limitCount > -1) {
-                queryLimit = " LIMIT " + limitOffset + ", " + limitCount + "";
-                unionLimit = " ORDER BY time DESC, id DESC LIMIT " + (limitOffset + limitCount) + "";
+                queryLimit.append(" LIMIT ?, ?", limitOffset, limitCount);
+                unionLimit.append(" ORDER BY time DESC, id DESC LIMIT ?", limitOffset + limitCount);
             }
 
             String rows = "rowid as id,time,user,wid,x,y,z,action,type,data,meta,blockdata,rolled_back";
@@ -578,9 +574,9 @@ public class LookupRaw extends Queue {
 
             if (count) {
                 rows = "COUNT(*) as count";
-                queryLimit = " LIMIT 0, 3";
+                queryLimit = new QueryBuilder(" LIMIT 0, 3");
                 queryOrder = "";
-                unionLimit = "";
+                unionLimit = new QueryBuilder();
             }
 
             String unionSelect = "SELECT * FROM (";
@@ -589,13 +585,16 @@ public class LookupRaw extends Queue {
                     if (includeBlock.length() > 0 || includeEntity.length() > 0) {
                         index = "USE INDEX(type) IGNORE INDEX(user,wid) ";
                     }
-                    if (users.length() > 0) {
+                    if (users.size() > 0) {
                         index = "USE INDEX(user) IGNORE INDEX(type,wid) ";
                     }
                     if (radius != null && (radius[2] - radius[1]) <= 50 && (radius[6] - radius[5]) <= 50) {
                         index = "USE INDEX(wid) IGNORE INDEX(type,user) ";
                     }
-                    if ((restrictWorld && (users.length() > 0 || includeBlock.length() > 0 || includeEntity.length() > 0))) {
+                    else if (spatialQuery != null) {
+                        index = "USE INDEX(" + SpatialIndex.COLUMN + ") IGNORE INDEX(type,user) ";
+                    }
+                    if ((restrictWorld && (users.size() > 0 || includeBlock.length() > 0 || includeEntity.length() > 0))) {
                         index = "IGNORE INDEX(PRIMARY) ";
                     }
                 }
@@ -607,19 +606,28 @@ public class LookupRaw extends Queue {
                     if (includeBlock.length() > 0 || includeEntity.length() > 0) {
                         index = "INDEXED BY block_type_index ";
                     }
-                    if (users.length() > 0) {
+                    if (users.size() > 0) {
                         index = "INDEXED BY block_user_index ";
                     }
                     if (radius != null && (radius[2] - radius[1]) <= 50 && (radius[6] - radius[5]) <= 50) {
                         index = "INDEXED BY block_index ";
                     }
-                    if ((restrictWorld && (users.length() > 0 || includeBlock.length() > 0 || includeEntity.length() > 0))) {
+                    else if (spatialQuery != null) {
+                        index = "INDEXED BY block_chunk_index ";
+                    }
+                    if ((restrictWorld && (users.size() > 0 || includeBlock.length() > 0 || includeEntity.length() > 0))) {
                         index = "";
                     }
                 }
             }
 
+            if (spatialQuery != null && queryTable.equals("block")) {
+                // only the block table has a chunk key
+                baseQuery = new QueryBuilder(" ").append(spatialQuery).append(" AND").append(baseQuery);
+            }
+
             boolean itemLookup = inventoryQuery;
+            QueryBuilder[] mergeQueries = new QueryBuilder[3];
             if ((lookup && actionList.size() == 0) || (itemLookup && !actionList.contains(0))) {
                 if (!count) {
                     rows = "rowid as id,time,user,wid,x,y,z,type,meta as metadata,data,-1 as amount,action,rolled_back";
@@ -642,7 +650,8 @@ public class LookupRaw extends Queue {
                     baseQuery = baseQuery.replace("action NOT IN(-1)", "action NOT IN(3)"); // if block specified for include/exclude, filter out entity data
                 }
 
-                query = unionSelect + "SELECT " + "'0' as tbl," + rows + " FROM " + ConfigHandler.prefix + "block " + index + "WHERE" + baseQuery + unionLimit + ") UNION ALL ";
+                mergeQueries[0] = new QueryBuilder("SELECT " + "'0' as tbl," + rows + " FROM " + ConfigHandler.prefix + "block " + index + "WHERE").append(baseQuery);
+                query.append(unionSelect).append(mergeQueries[0]).append(unionLimit).append(") UNION ALL ");
                 itemLookup = true;
             }
 
@@ -650,7 +659,8 @@ public class LookupRaw extends Queue {
                 if (!count) {
                     rows = "rowid as id,time,user,wid,x,y,z,type,metadata,data,amount,action,rolled_back";
                 }
-                query = query + unionSelect + "SELECT " + "'1' as tbl," + rows + " FROM " + ConfigHandler.prefix + "container WHERE" + queryBlock + unionLimit + ") UNION ALL ";
+                mergeQueries[1] = new QueryBuilder("SELECT " + "'1' as tbl," + rows + " FROM " + ConfigHandler.prefix + "container WHERE").append(queryBlock);
+                query.append(unionSelect).append(mergeQueries[1]).append(unionLimit).append(") UNION ALL ");
 
                 if (!count) {
                     rows = "rowid as id,time,user,wid,x,y,z,type,data as metadata,0 as data,amount,action,rolled_back";
@@ -661,7 +671,13 @@ public class LookupRaw extends Queue {
                     queryBlock = queryBlock.replace("action NOT IN(-1)", "action NOT IN(" + actionExclude + ")");
                 }
 
-                query = query + unionSelect + "SELECT " + "'2' as tbl," + rows + " FROM " + ConfigHandler.prefix + "item WHERE" + queryBlock + unionLimit + ")";
+                mergeQueries[2] = new QueryBuilder("SELECT " + "'2' as tbl," + rows + " FROM " + ConfigHandler.prefix + "item WHERE").append(queryBlock);
+                query.append(unionSelect).append(mergeQueries[2]).append(unionLimit).append(")");
+
+                if (!count && limitOffset > -1 && limitCount > -1) {
+                    // merge the tables' results here rather than sorting the union in the database
+                    return LookupMerge.open(statement, mergeQueries, limitOffset, limitCount, rowData);
+                }
             }
 
             if (query.length() == 0) {
@@ -669,11 +685,21 @@ public class LookupRaw extends Queue {
                     baseQuery = baseQuery.replace("action NOT IN(-1)", "action NOT IN(" + actionExclude + ")");
                 }
 
-                query = "SELECT " + "'0' as tbl," + rows + " FROM " + ConfigHandler.prefix + queryTable + " " + index + "WHERE" + baseQuery;
+                QueryBuilder tableQuery = new QueryBuilder("SELECT " + "'0' as tbl," + rows + " FROM " + ConfigHandler.prefix + queryTable + " " + index + "WHERE").append(baseQuery);
+                if (!count && limitOffset > -1 && limitCount > -1) {
+                    return LookupMerge.openPage(statement, tableQuery, limitOffset, limitCount, rowData);
+                }
+
+                query.append(tableQuery);
             }
 
-            query = query + queryOrder + queryLimit + "";
-            results = statement.executeQuery(query);
+            if (order != null && !count) {
+                query.append(order).append(queryLimit);
+            }
+            else {
+                query.append(queryOrder).append(queryLimit);
+            }
+            results = (streamConnection != null ? query.executeStream(streamConnection) : query.executeQuery(statement));
         }
         catch (Exception e) {
             e.printStackTrace();
@@ -0,0 +1,227 @@
+package net.coreprotect.database;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.block.BlockState;
+
+import net.coreprotect.config.Config;
+import net.coreprotect.config.ConfigHandler;
+import net.coreprotect.consumer.Consumer;
+import net.coreprotect.consumer.ConsumerBuffer;
+import net.coreprotect.consumer.ConsumerEvent;
+import net.coreprotect.consumer.process.Process;
+import net.coreprotect.database.statement.UserStatement;
+import net.coreprotect.utility.MaterialUtils;
+import net.coreprotect.utility.WorldUtils;
+
+/**
+ * A consistent view of the database and the consumer queue for a single lookup.
+ *
+ * The lookup runs in a read transaction on its own connection (a WAL reader on SQLite, a consistent
+ * snapshot on MySQL), so it doesn't need to pause the consumer. The snapshot is taken while the
+ * consumer can't commit, together with a copy of the block breaks and placements still waiting in
+ * the queue. Those are returned as raw lookup rows, so recent actions show up before they're written.
+ */
+class LookupSnapshot {
+
+    private final Statement statement;
+    private final List<Object[]> pending = new ArrayList<>();
+    private boolean transaction = false;
+
+    private LookupSnapshot(Statement statement) {
+        this.statement = statement;
+    }
+
+    /**
+     * Returns true if lookups can read a snapshot without pausing the consumer.
+     * SQLite only supports this in WAL mode, where readers don't block the writer.
+     */
+    protected static boolean isSupported() {
+        return Config.getGlobal().MYSQL || !Config.getGlobal().DISABLE_WAL;
+    }
+
+    protected static LookupSnapshot open(Statement statement, List<String> checkUuids, List<String> checkUsers, List<Object> restrictList, Map<Object, Boolean> excludeList, List<String> excludeUserList, List<Integer> actionList, Location location, Integer[] radius, long startTime, long endTime, boolean restrictWorld, boolean lookup) {
+        LookupSnapshot snapshot = new LookupSnapshot(statement);
+
+        try {
+            // load user IDs before the snapshot is taken, as unknown users are inserted
+            Set<Integer> users = getUserIds(statement, checkUsers);
+            Set<Integer> excludeUsers = getUserIds(statement, excludeUserList);
+            if (checkUsers.contains("#global") || !hasUserNames(checkUsers)) {
+                users = null;
+            }
+
+            int worldId = -1;
+            if (restrictWorld || radius != null) {
+                worldId = WorldUtils.getWorldId(location.getWorld().getName());
+            }
+
+            Consumer.commitLock.readLock().lock();
+            try {
+                if (Config.getGlobal().MYSQL) {
+                    statement.executeUpdate("START TRANSACTION WITH CONSISTENT SNAPSHOT");
+                    snapshot.transaction = true;
+                }
+                else {
+                    statement.executeUpdate("BEGIN TRANSACTION");
+                    snapshot.transaction = true;
+
+                    // a WAL read transaction only starts once the database is read
+                    ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM sqlite_master");
+                    resultSet.close();
+                }
+
+                if (lookup && checkUuids.isEmpty() && isBlockLookup(actionList)) {
+                    int current = Consumer.currentConsumer;
+                    snapshot.collect(Consumer.getBuffer(current), users, excludeUsers, restrictList, excludeList, actionList, worldId, radius, startTime, endTime);
+                    snapshot.collect(Consumer.getBuffer(current == 0 ? 1 : 0), users, excludeUsers, restrictList, excludeList, actionList, worldId, radius, startTime, endTime);
+                }
+            }
+            finally {
+                Consumer.commitLock.readLock().unlock();
+            }
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            snapshot.pending.clear();
+        }
+
+        return snapshot;
+    }
+
+    private static Set<Integer> getUserIds(Statement statement, List<String> userList) throws Exception {
+        Set<Integer> userIds = new HashSet<>();
+        for (String user : userList) {
+            if (user.equals("#global") || user.equals("#container")) {
+                continue;
+            }
+
+            if (ConfigHandler.playerIdCache.get(user.toLowerCase(Locale.ROOT)) == null) {
+                UserStatement.loadId(statement.getConnection(), user, null);
+            }
+
+            Integer userId = ConfigHandler.playerIdCache.get(user.toLowerCase(Locale.ROOT));
+            if (userId != null) {
+                userIds.add(userId);
+            }
+        }
+
+        return userIds;
+    }
+
+    private static boolean hasUserNames(List<String> userList) {
+        for (String user : userList) {
+            if (!user.equals("#global") && !user.equals("#container")) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isBlockLookup(List<Integer> actionList) {
+        for (Integer action : actionList) {
+            if (action < 0 || action > 3) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Copies the matching block actions from a consumer buffer, newest first.
+     */
+    private void collect(ConsumerBuffer buffer, Set<Integer> users, Set<Integer> excludeUsers, List<Object> restrictList, Map<Object, Boolean> excludeList, List<Integer> actionList, int worldId, Integer[] radius, long startTime, long endTime) {
+        int time = (int) (System.currentTimeMillis() / 1000L);
+        if ((startTime > 0 && time <= startTime) || (endTime > 0 && time > endTime)) {
+            return;
+        }
+
+        boolean hasTable = actionList.isEmpty();
+        for (int i = buffer.size() - 1; i >= 0; i--) {
+            ConsumerEvent event = buffer.get(i);
+            if (!event.ready) {
+                // claimed by a listener thread, but not filled in yet
+                continue;
+            }
+
+            int action = event.action;
+            Material type = event.type;
+            String user = event.user;
+            int wid = event.wid;
+            int x = event.x;
+            int y = event.y;
+            int z = event.z;
+
+            if (event.committed || (action != Process.BLOCK_BREAK && action != Process.BLOCK_PLACE) || !(event.object instanceof BlockState) || type == null || user == null || wid < 0) {
+                continue;
+            }
+            if (!actionList.isEmpty() && !actionList.contains(action)) {
+                continue;
+            }
+            if (worldId > -1 && wid != worldId) {
+                continue;
+            }
+            if (radius != null) {
+                if (x < radius[1] || x > radius[2] || z < radius[5] || z > radius[6]) {
+                    continue;
+                }
+                if (radius[3] != null && radius[4] != null && (y < radius[3] || y > radius[4])) {
+                    continue;
+                }
+            }
+            if ((!restrictList.isEmpty() && !restrictList.contains(type)) || excludeList.containsKey(type)) {
+                continue;
+            }
+
+            Integer userId = ConfigHandler.playerIdCache.get(user.toLowerCase(Locale.ROOT));
+            if (userId == null || (users != null && !users.contains(userId)) || excludeUsers.contains(userId)) {
+                continue;
+            }
+
+            int typeId = MaterialUtils.getBlockId(type.name(), false);
+            if (typeId == -1) {
+                continue;
+            }
+
+            long id = -(pending.size() + 1L);
+            if (hasTable) {
+                pending.add(new Object[] { id, time, userId, x, y, z, typeId, event.data, action, 0, wid, -1, null, null, 0 });
+            }
+            else {
+                pending.add(new Object[] { id, time, userId, x, y, z, typeId, event.data, action, 0, wid, -1, null, null });
+            }
+        }
+    }
+
+    /**
+     * Returns the rows still waiting in the consumer queue that match the lookup, newest first.
+     */
+    protected List<Object[]> getPending() {
+        return pending;
+    }
+
+    protected void close() {
+        if (!transaction) {
+            return;
+        }
+
+        try {
+            statement.executeUpdate("COMMIT");
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+        }
+        transaction = false;
+    }
+}
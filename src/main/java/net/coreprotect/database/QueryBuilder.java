@@ -0,0 +1,141 @@
+package net.coreprotect.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import net.coreprotect.config.Config;
+
+/**
+ * Builds a lookup query with bound parameters.
+ *
+ * Values that change from one lookup to the next (worlds, coordinates, times, users, limits) are
+ * bound as parameters, so repeated lookups produce the same SQL and the database can reuse the
+ * prepared statement and its plan. Action and type filters are kept in the SQL, as they're rewritten
+ * when a lookup spans several tables and only take a few distinct values.
+ *
+ * On SQLite, statements are kept prepared on the pooled connection (see {@link SQLiteConnection}).
+ * On MySQL, the driver caches server-side prepared statements per connection.
+ */
+public class QueryBuilder {
+
+    private final StringBuilder query = new StringBuilder();
+    private final List<Object> parameters = new ArrayList<>();
+
+    public QueryBuilder() {
+    }
+
+    public QueryBuilder(String text, Object... values) {
+        append(text, values);
+    }
+
+    /**
+     * Appends SQL text, binding a value to each placeholder in it.
+     */
+    public QueryBuilder append(String text, Object... values) {
+        query.append(text);
+        for (Object value : values) {
+            parameters.add(value);
+        }
+
+        return this;
+    }
+
+    public QueryBuilder append(QueryBuilder builder) {
+        query.append(builder.query);
+        parameters.addAll(builder.parameters);
+        return this;
+    }
+
+    /**
+     * Appends a comma separated list of placeholders, binding a value to each.
+     */
+    public QueryBuilder appendList(Collection<?> values) {
+        boolean first = true;
+        for (Object value : values) {
+            query.append(first ? "?" : ",?");
+            parameters.add(value);
+            first = false;
+        }
+
+        return this;
+    }
+
+    /**
+     * Returns a copy with SQL text replaced. The target must not contain placeholders.
+     */
+    public QueryBuilder replace(String target, String replacement) {
+        QueryBuilder builder = new QueryBuilder(query.toString().replace(target, replacement));
+        builder.parameters.addAll(parameters);
+        return builder;
+    }
+
+    /**
+     * Removes trailing SQL text, if present.
+     */
+    public QueryBuilder removeEnd(String text) {
+        int length = query.length() - text.length();
+        if (length >= 0 && query.indexOf(text, length) == length) {
+            query.setLength(length);
+        }
+
+        return this;
+    }
+
+    public int length() {
+        return query.length();
+    }
+
+    protected static void bind(PreparedStatement preparedStatement, List<Object> parameters) throws SQLException {
+        for (int i = 0; i < parameters.size(); i++) {
+            preparedStatement.setObject(i + 1, parameters.get(i));
+        }
+    }
+
+    /**
+     * Runs the query on the statement's connection. Closing the returned result set releases the statement.
+     */
+    public ResultSet executeQuery(Statement statement) throws SQLException {
+        return executeQuery(statement.getConnection());
+    }
+
+    public ResultSet executeQuery(Connection connection) throws SQLException {
+        String sql = query.toString();
+        ResultSet resultSet = SQLiteConnection.executeQuery(connection, sql, parameters);
+        if (resultSet != null) {
+            return resultSet;
+        }
+
+        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        bind(preparedStatement, parameters);
+        preparedStatement.closeOnCompletion();
+        return preparedStatement.executeQuery();
+    }
+
+    /**
+     * Runs the query, reading rows from the database as they're consumed rather than all at once.
+     * SQLite always reads rows this way. On MySQL, the connection can't run any other query until
+     * the returned result set is closed.
+     */
+    public ResultSet executeStream(Connection connection) throws SQLException {
+        if (!Config.getGlobal().MYSQL) {
+            return executeQuery(connection);
+        }
+
+        PreparedStatement preparedStatement = connection.prepareStatement(query.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        bind(preparedStatement, parameters);
+        preparedStatement.setFetchSize(Integer.MIN_VALUE);
+        preparedStatement.closeOnCompletion();
+        return preparedStatement.executeQuery();
+    }
+
+    @Override
+    public String toString() {
+        return query.toString();
+    }
+}
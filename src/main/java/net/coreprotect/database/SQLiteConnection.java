@@ -0,0 +1,377 @@
+package net.coreprotect.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.coreprotect.config.Config;
+import net.coreprotect.config.ConfigHandler;
+
+/**
+ * Long-lived SQLite connections.
+ *
+ * The consumer writes through a single persistent connection, and lookups borrow from a small pool of
+ * reader connections (these aren't opened with query_only, as a lookup may still register an unknown user). Connections are handed out wrapped, so closing them returns them for reuse,
+ * and any statements left open by the borrower are closed at that point. PRAGMAs are applied once,
+ * when a connection is opened. The writer also keeps the consumer's insert statements prepared
+ * between batches (see {@link Database#prepareStatement(Connection, int, boolean)}), and every
+ * connection keeps the lookup queries it has recently run prepared (see {@link QueryBuilder}).
+ */
+public class SQLiteConnection implements InvocationHandler {
+
+    protected static final int NONE = 0;
+    protected static final int WRITER = 1;
+    protected static final int READER = 2;
+
+    private static final int READ_CONNECTIONS = 4;
+    private static final int CACHED_QUERIES = 32;
+
+    private static final Object lock = new Object();
+    private static final Deque<SQLiteConnection> readers = new ArrayDeque<>();
+    // statements created through a proxy report the underlying connection
+    private static final Map<Connection, SQLiteConnection> handlers = new IdentityHashMap<>();
+    private static SQLiteConnection writer = null;
+    private static int generation = 0;
+    private static int activeReaders = 0;
+
+    private final Connection connection;
+    private final Connection proxy;
+    private final boolean readOnly;
+    private final int connectionGeneration;
+    private final List<Statement> statements = new ArrayList<>();
+    private final Map<Integer, PreparedStatement> preparedStatements = new HashMap<>();
+    private final Map<String, PreparedStatement> queryStatements;
+    private final Map<PreparedStatement, ResultSet> activeQueries = new HashMap<>();
+    private boolean borrowed = false;
+
+    private SQLiteConnection(Connection connection, boolean readOnly, int connectionGeneration) {
+        this.connection = connection;
+        this.readOnly = readOnly;
+        this.connectionGeneration = connectionGeneration;
+        this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, this);
+        this.queryStatements = new LinkedHashMap<String, PreparedStatement>(CACHED_QUERIES, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= CACHED_QUERIES) {
+                    return false;
+                }
+
+                if (activeQueries.containsKey(eldest.getValue())) {
+                    // still being read, closed when the connection is returned
+                    statements.add(eldest.getValue());
+                }
+                else {
+                    try {
+                        eldest.getValue().close();
+                    }
+                    catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+                return true;
+            }
+        };
+    }
+
+    private static SQLiteConnection open(boolean readOnly, int connectionGeneration) throws Exception {
+        String database = "jdbc:sqlite:" + ConfigHandler.path + ConfigHandler.sqlite + "";
+        Connection connection = DriverManager.getConnection(database);
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("PRAGMA temp_store=MEMORY");
+            if (readOnly) {
+                statement.executeUpdate("PRAGMA cache_size=-4096");
+            }
+            else {
+                statement.executeUpdate("PRAGMA cache_size=-16384");
+                if (!Config.getGlobal().DISABLE_WAL) {
+                    // checkpoints are run in the background by CheckpointHandler
+                    statement.executeUpdate("PRAGMA wal_autocheckpoint=0");
+                }
+            }
+        }
+
+        SQLiteConnection handler = new SQLiteConnection(connection, readOnly, connectionGeneration);
+        synchronized (lock) {
+            handlers.put(connection, handler);
+        }
+
+        return handler;
+    }
+
+    /**
+     * Returns the persistent writer connection, or null if it's already in use.
+     */
+    protected static Connection getWriter() throws Exception {
+        synchronized (lock) {
+            if (writer == null || writer.connection.isClosed()) {
+                writer = open(false, generation);
+            }
+            if (writer.borrowed) {
+                return null;
+            }
+
+            writer.borrowed = true;
+            return writer.proxy;
+        }
+    }
+
+    /**
+     * Returns an idle lookup connection from the pool, opening a new one if none are available.
+     */
+    protected static Connection getReader() throws Exception {
+        int currentGeneration;
+        synchronized (lock) {
+            SQLiteConnection reader;
+            while ((reader = readers.pollFirst()) != null) {
+                if (!reader.connection.isClosed()) {
+                    reader.borrowed = true;
+                    activeReaders++;
+                    return reader.proxy;
+                }
+            }
+            currentGeneration = generation;
+        }
+
+        SQLiteConnection reader = open(true, currentGeneration);
+        synchronized (lock) {
+            reader.borrowed = true;
+            activeReaders++;
+        }
+        return reader.proxy;
+    }
+
+    /**
+     * Returns the underlying connection used to prepare cached statements, or null if the connection isn't persistent.
+     */
+    protected static Connection getStatementConnection(Connection connection) {
+        SQLiteConnection handler = getHandler(connection);
+        return (handler != null && !handler.readOnly) ? handler.connection : null;
+    }
+
+    protected static PreparedStatement getStatement(Connection connection, int type) {
+        SQLiteConnection handler = getHandler(connection);
+        return handler != null ? handler.preparedStatements.get(type) : null;
+    }
+
+    protected static void cacheStatement(Connection connection, int type, PreparedStatement preparedStatement) {
+        SQLiteConnection handler = getHandler(connection);
+        if (handler != null) {
+            handler.preparedStatements.put(type, preparedStatement);
+        }
+    }
+
+    /**
+     * Runs a query through a statement kept prepared on the connection. Returns null if the connection
+     * isn't persistent, in which case the caller prepares the statement itself.
+     */
+    protected static ResultSet executeQuery(Connection connection, String query, List<Object> parameters) throws SQLException {
+        SQLiteConnection handler = getHandler(connection);
+        if (handler == null) {
+            synchronized (lock) {
+                handler = handlers.get(connection);
+            }
+        }
+        if (handler == null || !handler.borrowed) {
+            return null;
+        }
+
+        PreparedStatement preparedStatement = handler.queryStatements.get(query);
+        if (preparedStatement == null) {
+            preparedStatement = handler.connection.prepareStatement(query);
+            handler.queryStatements.put(query, preparedStatement);
+        }
+        else if (handler.isActive(preparedStatement)) {
+            // the same query is already being read on this connection
+            preparedStatement = handler.connection.prepareStatement(query);
+            handler.statements.add(preparedStatement);
+        }
+
+        QueryBuilder.bind(preparedStatement, parameters);
+        ResultSet resultSet = preparedStatement.executeQuery();
+        handler.activeQueries.put(preparedStatement, resultSet);
+        return resultSet;
+    }
+
+    private boolean isActive(PreparedStatement preparedStatement) throws SQLException {
+        ResultSet resultSet = activeQueries.get(preparedStatement);
+        return resultSet != null && !resultSet.isClosed();
+    }
+
+    /**
+     * Returns the number of lookup connections currently borrowed.
+     */
+    public static int getActiveReaders() {
+        synchronized (lock) {
+            return activeReaders;
+        }
+    }
+
+    public static boolean isPersistent(Connection connection) {
+        return getHandler(connection) != null;
+    }
+
+    private static SQLiteConnection getHandler(Connection connection) {
+        if (connection != null && Proxy.isProxyClass(connection.getClass())) {
+            InvocationHandler handler = Proxy.getInvocationHandler(connection);
+            if (handler instanceof SQLiteConnection) {
+                return (SQLiteConnection) handler;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Closes every idle connection. Connections currently in use are closed once they're returned.
+     * Called when the database is reloaded, e.g. after a purge has replaced the database file.
+     */
+    public static void closeAll() {
+        synchronized (lock) {
+            generation++;
+            for (SQLiteConnection reader : readers) {
+                reader.closeConnection();
+            }
+            readers.clear();
+
+            if (writer != null) {
+                if (!writer.borrowed) {
+                    writer.closeConnection();
+                }
+                writer = null;
+            }
+        }
+    }
+
+    private void release() {
+        for (ResultSet resultSet : activeQueries.values()) {
+            try {
+                resultSet.close();
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        activeQueries.clear();
+
+        for (Statement statement : statements) {
+            try {
+                statement.close();
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        statements.clear();
+
+        if (!readOnly) {
+            // discard any rows left over from an aborted batch
+            for (PreparedStatement preparedStatement : preparedStatements.values()) {
+                try {
+                    preparedStatement.clearBatch();
+                }
+                catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        // end any transaction left open, so it doesn't hold back checkpoints
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("ROLLBACK");
+        }
+        catch (Exception e) {
+            // no transaction was active
+        }
+
+        synchronized (lock) {
+            borrowed = false;
+            if (readOnly) {
+                activeReaders--;
+            }
+
+            boolean closed = true;
+            try {
+                closed = connection.isClosed();
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+            }
+
+            if (closed || connectionGeneration != generation) {
+                closeConnection();
+            }
+            else if (readOnly) {
+                if (readers.size() < READ_CONNECTIONS) {
+                    readers.addFirst(this);
+                }
+                else {
+                    closeConnection();
+                }
+            }
+        }
+    }
+
+    private void closeConnection() {
+        try {
+            for (PreparedStatement preparedStatement : preparedStatements.values()) {
+                preparedStatement.close();
+            }
+            preparedStatements.clear();
+            for (PreparedStatement preparedStatement : queryStatements.values()) {
+                preparedStatement.close();
+            }
+            queryStatements.clear();
+            handlers.remove(connection);
+            connection.close();
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "close":
+                if (borrowed) {
+                    release();
+                }
+                return null;
+            case "isClosed":
+                return !borrowed || connection.isClosed();
+            default:
+                break;
+        }
+
+        Object result;
+        try {
+            result = method.invoke(connection, args);
+        }
+        catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+
+        if (result instanceof Statement) {
+            statements.add((Statement) result);
+        }
+
+        return result;
+    }
+}
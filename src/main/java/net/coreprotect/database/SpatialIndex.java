@@ -0,0 +1,99 @@
+package net.coreprotect.database;
+
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.coreprotect.config.ConfigHandler;
+
+/**
+ * Packed chunk key for radius lookups on the block table.
+ *
+ * The chunk_key column is generated by the database from a row's world and chunk coordinates, and
+ * is indexed together with time. A radius lookup lists every chunk inside the radius, so the index
+ * is searched by chunk key with the time bounds applied in the index, instead of reading every row
+ * between the x bounds of the (wid,x,z) index regardless of z.
+ */
+public class SpatialIndex {
+
+    public static final String COLUMN = "chunk_key";
+
+    // chunk coordinates are offset to keep them positive, which covers the world border with room to spare
+    private static final int CHUNK_OFFSET = 1 << 21;
+    private static final long X_MULTIPLIER = 1L << 22;
+    private static final long WORLD_MULTIPLIER = 1L << 44;
+    // a radius of about 1000 blocks, and well under the bound parameter limit of SQLite
+    private static final int MAX_CHUNKS = 16384;
+
+    private static volatile Boolean available = null;
+
+    private SpatialIndex() {
+        throw new IllegalStateException("Database class");
+    }
+
+    public static long getKey(int wid, int chunkX, int chunkZ) {
+        return (wid * WORLD_MULTIPLIER) + ((chunkX + CHUNK_OFFSET) * X_MULTIPLIER) + (chunkZ + CHUNK_OFFSET);
+    }
+
+    /**
+     * Returns the definition of the generated chunk_key column, matching getKey().
+     */
+    public static String getColumnDefinition(boolean mySQL) {
+        if (mySQL) {
+            return COLUMN + " bigint AS (wid * " + WORLD_MULTIPLIER + " + (FLOOR(x / 16) + " + CHUNK_OFFSET + ") * " + X_MULTIPLIER + " + FLOOR(z / 16) + " + CHUNK_OFFSET + ")";
+        }
+
+        return COLUMN + " INTEGER GENERATED ALWAYS AS (wid * " + WORLD_MULTIPLIER + " + ((x >> 4) + " + CHUNK_OFFSET + ") * " + X_MULTIPLIER + " + (z >> 4) + " + CHUNK_OFFSET + ") VIRTUAL";
+    }
+
+    /**
+     * Forgets whether the block table has a chunk_key column, after it has been added.
+     */
+    public static void reset() {
+        available = null;
+    }
+
+    private static boolean isAvailable(Statement statement) {
+        Boolean result = available;
+        if (result != null) {
+            return result;
+        }
+
+        try (Statement check = statement.getConnection().createStatement()) {
+            check.executeQuery("SELECT " + COLUMN + " FROM " + ConfigHandler.prefix + "block LIMIT 0").close();
+            result = true;
+        }
+        catch (Exception e) {
+            // databases that haven't been patched yet
+            result = false;
+        }
+
+        available = result;
+        return result;
+    }
+
+    /**
+     * Returns a condition on chunk_key covering the given block coordinates, or null if the area
+     * spans too many chunks for the index to be worth using.
+     */
+    public static QueryBuilder getCondition(Statement statement, int wid, int xmin, int xmax, int zmin, int zmax) {
+        int chunkXMin = xmin >> 4;
+        int chunkXMax = xmax >> 4;
+        int chunkZMin = zmin >> 4;
+        int chunkZMax = zmax >> 4;
+        if ((long) (chunkXMax - chunkXMin + 1) * (chunkZMax - chunkZMin + 1) > MAX_CHUNKS || !isAvailable(statement)) {
+            return null;
+        }
+
+        // one key per chunk rather than a key range per column of chunks, so the time bounds
+        // are also applied in the (chunk_key,time) index before any rows are read
+        List<Long> keys = new ArrayList<>();
+        for (int chunkX = chunkXMin; chunkX <= chunkXMax; chunkX++) {
+            for (int chunkZ = chunkZMin; chunkZ <= chunkZMax; chunkZ++) {
+                keys.add(getKey(wid, chunkX, chunkZ));
+            }
+        }
+
+        return new QueryBuilder(COLUMN + " IN(").appendList(keys).append(")");
+    }
+}
@@ -0,0 +1,195 @@
+package net.coreprotect.database;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import net.coreprotect.config.Config;
+import net.coreprotect.language.Phrase;
+import net.coreprotect.utility.Chat;
+
+/**
+ * Monthly MySQL RANGE partitions for the history tables, enabled with "mysql-partitioning".
+ *
+ * Each partition holds a calendar month (UTC) of rows, with a catch-all partition for anything newer.
+ * MySQL only reads the partitions that overlap a query's time range, and a purge can drop whole
+ * partitions instead of deleting their rows. Partitions are added a few months ahead on startup.
+ * Converting a table rebuilds it, so tables that aren't partitioned yet are only converted by
+ * "/co purge #optimize", with the consumer paused.
+ */
+public class TablePartitions {
+
+    private static final List<String> PARTITIONED_TABLES = Arrays.asList("block", "container", "item", "chat", "command", "session");
+    private static final String CATCH_ALL = "pmax";
+    private static final int MONTHS_AHEAD = 3;
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("'p'yyyyMM");
+
+    private TablePartitions() {
+        throw new IllegalStateException("Database class");
+    }
+
+    public static boolean isEnabled() {
+        return Config.getGlobal().MYSQL && Config.getGlobal().MYSQL_PARTITIONING;
+    }
+
+    public static boolean isPartitioned(String table) {
+        return isEnabled() && PARTITIONED_TABLES.contains(table);
+    }
+
+    private static long getStart(YearMonth month) {
+        return month.atDay(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static String getDefinition(YearMonth month) {
+        return "PARTITION " + month.format(NAME_FORMAT) + " VALUES LESS THAN (" + getStart(month.plusMonths(1)) + ")";
+    }
+
+    /**
+     * Returns the upper bound of each partition of a table (null for the catch-all partition), oldest first.
+     * Returns an empty map if the table isn't partitioned.
+     */
+    private static Map<String, Long> getPartitions(Statement statement, String prefix, String table) throws Exception {
+        Map<String, Long> partitions = new LinkedHashMap<>();
+        String query = "SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM information_schema.PARTITIONS WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = '" + prefix + table + "' AND PARTITION_NAME IS NOT NULL ORDER BY PARTITION_ORDINAL_POSITION";
+        try (ResultSet resultSet = statement.executeQuery(query)) {
+            while (resultSet.next()) {
+                String description = resultSet.getString("PARTITION_DESCRIPTION");
+                partitions.put(resultSet.getString("PARTITION_NAME"), "MAXVALUE".equalsIgnoreCase(description) ? null : Long.parseLong(description));
+            }
+        }
+
+        return partitions;
+    }
+
+    /**
+     * Adds partitions for the coming months to the tables that are already partitioned.
+     * Tables that aren't partitioned yet are only reported, as partitioning them rebuilds the table.
+     */
+    protected static void maintain(Statement statement, String prefix) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        YearMonth currentMonth = YearMonth.now(ZoneOffset.UTC);
+        List<String> pending = new ArrayList<>();
+        for (String table : PARTITIONED_TABLES) {
+            try {
+                Map<String, Long> partitions = getPartitions(statement, prefix, table);
+                if (partitions.isEmpty()) {
+                    pending.add(table);
+                    continue;
+                }
+
+                long lastBound = 0;
+                for (Long bound : partitions.values()) {
+                    if (bound != null) {
+                        lastBound = Math.max(lastBound, bound);
+                    }
+                }
+
+                StringBuilder definitions = new StringBuilder();
+                for (int i = 0; i <= MONTHS_AHEAD; i++) {
+                    YearMonth month = currentMonth.plusMonths(i);
+                    if (getStart(month) >= lastBound && !partitions.containsKey(month.format(NAME_FORMAT))) {
+                        definitions.append(getDefinition(month)).append(", ");
+                    }
+                }
+                if (definitions.length() > 0 && partitions.containsKey(CATCH_ALL)) {
+                    // only splits rows newer than the last partition, which is normally empty
+                    definitions.append("PARTITION " + CATCH_ALL + " VALUES LESS THAN MAXVALUE");
+                    statement.executeUpdate("ALTER TABLE " + prefix + table + " REORGANIZE PARTITION " + CATCH_ALL + " INTO (" + definitions + ")");
+                }
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            Chat.console(Phrase.build(Phrase.PURGE_PARTITION_REQUIRED, String.join(", ", pending), "/co purge t:<time> #optimize"));
+        }
+    }
+
+    /**
+     * Returns true if a table should be partitioned, but isn't yet.
+     */
+    public static boolean isPending(Statement statement, String prefix, String table) throws Exception {
+        return isPartitioned(table) && getPartitions(statement, prefix, table).isEmpty();
+    }
+
+    /**
+     * Partitions a table, with a partition for each month from its oldest row up to a few months ahead.
+     * This rebuilds the table, so it's only run from "/co purge #optimize".
+     */
+    public static void partition(Statement statement, String prefix, String table) throws Exception {
+        YearMonth currentMonth = YearMonth.now(ZoneOffset.UTC);
+        YearMonth month = currentMonth;
+        try (ResultSet resultSet = statement.executeQuery("SELECT MIN(time) as time FROM " + prefix + table)) {
+            if (resultSet.next()) {
+                long time = resultSet.getLong("time");
+                if (time > 0) {
+                    month = YearMonth.from(Instant.ofEpochSecond(time).atZone(ZoneOffset.UTC));
+                }
+            }
+        }
+        if (month.isAfter(currentMonth)) {
+            month = currentMonth;
+        }
+
+        StringBuilder definitions = new StringBuilder();
+        for (YearMonth lastMonth = currentMonth.plusMonths(MONTHS_AHEAD); !month.isAfter(lastMonth); month = month.plusMonths(1)) {
+            definitions.append(getDefinition(month)).append(", ");
+        }
+        definitions.append("PARTITION " + CATCH_ALL + " VALUES LESS THAN MAXVALUE");
+
+        // the partitioning column has to be part of the primary key
+        statement.executeUpdate("ALTER TABLE " + prefix + table + " DROP PRIMARY KEY, ADD PRIMARY KEY(rowid,time) PARTITION BY RANGE (time) (" + definitions + ")");
+    }
+
+    /**
+     * Drops the partitions of a table that only hold rows older than the given time.
+     * Returns the approximate number of rows removed.
+     */
+    public static long dropPartitions(Statement statement, String prefix, String table, long time) throws Exception {
+        if (!isPartitioned(table)) {
+            return 0;
+        }
+
+        Map<String, Long> partitions = getPartitions(statement, prefix, table);
+        StringBuilder names = new StringBuilder();
+        for (Entry<String, Long> partition : partitions.entrySet()) {
+            if (partition.getValue() == null || partition.getValue() > time) {
+                continue;
+            }
+
+            if (names.length() > 0) {
+                names.append(",");
+            }
+            names.append(partition.getKey());
+        }
+
+        if (names.length() == 0) {
+            return 0;
+        }
+
+        long rows = 0;
+        String query = "SELECT SUM(TABLE_ROWS) as count FROM information_schema.PARTITIONS WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = '" + prefix + table + "' AND FIND_IN_SET(PARTITION_NAME, '" + names + "')";
+        try (ResultSet resultSet = statement.executeQuery(query)) {
+            if (resultSet.next()) {
+                rows = resultSet.getLong("count");
+            }
+        }
+
+        statement.executeUpdate("ALTER TABLE " + prefix + table + " DROP PARTITION " + names);
+        return rows;
+    }
+}
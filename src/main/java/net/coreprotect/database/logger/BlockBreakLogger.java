@@ -12,6 +12,7 @@ import net.coreprotect.CoreProtect;
 import net.coreprotect.bukkit.BukkitAdapter;
 import net.coreprotect.config.Config;
 import net.coreprotect.config.ConfigHandler;
+import net.coreprotect.consumer.process.Process;
 import net.coreprotect.database.statement.BlockStatement;
 import net.coreprotect.database.statement.UserStatement;
 import net.coreprotect.event.CoreProtectPreLogEvent;
@@ -61,7 +62,7 @@ public class BlockBreakLogger {
 
             int userId = UserStatement.getId(preparedStmt, event.getUser(), true);
             int wid = WorldUtils.getWorldId(location.getWorld().getName());
-            int time = (int) (System.currentTimeMillis() / 1000L);
+            int time = Process.getEventTime();
             int x = location.getBlockX();
             int y = location.getBlockY();
             int z = location.getBlockZ();
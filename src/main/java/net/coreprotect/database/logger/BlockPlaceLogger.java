@@ -12,6 +12,7 @@ import net.coreprotect.CoreProtect;
 import net.coreprotect.bukkit.BukkitAdapter;
 import net.coreprotect.config.Config;
 import net.coreprotect.config.ConfigHandler;
+import net.coreprotect.consumer.process.Process;
 import net.coreprotect.database.statement.BlockStatement;
 import net.coreprotect.database.statement.UserStatement;
 import net.coreprotect.event.CoreProtectPreLogEvent;
@@ -92,7 +93,7 @@ public class BlockPlaceLogger {
 
             int userId = UserStatement.getId(preparedStmt, event.getUser(), true);
             int wid = WorldUtils.getWorldId(block.getWorld().getName());
-            int time = (int) (System.currentTimeMillis() / 1000L);
+            int time = Process.getEventTime();
 
             if (event.getUser().length() > 0) {
                 CacheHandler.lookupCache.put("" + x + "." + y + "." + z + "." + wid + "", new Object[] { time, event.getUser(), type });
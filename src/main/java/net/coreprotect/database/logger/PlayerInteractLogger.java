@@ -11,6 +11,7 @@ import org.bukkit.Location;
 import net.coreprotect.CoreProtect;
 import net.coreprotect.config.Config;
 import net.coreprotect.config.ConfigHandler;
+import net.coreprotect.consumer.process.Process;
 import net.coreprotect.database.statement.BlockStatement;
 import net.coreprotect.database.statement.UserStatement;
 import net.coreprotect.event.CoreProtectPreLogEvent;
@@ -41,7 +42,7 @@ public class PlayerInteractLogger {
 
             int userId = UserStatement.getId(preparedStmt, event.getUser(), true);
             int wid = WorldUtils.getWorldId(block.getWorld().getName());
-            int time = (int) (System.currentTimeMillis() / 1000L);
+            int time = Process.getEventTime();
             int x = block.getX();
             int y = block.getY();
             int z = block.getZ();
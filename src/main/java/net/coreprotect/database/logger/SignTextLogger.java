@@ -9,6 +9,7 @@ import org.bukkit.Location;
 import net.coreprotect.CoreProtect;
 import net.coreprotect.config.Config;
 import net.coreprotect.config.ConfigHandler;
+import net.coreprotect.consumer.process.Process;
 import net.coreprotect.database.statement.SignStatement;
 import net.coreprotect.database.statement.UserStatement;
 import net.coreprotect.event.CoreProtectPreLogEvent;
@@ -37,7 +38,7 @@ public class SignTextLogger {
 
             int userId = UserStatement.getId(preparedStmt, event.getUser(), true);
             int wid = WorldUtils.getWorldId(location.getWorld().getName());
-            int time = (int) (System.currentTimeMillis() / 1000L) - timeOffset;
+            int time = Process.getEventTime() - timeOffset;
             int x = location.getBlockX();
             int y = location.getBlockY();
             int z = location.getBlockZ();
@@ -9,6 +9,7 @@ import org.bukkit.block.BlockState;
 import org.bukkit.block.Skull;
 
 import net.coreprotect.config.ConfigHandler;
+import net.coreprotect.consumer.process.Process;
 import net.coreprotect.database.Database;
 import net.coreprotect.database.statement.SkullStatement;
 import net.coreprotect.paper.PaperAdapter;
@@ -24,7 +25,7 @@ public class SkullPlaceLogger {
             if (ConfigHandler.blacklist.get(user.toLowerCase(Locale.ROOT)) != null || block == null) {
                 return;
             }
-            int time = (int) (System.currentTimeMillis() / 1000L);
+            int time = Process.getEventTime();
             Material type = block.getType();
             int skullKey = 0;
 
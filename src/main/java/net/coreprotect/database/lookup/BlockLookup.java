@@ -10,6 +10,7 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
 import net.coreprotect.config.ConfigHandler;
+import net.coreprotect.database.QueryBuilder;
 import net.coreprotect.database.statement.UserStatement;
 import net.coreprotect.language.Phrase;
 import net.coreprotect.language.Selector;
@@ -76,16 +77,16 @@ public class BlockLookup {
             // For block-only mode, only show actions 0 (break) and 1 (place)
             String actionFilter = blocksOnlyMode ? "AND action IN(0,1)" : "AND action IN(0,1,2,3)";
             
-            String query = "SELECT COUNT(*) as count from " + ConfigHandler.prefix + "block " + WorldUtils.getWidIndex("block") + "WHERE wid = '" + worldId + "' AND x = '" + x + "' AND z = '" + z + "' AND y = '" + y + "' " + actionFilter + " AND time >= '" + checkTime + "' LIMIT 0, 1";
-            ResultSet results = statement.executeQuery(query);
+            QueryBuilder query = new QueryBuilder("SELECT COUNT(*) as count from " + ConfigHandler.prefix + "block " + WorldUtils.getWidIndex("block") + "WHERE wid = ? AND x = ? AND z = ? AND y = ? " + actionFilter + " AND time >= ? LIMIT 0, 1", worldId, x, z, y, checkTime);
+            ResultSet results = query.executeQuery(statement);
             while (results.next()) {
                 count = results.getInt("count");
             }
             results.close();
             int totalPages = (int) Math.ceil(count / (limit + 0.0));
 
-            query = "SELECT time,user,action,type,data,rolled_back FROM " + ConfigHandler.prefix + "block " + WorldUtils.getWidIndex("block") + "WHERE wid = '" + worldId + "' AND x = '" + x + "' AND z = '" + z + "' AND y = '" + y + "' " + actionFilter + " AND time >= '" + checkTime + "' ORDER BY rowid DESC LIMIT " + page_start + ", " + limit + "";
-            results = statement.executeQuery(query);
+            query = new QueryBuilder("SELECT time,user,action,type,data,rolled_back FROM " + ConfigHandler.prefix + "block " + WorldUtils.getWidIndex("block") + "WHERE wid = ? AND x = ? AND z = ? AND y = ? " + actionFilter + " AND time >= ? ORDER BY rowid DESC LIMIT ?, ?", worldId, x, z, y, checkTime, page_start, limit);
+            results = query.executeQuery(statement);
 
             StringBuilder resultTextBuilder = new StringBuilder();
 
@@ -11,6 +11,8 @@ import org.bukkit.Material;
 import org.bukkit.command.CommandSender;
 
 import net.coreprotect.config.ConfigHandler;
+import net.coreprotect.database.QueryBuilder;
+import net.coreprotect.database.statement.MetaBlobStatement;
 import net.coreprotect.database.statement.UserStatement;
 import net.coreprotect.language.Phrase;
 import net.coreprotect.language.Selector;
@@ -60,11 +62,11 @@ public class ChestTransactionLookup {
             int rowMax = page * limit;
             int pageStart = rowMax - limit;
 
-            String query = "SELECT COUNT(*) as count from " + ConfigHandler.prefix + "container " + WorldUtils.getWidIndex("container") + "WHERE wid = '" + worldId + "' AND (x = '" + x + "' OR x = '" + x2 + "') AND (z = '" + z + "' OR z = '" + z2 + "') AND y = '" + y + "' LIMIT 0, 1";
+            QueryBuilder query = new QueryBuilder("SELECT COUNT(*) as count from " + ConfigHandler.prefix + "container " + WorldUtils.getWidIndex("container") + "WHERE wid = ? AND (x = ? OR x = ?) AND (z = ? OR z = ?) AND y = ? LIMIT 0, 1", worldId, x, x2, z, z2, y);
             if (exact) {
-                query = "SELECT COUNT(*) as count from " + ConfigHandler.prefix + "container " + WorldUtils.getWidIndex("container") + "WHERE wid = '" + worldId + "' AND (x = '" + l.getBlockX() + "') AND (z = '" + l.getBlockZ() + "') AND y = '" + y + "' LIMIT 0, 1";
+                query = new QueryBuilder("SELECT COUNT(*) as count from " + ConfigHandler.prefix + "container " + WorldUtils.getWidIndex("container") + "WHERE wid = ? AND (x = ?) AND (z = ?) AND y = ? LIMIT 0, 1", worldId, l.getBlockX(), l.getBlockZ(), y);
             }
-            ResultSet results = statement.executeQuery(query);
+            ResultSet results = query.executeQuery(statement);
 
             while (results.next()) {
                 count = results.getInt("count");
@@ -73,11 +75,11 @@ public class ChestTransactionLookup {
 
             int totalPages = (int) Math.ceil(count / (limit + 0.0));
 
-            query = "SELECT time,user,action,type,data,amount,metadata,rolled_back FROM " + ConfigHandler.prefix + "container " + WorldUtils.getWidIndex("container") + "WHERE wid = '" + worldId + "' AND (x = '" + x + "' OR x = '" + x2 + "') AND (z = '" + z + "' OR z = '" + z2 + "') AND y = '" + y + "' ORDER BY rowid DESC LIMIT " + pageStart + ", " + limit + "";
+            query = new QueryBuilder("SELECT time,user,action,type,data,amount,metadata,rolled_back FROM " + ConfigHandler.prefix + "container " + WorldUtils.getWidIndex("container") + "WHERE wid = ? AND (x = ? OR x = ?) AND (z = ? OR z = ?) AND y = ? ORDER BY rowid DESC LIMIT ?, ?", worldId, x, x2, z, z2, y, pageStart, limit);
             if (exact) {
-                query = "SELECT time,user,action,type,data,amount,metadata,rolled_back FROM " + ConfigHandler.prefix + "container " + WorldUtils.getWidIndex("container") + "WHERE wid = '" + worldId + "' AND (x = '" + l.getBlockX() + "') AND (z = '" + l.getBlockZ() + "') AND y = '" + y + "' ORDER BY rowid DESC LIMIT " + pageStart + ", " + limit + "";
+                query = new QueryBuilder("SELECT time,user,action,type,data,amount,metadata,rolled_back FROM " + ConfigHandler.prefix + "container " + WorldUtils.getWidIndex("container") + "WHERE wid = ? AND (x = ?) AND (z = ?) AND y = ? ORDER BY rowid DESC LIMIT ?, ?", worldId, l.getBlockX(), l.getBlockZ(), y, pageStart, limit);
             }
-            results = statement.executeQuery(query);
+            results = query.executeQuery(statement);
             while (results.next()) {
                 int resultUserId = results.getInt("user");
                 int resultAction = results.getInt("action");
@@ -86,7 +88,7 @@ public class ChestTransactionLookup {
                 long resultTime = results.getLong("time");
                 int resultAmount = results.getInt("amount");
                 int resultRolledBack = results.getInt("rolled_back");
-                byte[] resultMetadata = results.getBytes("metadata");
+                byte[] resultMetadata = MetaBlobStatement.resolve(statement.getConnection(), results.getBytes("metadata"));
                 String tooltip = ItemUtils.getEnchantments(resultMetadata, resultType, resultAmount);
 
                 if (ConfigHandler.playerIdCacheReversed.get(resultUserId) == null) {
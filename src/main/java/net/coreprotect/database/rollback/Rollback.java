@@ -1,15 +1,22 @@
 package net.coreprotect.database.rollback;
 
 import java.sql.Statement;
+import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.BooleanSupplier;
 
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
@@ -18,7 +25,6 @@ import org.bukkit.World;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
-import net.coreprotect.CoreProtect;
 import net.coreprotect.bukkit.BukkitAdapter;
 import net.coreprotect.config.Config;
 import net.coreprotect.config.ConfigHandler;
@@ -26,11 +32,11 @@ import net.coreprotect.consumer.Queue;
 import net.coreprotect.consumer.process.Process;
 import net.coreprotect.database.Lookup;
 import net.coreprotect.database.LookupConverter;
+import net.coreprotect.database.LookupCursor;
 import net.coreprotect.database.statement.UserStatement;
 import net.coreprotect.language.Phrase;
 import net.coreprotect.language.Selector;
 import net.coreprotect.model.BlockGroup;
-import net.coreprotect.thread.Scheduler;
 import net.coreprotect.utility.Chat;
 import net.coreprotect.utility.Color;
 import net.coreprotect.utility.DatabaseUtils;
@@ -38,21 +44,14 @@ import net.coreprotect.utility.WorldUtils;
 
 public class Rollback extends RollbackUtil {
 
+    // milliseconds to wait for a chunk before aborting
+    private static final int ROLLBACK_TIMEOUT = 300000;
+
     public static List<String[]> performRollbackRestore(Statement statement, CommandSender user, List<String> checkUuids, List<String> checkUsers, String timeString, List<Object> restrictList, Map<Object, Boolean> excludeList, List<String> excludeUserList, List<Integer> actionList, Location location, Integer[] radius, long startTime, long endTime, boolean restrictWorld, boolean lookup, boolean verbose, final int rollbackType, final int preview) {
         List<String[]> list = new ArrayList<>();
 
         try {
             long timeStart = System.currentTimeMillis();
-            List<Object[]> lookupList = new ArrayList<>();
-
-            if (!actionList.contains(4) && !actionList.contains(5) && !checkUsers.contains("#container")) {
-                lookupList = Lookup.performLookupRaw(statement, user, checkUuids, checkUsers, restrictList, excludeList, excludeUserList, actionList, location, radius, null, startTime, endTime, -1, -1, restrictWorld, lookup);
-            }
-
-            if (lookupList == null) {
-                return null;
-            }
-
             boolean ROLLBACK_ITEMS = false;
             List<Object> itemRestrictList = new ArrayList<>(restrictList);
             Map<Object, Boolean> itemExcludeList = new HashMap<>(excludeList);
@@ -72,164 +71,187 @@ public class Rollback extends RollbackUtil {
                 }
             }
 
-            List<Object[]> itemList = new ArrayList<>();
-            if (Config.getGlobal().ROLLBACK_ITEMS && !checkUsers.contains("#container") && (actionList.size() == 0 || actionList.contains(4) || ROLLBACK_ITEMS) && preview == 0) {
-                List<Integer> itemActionList = new ArrayList<>(actionList);
+            boolean blockLookup = !actionList.contains(4) && !actionList.contains(5) && !checkUsers.contains("#container");
+            boolean itemLookup = Config.getGlobal().ROLLBACK_ITEMS && !checkUsers.contains("#container") && (actionList.size() == 0 || actionList.contains(4) || ROLLBACK_ITEMS) && preview == 0;
+            List<Integer> itemActionList = new ArrayList<>(actionList);
+            if (!itemActionList.contains(4)) {
+                itemActionList.add(4);
+            }
+            itemExcludeList.entrySet().removeIf(entry -> Boolean.TRUE.equals(entry.getValue()));
 
-                if (!itemActionList.contains(4)) {
-                    itemActionList.add(4);
-                }
+            boolean inventoryRollback = actionList.contains(11);
+            String userString = "#server";
+            if (user != null) {
+                userString = user.getName();
+            }
 
-                itemExcludeList.entrySet().removeIf(entry -> Boolean.TRUE.equals(entry.getValue()));
-                itemList = Lookup.performLookupRaw(statement, user, checkUuids, checkUsers, itemRestrictList, itemExcludeList, excludeUserList, itemActionList, location, radius, null, startTime, endTime, -1, -1, restrictWorld, lookup);
+            final String finalUserString = userString;
+            final Player finalUser = user instanceof Player ? (Player) user : null;
+            List<Object[]> lookupList = new ArrayList<>();
+            Iterator<CompletableFuture<Boolean>> chunkIterator = null;
+            RollbackStream stream = null;
+            RollbackPrefetch prefetch = null;
+            int chunkTotal = -1;
+            if (Config.getGlobal().ROLLBACK_PREFETCH_CHUNKS > 0 && !inventoryRollback) {
+                prefetch = new RollbackPrefetch(Config.getGlobal().ROLLBACK_PREFETCH_CHUNKS);
             }
 
-            LinkedHashSet<Integer> worldList = new LinkedHashSet<>();
-            TreeMap<Long, Integer> chunkList = new TreeMap<>();
-            HashMap<Integer, HashMap<Long, ArrayList<Object[]>>> dataList = new HashMap<>();
-            HashMap<Integer, HashMap<Long, ArrayList<Object[]>>> itemDataList = new HashMap<>();
-            boolean inventoryRollback = actionList.contains(11);
+            if (!inventoryRollback && LookupCursor.isSupported()) {
+                // read and apply the rollback chunk by chunk. The rows are only kept for API callers, who are returned them.
+                LookupCursor blockCursor = null;
+                LookupCursor itemCursor = null;
+                if (blockLookup) {
+                    blockCursor = Lookup.openRollbackCursor(statement, user, checkUuids, checkUsers, restrictList, excludeList, excludeUserList, actionList, location, radius, startTime, endTime, restrictWorld);
+                    if (blockCursor == null) {
+                        return null;
+                    }
+                }
+                if (itemLookup) {
+                    itemCursor = Lookup.openRollbackCursor(statement, user, checkUuids, checkUsers, itemRestrictList, itemExcludeList, excludeUserList, itemActionList, location, radius, startTime, endTime, restrictWorld);
+                    if (itemCursor == null) {
+                        if (blockCursor != null) {
+                            blockCursor.close();
+                        }
+                        return null;
+                    }
+                }
 
-            int worldId = -1;
-            int worldMin = 0;
-            int worldMax = 2032;
+                stream = new RollbackStream(statement, blockCursor, itemCursor, location, rollbackType, preview, finalUserString, finalUser, prefetch, user == null ? lookupList : null);
+                chunkIterator = stream;
+            }
+            else {
+                if (blockLookup) {
+                    lookupList = Lookup.performLookupRaw(statement, user, checkUuids, checkUsers, restrictList, excludeList, excludeUserList, actionList, location, radius, null, startTime, endTime, -1, -1, restrictWorld, lookup);
+                }
 
-            int listC = 0;
-            while (listC < 2) {
-                List<Object[]> scanList = lookupList;
+                if (lookupList == null) {
+                    return null;
+                }
 
-                if (listC == 1) {
-                    scanList = itemList;
+                List<Object[]> itemList = new ArrayList<>();
+                if (itemLookup) {
+                    itemList = Lookup.performLookupRaw(statement, user, checkUuids, checkUsers, itemRestrictList, itemExcludeList, excludeUserList, itemActionList, location, radius, null, startTime, endTime, -1, -1, restrictWorld, lookup);
                 }
 
-                for (Object[] result : scanList) {
-                    int userId = (Integer) result[2];
-                    int rowX = (Integer) result[3];
-                    int rowY = (Integer) result[4];
-                    int rowZ = (Integer) result[5];
-                    int rowWorldId = (Integer) result[10];
-                    int chunkX = rowX >> 4;
-                    int chunkZ = rowZ >> 4;
-                    long chunkKey = inventoryRollback ? 0 : (chunkX & 0xffffffffL | (chunkZ & 0xffffffffL) << 32);
-
-                    if (rowWorldId != worldId) {
-                        String world = WorldUtils.getWorldName(rowWorldId);
-                        World bukkitWorld = Bukkit.getServer().getWorld(world);
-                        if (bukkitWorld != null) {
-                            worldMin = BukkitAdapter.ADAPTER.getMinHeight(bukkitWorld);
-                            worldMax = bukkitWorld.getMaxHeight();
-                        }
+                LinkedHashSet<Integer> worldList = new LinkedHashSet<>();
+                TreeMap<Long, Integer> chunkList = new TreeMap<>();
+                HashMap<Integer, HashMap<Long, ArrayList<Object[]>>> dataList = new HashMap<>();
+                HashMap<Integer, HashMap<Long, ArrayList<Object[]>>> itemDataList = new HashMap<>();
+
+                int worldId = -1;
+                int worldMin = 0;
+                int worldMax = 2032;
+
+                int listC = 0;
+                while (listC < 2) {
+                    List<Object[]> scanList = lookupList;
+
+                    if (listC == 1) {
+                        scanList = itemList;
                     }
 
-                    if (chunkList.get(chunkKey) == null) {
-                        int distance = 0;
-                        if (location != null) {
-                            distance = (int) Math.sqrt(Math.pow((Integer) result[3] - location.getBlockX(), 2) + Math.pow((Integer) result[5] - location.getBlockZ(), 2));
+                    for (Object[] result : scanList) {
+                        int userId = (Integer) result[2];
+                        int rowX = (Integer) result[3];
+                        int rowY = (Integer) result[4];
+                        int rowZ = (Integer) result[5];
+                        int rowWorldId = (Integer) result[10];
+                        int chunkX = rowX >> 4;
+                        int chunkZ = rowZ >> 4;
+                        long chunkKey = inventoryRollback ? 0 : (chunkX & 0xffffffffL | (chunkZ & 0xffffffffL) << 32);
+
+                        if (rowWorldId != worldId) {
+                            String world = WorldUtils.getWorldName(rowWorldId);
+                            World bukkitWorld = Bukkit.getServer().getWorld(world);
+                            if (bukkitWorld != null) {
+                                worldMin = BukkitAdapter.ADAPTER.getMinHeight(bukkitWorld);
+                                worldMax = bukkitWorld.getMaxHeight();
+                            }
                         }
 
-                        chunkList.put(chunkKey, distance);
-                    }
+                        if (chunkList.get(chunkKey) == null) {
+                            int distance = 0;
+                            if (location != null) {
+                                distance = (int) Math.sqrt(Math.pow((Integer) result[3] - location.getBlockX(), 2) + Math.pow((Integer) result[5] - location.getBlockZ(), 2));
+                            }
 
-                    if (ConfigHandler.playerIdCacheReversed.get(userId) == null) {
-                        UserStatement.loadName(statement.getConnection(), userId);
-                    }
+                            chunkList.put(chunkKey, distance);
+                        }
 
-                    HashMap<Integer, HashMap<Long, ArrayList<Object[]>>> modifyList = dataList;
-                    if (listC == 1) {
-                        modifyList = itemDataList;
-                    }
+                        if (ConfigHandler.playerIdCacheReversed.get(userId) == null) {
+                            UserStatement.loadName(statement.getConnection(), userId);
+                        }
 
-                    if (modifyList.get(rowWorldId) == null) {
-                        dataList.put(rowWorldId, new HashMap<>());
-                        itemDataList.put(rowWorldId, new HashMap<>());
-                        worldList.add(rowWorldId);
-                    }
+                        HashMap<Integer, HashMap<Long, ArrayList<Object[]>>> modifyList = dataList;
+                        if (listC == 1) {
+                            modifyList = itemDataList;
+                        }
+
+                        if (modifyList.get(rowWorldId) == null) {
+                            dataList.put(rowWorldId, new HashMap<>());
+                            itemDataList.put(rowWorldId, new HashMap<>());
+                            worldList.add(rowWorldId);
+                        }
 
-                    if (modifyList.get(rowWorldId).get(chunkKey) == null) {
-                        dataList.get(rowWorldId).put(chunkKey, new ArrayList<>());
-                        itemDataList.get(rowWorldId).put(chunkKey, new ArrayList<>());
+                        if (modifyList.get(rowWorldId).get(chunkKey) == null) {
+                            dataList.get(rowWorldId).put(chunkKey, new ArrayList<>());
+                            itemDataList.get(rowWorldId).put(chunkKey, new ArrayList<>());
+                        }
+
+                        modifyList.get(rowWorldId).get(chunkKey).add(result);
                     }
 
-                    modifyList.get(rowWorldId).get(chunkKey).add(result);
+                    listC++;
                 }
 
-                listC++;
-            }
-
-            if (rollbackType == 1) { // Restore
-                Iterator<Map.Entry<Integer, HashMap<Long, ArrayList<Object[]>>>> dlIterator = dataList.entrySet().iterator();
-                while (dlIterator.hasNext()) {
-                    for (ArrayList<Object[]> map : dlIterator.next().getValue().values()) {
-                        Collections.reverse(map);
+                if (rollbackType == 1) { // Restore
+                    Iterator<Map.Entry<Integer, HashMap<Long, ArrayList<Object[]>>>> dlIterator = dataList.entrySet().iterator();
+                    while (dlIterator.hasNext()) {
+                        for (ArrayList<Object[]> map : dlIterator.next().getValue().values()) {
+                            Collections.reverse(map);
+                        }
                     }
-                }
 
-                dlIterator = itemDataList.entrySet().iterator();
-                while (dlIterator.hasNext()) {
-                    for (ArrayList<Object[]> map : dlIterator.next().getValue().values()) {
-                        Collections.reverse(map);
+                    dlIterator = itemDataList.entrySet().iterator();
+                    while (dlIterator.hasNext()) {
+                        for (ArrayList<Object[]> map : dlIterator.next().getValue().values()) {
+                            Collections.reverse(map);
+                        }
                     }
                 }
-            }
 
-            Integer chunkCount = 0;
-            String userString = "#server";
-            if (user != null) {
-                userString = user.getName();
-                if (verbose && preview == 0 && !actionList.contains(11)) {
+                if (verbose && user != null && preview == 0 && !inventoryRollback) {
                     Integer chunks = chunkList.size();
                     Chat.sendMessage(user, Color.DARK_AQUA + "CoreProtect " + Color.WHITE + "- " + Phrase.build(Phrase.ROLLBACK_CHUNKS_FOUND, chunks.toString(), (chunks == 1 ? Selector.FIRST : Selector.SECOND)));
                 }
-            }
 
-            // Perform update transaction(s) in consumer
-            if (preview == 0) {
-                if (actionList.contains(11)) {
-                    List<Object[]> blockList = new ArrayList<>();
-                    List<Object[]> inventoryList = new ArrayList<>();
-                    List<Object[]> containerList = new ArrayList<>();
-                    for (Object[] data : itemList) {
-                        int table = (Integer) data[14];
-                        if (table == 2) { // item
-                            inventoryList.add(data);
-                        }
-                        else if (table == 1) { // container
-                            containerList.add(data);
-                        }
-                        else { // block
-                            blockList.add(data);
+                // Perform update transaction(s) in consumer
+                if (preview == 0) {
+                    if (inventoryRollback) {
+                        List<Object[]> blockList = new ArrayList<>();
+                        List<Object[]> inventoryList = new ArrayList<>();
+                        List<Object[]> containerList = new ArrayList<>();
+                        for (Object[] data : itemList) {
+                            int table = (Integer) data[14];
+                            if (table == 2) { // item
+                                inventoryList.add(data);
+                            }
+                            else if (table == 1) { // container
+                                containerList.add(data);
+                            }
+                            else { // block
+                                blockList.add(data);
+                            }
                         }
+                        Queue.queueRollbackUpdate(userString, location, inventoryList, Process.INVENTORY_ROLLBACK_UPDATE, rollbackType);
+                        Queue.queueRollbackUpdate(userString, location, containerList, Process.INVENTORY_CONTAINER_ROLLBACK_UPDATE, rollbackType);
+                        Queue.queueRollbackUpdate(userString, location, blockList, Process.BLOCK_INVENTORY_ROLLBACK_UPDATE, rollbackType);
+                    }
+                    else {
+                        Queue.queueRollbackUpdate(userString, location, lookupList, Process.ROLLBACK_UPDATE, rollbackType);
+                        Queue.queueRollbackUpdate(userString, location, itemList, Process.CONTAINER_ROLLBACK_UPDATE, rollbackType);
                     }
-                    Queue.queueRollbackUpdate(userString, location, inventoryList, Process.INVENTORY_ROLLBACK_UPDATE, rollbackType);
-                    Queue.queueRollbackUpdate(userString, location, containerList, Process.INVENTORY_CONTAINER_ROLLBACK_UPDATE, rollbackType);
-                    Queue.queueRollbackUpdate(userString, location, blockList, Process.BLOCK_INVENTORY_ROLLBACK_UPDATE, rollbackType);
-                }
-                else {
-                    Queue.queueRollbackUpdate(userString, location, lookupList, Process.ROLLBACK_UPDATE, rollbackType);
-                    Queue.queueRollbackUpdate(userString, location, itemList, Process.CONTAINER_ROLLBACK_UPDATE, rollbackType);
                 }
-            }
-
-            ConfigHandler.rollbackHash.put(userString, new int[] { 0, 0, 0, 0, 0 });
-
-            final String finalUserString = userString;
-            for (Entry<Long, Integer> entry : DatabaseUtils.entriesSortedByValues(chunkList)) {
-                chunkCount++;
-
-                int itemCount = 0;
-                int blockCount = 0;
-                int entityCount = 0;
-                int scannedWorldData = 0;
-                int[] rollbackHashData = ConfigHandler.rollbackHash.get(finalUserString);
-                itemCount = rollbackHashData[0];
-                blockCount = rollbackHashData[1];
-                entityCount = rollbackHashData[2];
-                scannedWorldData = rollbackHashData[4];
-
-                long chunkKey = entry.getKey();
-                final int finalChunkX = (int) chunkKey;
-                final int finalChunkZ = (int) (chunkKey >> 32);
-                final CommandSender finalUser = user;
 
                 HashMap<Integer, World> worldMap = new HashMap<>();
                 for (int rollbackWorldId : worldList) {
@@ -246,77 +268,97 @@ public class Rollback extends RollbackUtil {
                     worldMap.put(rollbackWorldId, bukkitRollbackWorld);
                 }
 
-                ConfigHandler.rollbackHash.put(finalUserString, new int[] { itemCount, blockCount, entityCount, 0, scannedWorldData });
-                for (Entry<Integer, World> rollbackWorlds : worldMap.entrySet()) {
-                    Integer rollbackWorldId = rollbackWorlds.getKey();
-                    World bukkitRollbackWorld = rollbackWorlds.getValue();
-                    Location chunkLocation = new Location(bukkitRollbackWorld, (finalChunkX << 4), 0, (finalChunkZ << 4));
-                    final HashMap<Long, ArrayList<Object[]>> finalBlockList = dataList.get(rollbackWorldId);
-                    final HashMap<Long, ArrayList<Object[]>> finalItemList = itemDataList.get(rollbackWorldId);
-
-                    Scheduler.scheduleSyncDelayedTask(CoreProtect.getInstance(), () -> {
-                        // Process this chunk using our new RollbackProcessor class
-                        ArrayList<Object[]> blockData = finalBlockList != null ? finalBlockList.getOrDefault(chunkKey, new ArrayList<>()) : new ArrayList<>();
-                        ArrayList<Object[]> itemData = finalItemList != null ? finalItemList.getOrDefault(chunkKey, new ArrayList<>()) : new ArrayList<>();
-                        RollbackProcessor.processChunk(finalChunkX, finalChunkZ, chunkKey, blockData, itemData, rollbackType, preview, finalUserString, finalUser instanceof Player ? (Player) finalUser : null, bukkitRollbackWorld, inventoryRollback);
-                    }, chunkLocation, 0);
-                }
-
-                rollbackHashData = ConfigHandler.rollbackHash.get(finalUserString);
-                int next = rollbackHashData[3];
-                int scannedWorlds = rollbackHashData[4];
-                int sleepTime = 0;
-                int abort = 0;
-
-                while (next == 0 || scannedWorlds < worldMap.size()) {
-                    if (preview == 1) {
-                        // Not actually changing blocks, so less intensive.
-                        sleepTime = sleepTime + 1;
-                        Thread.sleep(1);
+                chunkTotal = chunkList.size();
+                Iterator<Entry<Long, Integer>> sortedChunks = DatabaseUtils.entriesSortedByValues(chunkList).iterator();
+                final RollbackPrefetch chunkPrefetch = prefetch;
+                chunkIterator = new Iterator<CompletableFuture<Boolean>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return sortedChunks.hasNext();
                     }
-                    else {
-                        sleepTime = sleepTime + 5;
-                        Thread.sleep(5);
+
+                    @Override
+                    public CompletableFuture<Boolean> next() {
+                        return submitChunk(sortedChunks.next().getKey(), worldMap, dataList, itemDataList, rollbackType, preview, finalUserString, finalUser, inventoryRollback, chunkPrefetch);
                     }
+                };
+            }
 
-                    rollbackHashData = ConfigHandler.rollbackHash.get(finalUserString);
-                    next = rollbackHashData[3];
-                    scannedWorlds = rollbackHashData[4];
+            ConfigHandler.rollbackHash.put(userString, new AtomicIntegerArray(6));
 
-                    if (sleepTime > 300000) {
-                        abort = 1;
-                        break;
+            // chunks are dispatched ahead, up to "rollback-chunks-in-flight", and applied within the tick budget
+            // of the rollback executor. On Folia, chunks in different regions are applied in parallel. When
+            // streaming, chunks are only read once there's room for them, which bounds the rows held in memory.
+            int maxPending = Math.max(1, Config.getGlobal().ROLLBACK_CHUNKS_IN_FLIGHT);
+            List<CompletableFuture<Boolean>> pending = new ArrayList<>();
+            Integer chunkCount = 0;
+            boolean abort = false;
+            try {
+                while (!abort && (chunkIterator.hasNext() || !pending.isEmpty())) {
+                    if (chunkIterator.hasNext() && pending.size() < maxPending) {
+                        pending.add(chunkIterator.next());
+                        continue;
                     }
-                }
 
-                if (abort == 1 || next == 2) {
-                    Chat.console(Phrase.build(Phrase.ROLLBACK_ABORTED));
-                    break;
-                }
+                    try {
+                        CompletableFuture.anyOf(pending.toArray(new CompletableFuture[0])).get(ROLLBACK_TIMEOUT, TimeUnit.MILLISECONDS);
+                    }
+                    catch (TimeoutException e) {
+                        abort = true;
+                    }
+
+                    Iterator<CompletableFuture<Boolean>> pendingIterator = pending.iterator();
+                    while (!abort && pendingIterator.hasNext()) {
+                        CompletableFuture<Boolean> future = pendingIterator.next();
+                        if (!future.isDone()) {
+                            continue;
+                        }
 
-                rollbackHashData = ConfigHandler.rollbackHash.get(finalUserString);
-                itemCount = rollbackHashData[0];
-                blockCount = rollbackHashData[1];
-                entityCount = rollbackHashData[2];
-                ConfigHandler.rollbackHash.put(finalUserString, new int[] { itemCount, blockCount, entityCount, 0, 0 });
+                        pendingIterator.remove();
+                        if (!future.join()) {
+                            abort = true;
+                            break;
+                        }
 
-                if (verbose && user != null && preview == 0 && !actionList.contains(11)) {
-                    Integer chunks = chunkList.size();
-                    Chat.sendMessage(user, Color.DARK_AQUA + "CoreProtect " + Color.WHITE + "- " + Phrase.build(Phrase.ROLLBACK_CHUNKS_MODIFIED, chunkCount.toString(), chunks.toString(), (chunks == 1 ? Selector.FIRST : Selector.SECOND)));
+                        chunkCount++;
+                        if (verbose && user != null && preview == 0 && !inventoryRollback) {
+                            if (chunkTotal > -1) {
+                                Integer chunks = chunkTotal;
+                                Chat.sendMessage(user, Color.DARK_AQUA + "CoreProtect " + Color.WHITE + "- " + Phrase.build(Phrase.ROLLBACK_CHUNKS_MODIFIED, chunkCount.toString(), chunks.toString(), (chunks == 1 ? Selector.FIRST : Selector.SECOND)));
+                            }
+                            else {
+                                Chat.sendMessage(user, Color.DARK_AQUA + "CoreProtect " + Color.WHITE + "- " + Phrase.build(Phrase.ROLLBACK_CHUNKS_APPLIED, chunkCount.toString(), (chunkCount == 1 ? Selector.FIRST : Selector.SECOND)));
+                            }
+                        }
+                    }
+                }
+            }
+            finally {
+                if (stream != null) {
+                    stream.close();
                 }
             }
 
-            chunkList.clear();
-            dataList.clear();
-            itemDataList.clear();
+            if (abort) {
+                RollbackExecutor.cancel(pending);
+                Chat.console(Phrase.build(Phrase.ROLLBACK_ABORTED));
+            }
+            if (prefetch != null) {
+                prefetch.close();
+            }
 
-            int[] rollbackHashData = ConfigHandler.rollbackHash.get(finalUserString);
-            int itemCount = rollbackHashData[0];
-            int blockCount = rollbackHashData[1];
-            int entityCount = rollbackHashData[2];
+            AtomicIntegerArray rollbackHashData = ConfigHandler.rollbackHash.get(finalUserString);
+            int itemCount = rollbackHashData.get(0);
+            int blockCount = rollbackHashData.get(1);
+            int entityCount = rollbackHashData.get(2);
+            int skippedCount = rollbackHashData.get(5);
             long timeFinish = System.currentTimeMillis();
             double totalSeconds = (timeFinish - timeStart) / 1000.0;
 
+            if (verbose && user != null && preview == 0 && skippedCount > 0) {
+                Chat.sendMessage(user, Color.DARK_AQUA + "CoreProtect " + Color.WHITE + "- " + Phrase.build(Phrase.ROLLBACK_SKIPPED, NumberFormat.getInstance().format(skippedCount), (skippedCount == 1 ? Selector.FIRST : Selector.SECOND)));
+            }
+
             if (user != null) {
                 RollbackComplete.output(user, location, checkUsers, restrictList, excludeList, excludeUserList, actionList, timeString, chunkCount, totalSeconds, itemCount, blockCount, entityCount, rollbackType, radius, verbose, restrictWorld, preview);
             }
@@ -331,4 +373,75 @@ public class Rollback extends RollbackUtil {
         return null;
     }
 
+    /**
+     * Queues a chunk in each world holding rows for it.
+     */
+    private static CompletableFuture<Boolean> submitChunk(long chunkKey, Map<Integer, World> worldMap, Map<Integer, HashMap<Long, ArrayList<Object[]>>> dataList, Map<Integer, HashMap<Long, ArrayList<Object[]>>> itemDataList, int rollbackType, int preview, String userString, Player user, boolean inventoryRollback, RollbackPrefetch prefetch) {
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (Entry<Integer, World> rollbackWorlds : worldMap.entrySet()) {
+            World bukkitRollbackWorld = rollbackWorlds.getValue();
+            HashMap<Long, ArrayList<Object[]>> blockList = dataList.get(rollbackWorlds.getKey());
+            HashMap<Long, ArrayList<Object[]>> itemList = itemDataList.get(rollbackWorlds.getKey());
+            ArrayList<Object[]> blockData = blockList != null ? blockList.getOrDefault(chunkKey, new ArrayList<>()) : new ArrayList<>();
+            ArrayList<Object[]> itemData = itemList != null ? itemList.getOrDefault(chunkKey, new ArrayList<>()) : new ArrayList<>();
+            if (blockData.isEmpty() && itemData.isEmpty()) {
+                continue;
+            }
+
+            futures.add(submitRows(bukkitRollbackWorld, chunkKey, blockData, itemData, rollbackType, preview, userString, user, inventoryRollback, prefetch));
+        }
+
+        CompletableFuture<Boolean> chunkFuture = CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(result -> {
+            for (CompletableFuture<Boolean> future : futures) {
+                if (!future.join()) {
+                    return false;
+                }
+            }
+            return true;
+        });
+
+        // a failed or cancelled chunk stops the chunk in the other worlds
+        for (CompletableFuture<Boolean> future : futures) {
+            future.thenAccept(result -> {
+                if (!result) {
+                    RollbackExecutor.cancel(futures);
+                    chunkFuture.complete(false);
+                }
+            });
+        }
+        chunkFuture.thenAccept(result -> {
+            if (!result) {
+                RollbackExecutor.cancel(futures);
+            }
+        });
+
+        return chunkFuture;
+    }
+
+    /**
+     * Queues the rows of a chunk in a single world. Block rows are applied in slices, and the item
+     * rows are applied with the last slice. Previews are applied in a single step, as they're only
+     * sent to the player and later slices wouldn't see the blocks changed by earlier ones. If prefetch
+     * is given, the rows are only queued once the chunk has been loaded.
+     */
+    static CompletableFuture<Boolean> submitRows(World bukkitRollbackWorld, long chunkKey, ArrayList<Object[]> blockData, ArrayList<Object[]> itemData, int rollbackType, int preview, String userString, Player user, boolean inventoryRollback, RollbackPrefetch prefetch) {
+        final int chunkX = (int) chunkKey;
+        final int chunkZ = (int) (chunkKey >> 32);
+        Map<Object[], List<Object[]>> history = new IdentityHashMap<>();
+        ArrayList<Object[]> collapsedData = RollbackCollapse.collapse(blockData, history);
+        List<ArrayList<Object[]>> slices = preview > 0 ? Collections.singletonList(collapsedData) : RollbackExecutor.split(collapsedData);
+        List<BooleanSupplier> steps = new ArrayList<>();
+        for (int i = 0; i < slices.size(); i++) {
+            ArrayList<Object[]> slice = slices.get(i);
+            ArrayList<Object[]> sliceItems = i == slices.size() - 1 ? itemData : new ArrayList<>();
+            steps.add(() -> RollbackProcessor.processChunk(chunkX, chunkZ, chunkKey, slice, sliceItems, rollbackType, preview, userString, user, bukkitRollbackWorld, inventoryRollback, history));
+        }
+
+        Location chunkLocation = new Location(bukkitRollbackWorld, (chunkX << 4), 0, (chunkZ << 4));
+        if (prefetch != null) {
+            return prefetch.submit(chunkLocation, steps);
+        }
+
+        return RollbackExecutor.submit(chunkLocation, steps);
+    }
 }
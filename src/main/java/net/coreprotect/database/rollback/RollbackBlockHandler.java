@@ -3,6 +3,7 @@ package net.coreprotect.database.rollback;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import org.bukkit.DyeColor;
 import org.bukkit.Location;
@@ -499,14 +500,10 @@ public class RollbackBlockHandler extends Queue {
      *            The amount to increment the block count by
      */
     protected static void updateBlockCount(String userString, int increment) {
-        int[] rollbackHashData = ConfigHandler.rollbackHash.get(userString);
-        int itemCount = rollbackHashData[0];
-        int blockCount = rollbackHashData[1];
-        int entityCount = rollbackHashData[2];
-        int scannedWorlds = rollbackHashData[4];
-
-        blockCount += increment;
-        ConfigHandler.rollbackHash.put(userString, new int[] { itemCount, blockCount, entityCount, 0, scannedWorlds });
+        AtomicIntegerArray rollbackHashData = ConfigHandler.rollbackHash.get(userString);
+        if (rollbackHashData != null && increment != 0) {
+            rollbackHashData.addAndGet(1, increment);
+        }
     }
 
     /**
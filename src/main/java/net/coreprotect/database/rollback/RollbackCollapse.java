@@ -0,0 +1,170 @@
+package net.coreprotect.database.rollback;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.data.Bisected;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.Waterlogged;
+import org.bukkit.block.data.type.Bed;
+import org.bukkit.block.data.type.Chest;
+import org.bukkit.block.data.type.TechnicalPiston;
+
+import net.coreprotect.bukkit.BukkitAdapter;
+import net.coreprotect.config.ConfigHandler;
+import net.coreprotect.model.BlockGroup;
+import net.coreprotect.utility.BlockUtils;
+import net.coreprotect.utility.MaterialUtils;
+
+/**
+ * Collapses the history of each block before a chunk is rolled back or restored.
+ *
+ * When a block was changed several times, only the last change applied decides its final state. Earlier
+ * changes that only set a plain block (no containers, signs, multi-block structures, fluids, entities or
+ * metadata) are moved out of the chunk's rows and attached to that last change. When the last change is
+ * applied, they're dropped if the block's current state is plain as well, as replaying them would only
+ * overwrite the same pending change. Otherwise they're replayed right before it, in their original order.
+ *
+ * Rows with side effects are never collapsed, and the rolled_back flags are updated by the consumer
+ * from the full lookup, so neither depends on the rows applied here.
+ */
+public class RollbackCollapse {
+
+    private static final Set<Material> SPECIAL_TYPES = new HashSet<>(Arrays.asList(Material.WATER, Material.LAVA, Material.SNOW, Material.TNT, Material.NETHER_PORTAL, Material.MOVING_PISTON, Material.SPAWNER, Material.PAINTING, Material.ARMOR_STAND, Material.END_CRYSTAL, Material.IRON_DOOR));
+    private static final Map<Material, Boolean> PLAIN_TYPES = new ConcurrentHashMap<>();
+
+    private RollbackCollapse() {
+        throw new IllegalStateException("Database class");
+    }
+
+    private static boolean checkPlain(Material type) {
+        if (!type.isBlock() || SPECIAL_TYPES.contains(type) || BlockGroup.CONTAINERS.contains(type) || BlockGroup.UPDATE_STATE.contains(type) || BlockGroup.DOORS.contains(type) || BukkitAdapter.ADAPTER.isItemFrame(type) || BukkitAdapter.ADAPTER.isSign(type)) {
+            return false;
+        }
+
+        String name = type.name();
+        if (name.endsWith("_BANNER") || name.endsWith("_BED") || name.endsWith("_HEAD") || name.endsWith("_SKULL") || name.endsWith("SHULKER_BOX") || name.endsWith("COMMAND_BLOCK") || name.contains("CANDLE")) {
+            return false;
+        }
+
+        BlockData blockData = BlockUtils.createBlockData(type);
+        return blockData != null && !(blockData instanceof Waterlogged) && !(blockData instanceof Bisected) && !(blockData instanceof Bed) && !(blockData instanceof Chest) && !(blockData instanceof TechnicalPiston);
+    }
+
+    /**
+     * Returns true if setting or replacing a block of this type has no effect beyond the block itself.
+     */
+    public static boolean isPlain(Material type) {
+        if (type == null) {
+            return false;
+        }
+
+        return PLAIN_TYPES.computeIfAbsent(type, RollbackCollapse::checkPlain);
+    }
+
+    private static boolean isPlain(Object[] row) {
+        return row[12] == null && isPlain(MaterialUtils.getType((Integer) row[6]));
+    }
+
+    private static boolean isBlockChange(Object[] row) {
+        int rowAction = (Integer) row[8];
+        return rowAction == 0 || rowAction == 1;
+    }
+
+    private static long getKey(Object[] row) {
+        int rowX = (Integer) row[3];
+        int rowY = (Integer) row[4];
+        int rowZ = (Integer) row[5];
+        return ((rowX & 0x3FFFFFFL) << 38) | ((rowZ & 0x3FFFFFFL) << 12) | (rowY & 0xFFFL);
+    }
+
+    /**
+     * Returns the rows of a chunk (in the order they're applied) without the changes superseded by a
+     * later change to the same block. The superseded rows are added to the history of the row that
+     * supersedes them.
+     */
+    public static ArrayList<Object[]> collapse(List<Object[]> rows, Map<Object[], List<Object[]>> history) {
+        // walking backwards, the first row seen for a block is the one applied last
+        Map<Long, Object[]> lastRows = new HashMap<>();
+        Set<Long> replayed = new HashSet<>();
+        boolean[] superseded = new boolean[rows.size()];
+        for (int i = rows.size() - 1; i >= 0; i--) {
+            Object[] row = rows.get(i);
+            if (!isBlockChange(row)) {
+                continue;
+            }
+
+            long key = getKey(row);
+            Object[] lastRow = lastRows.get(key);
+            if (lastRow == null) {
+                lastRows.put(key, row);
+                continue;
+            }
+            if (replayed.contains(key)) {
+                continue;
+            }
+            if (!isPlain(row)) {
+                // this row and anything before it are applied in place
+                replayed.add(key);
+                continue;
+            }
+
+            history.computeIfAbsent(lastRow, value -> new ArrayList<>()).add(row);
+            superseded[i] = true;
+        }
+
+        if (history.isEmpty()) {
+            return rows instanceof ArrayList ? (ArrayList<Object[]>) rows : new ArrayList<>(rows);
+        }
+
+        for (List<Object[]> rowHistory : history.values()) {
+            Collections.reverse(rowHistory);
+        }
+
+        ArrayList<Object[]> result = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            if (!superseded[i]) {
+                result.add(rows.get(i));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns true if the superseded changes to a block can be skipped, given its pending or current state.
+     */
+    protected static boolean canSkip(Map<Block, BlockData> chunkChanges, Block block) {
+        BlockData pendingData = chunkChanges.get(block);
+        if (pendingData == null) {
+            pendingData = block.getBlockData();
+        }
+
+        return isPlain(pendingData.getMaterial());
+    }
+
+    /**
+     * Update the count of skipped block changes in the rollback hash
+     *
+     * @param userString
+     *            The username for this rollback
+     * @param increment
+     *            The amount to increment the skipped count by
+     */
+    public static void updateSkippedCount(String userString, int increment) {
+        AtomicIntegerArray rollbackHashData = ConfigHandler.rollbackHash.get(userString);
+        if (rollbackHashData != null && increment != 0) {
+            rollbackHashData.addAndGet(5, increment);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package net.coreprotect.database.rollback;
 
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.World;
@@ -168,17 +170,9 @@ public class RollbackEntityHandler {
      *            The amount to increment the entity count by
      */
     public static void updateEntityCount(String userString, int increment) {
-        int[] rollbackHashData = ConfigHandler.rollbackHash.get(userString);
-        if (rollbackHashData != null) {
-            int itemCount = rollbackHashData[0];
-            int blockCount = rollbackHashData[1];
-            int entityCount = rollbackHashData[2];
-            int next = rollbackHashData[3];
-            int scannedWorlds = rollbackHashData[4];
-
-            entityCount += increment;
-
-            ConfigHandler.rollbackHash.put(userString, new int[] { itemCount, blockCount, entityCount, next, scannedWorlds });
+        AtomicIntegerArray rollbackHashData = ConfigHandler.rollbackHash.get(userString);
+        if (rollbackHashData != null && increment != 0) {
+            rollbackHashData.addAndGet(2, increment);
         }
     }
 
@@ -0,0 +1,176 @@
+package net.coreprotect.database.rollback;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BooleanSupplier;
+
+import org.bukkit.Location;
+
+import net.coreprotect.CoreProtect;
+import net.coreprotect.config.Config;
+import net.coreprotect.config.ConfigHandler;
+import net.coreprotect.thread.Scheduler;
+
+/**
+ * Applies rollback work on the server thread, a few milliseconds at a time.
+ *
+ * Work is submitted as a list of steps (such as a slice of a chunk's block changes), and steps are run
+ * each tick until "rollback-tick-budget" milliseconds have been spent, carrying on in the next tick.
+ * Small chunks share a tick instead of taking one each, and large chunks are spread over several ticks.
+ * At least one step runs per tick, so a rollback always makes progress.
+ *
+ * Each submission returns a future that completes with true once all of its steps have run, or false
+ * as soon as a step fails. On Folia, work is queued per region section (Folia's default section size of
+ * 16x16 chunks), and each section's queue is run on the region thread owning it, with one budget per
+ * tick, so chunks in different regions are applied in parallel.
+ */
+public class RollbackExecutor {
+
+    // block rows applied per step, so a single chunk can't exceed the budget by much
+    public static final int STEP_SIZE = 500;
+
+    // chunks per region section side on Folia, as a shift
+    private static final int REGION_SHIFT = 4;
+
+    private static final Region QUEUE = new Region(null, null);
+    private static final Map<String, Region> REGIONS = new HashMap<>();
+    private static final Object LOCK = new Object();
+
+    private RollbackExecutor() {
+        throw new IllegalStateException("Database class");
+    }
+
+    private static class Region {
+        private final String key;
+        private final Location location;
+        private final Queue<Work> queue = new ConcurrentLinkedQueue<>();
+        private Object task = null;
+
+        private Region(String key, Location location) {
+            this.key = key;
+            this.location = location;
+        }
+    }
+
+    private static class Work {
+        private final Iterator<BooleanSupplier> steps;
+        private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        private Work(List<BooleanSupplier> steps) {
+            this.steps = steps.iterator();
+        }
+
+        /**
+         * Runs the next step. Returns false once the work is done.
+         */
+        private boolean step() {
+            if (future.isDone()) {
+                return false;
+            }
+
+            boolean result = false;
+            try {
+                result = steps.next().getAsBoolean();
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+            }
+
+            if (!result) {
+                future.complete(false);
+                return false;
+            }
+            if (!steps.hasNext()) {
+                future.complete(true);
+                return false;
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Splits rows into lists of at most STEP_SIZE rows. Always returns at least one list.
+     */
+    public static <T> List<ArrayList<T>> split(List<T> rows) {
+        List<ArrayList<T>> slices = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i += STEP_SIZE) {
+            slices.add(new ArrayList<>(rows.subList(i, Math.min(rows.size(), i + STEP_SIZE))));
+        }
+        if (slices.isEmpty()) {
+            slices.add(new ArrayList<>());
+        }
+
+        return slices;
+    }
+
+    /**
+     * Queues the steps, to be run in order on the thread owning the location.
+     */
+    public static CompletableFuture<Boolean> submit(Location location, List<BooleanSupplier> steps) {
+        Work work = new Work(steps);
+        if (steps.isEmpty()) {
+            work.future.complete(true);
+            return work.future;
+        }
+
+        synchronized (LOCK) {
+            Region region = QUEUE;
+            if (ConfigHandler.isFolia) {
+                String key = location.getWorld().getName() + ":" + (location.getBlockX() >> (4 + REGION_SHIFT)) + ":" + (location.getBlockZ() >> (4 + REGION_SHIFT));
+                region = REGIONS.computeIfAbsent(key, value -> new Region(value, location));
+            }
+
+            region.queue.add(work);
+            if (region.task == null) {
+                Region queue = region;
+                region.task = Scheduler.scheduleSyncRepeatingTask(CoreProtect.getInstance(), () -> runQueue(queue), region.location, ConfigHandler.isFolia ? 1 : 0, 1);
+            }
+        }
+
+        return work.future;
+    }
+
+    /**
+     * Stops any steps of the given work that haven't run yet.
+     */
+    public static void cancel(List<CompletableFuture<Boolean>> futures) {
+        for (CompletableFuture<Boolean> future : futures) {
+            future.complete(false);
+        }
+    }
+
+    private static long getDeadline() {
+        return System.nanoTime() + (Math.max(1, Config.getGlobal().ROLLBACK_TICK_BUDGET) * 1000000L);
+    }
+
+    private static void runQueue(Region region) {
+        long deadline = getDeadline();
+        do {
+            Work work = region.queue.peek();
+            if (work == null) {
+                synchronized (LOCK) {
+                    if (region.queue.isEmpty() && region.task != null) {
+                        Scheduler.cancelTask(region.task);
+                        region.task = null;
+                        if (region.key != null) {
+                            REGIONS.remove(region.key);
+                        }
+                    }
+                }
+                return;
+            }
+
+            if (!work.step()) {
+                region.queue.poll();
+            }
+        }
+        while (System.nanoTime() < deadline);
+    }
+}
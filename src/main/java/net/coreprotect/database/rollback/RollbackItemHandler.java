@@ -1,14 +1,14 @@
 package net.coreprotect.database.rollback;
 
-import java.io.ByteArrayInputStream;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import org.bukkit.Material;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.PlayerInventory;
-import org.bukkit.util.io.BukkitObjectInputStream;
 
 import net.coreprotect.config.ConfigHandler;
+import net.coreprotect.utility.serialize.MetadataCodec;
 
 public class RollbackItemHandler {
 
@@ -24,11 +24,7 @@ public class RollbackItemHandler {
     public static Object[] populateItemStack(ItemStack itemstack, byte[] metadata) {
         if (metadata != null) {
             try {
-                ByteArrayInputStream metaByteStream = new ByteArrayInputStream(metadata);
-                BukkitObjectInputStream metaObjectStream = new BukkitObjectInputStream(metaByteStream);
-                Object metaList = metaObjectStream.readObject();
-                metaObjectStream.close();
-                metaByteStream.close();
+                Object metaList = MetadataCodec.decode(metadata);
 
                 return RollbackUtil.populateItemStack(itemstack, metaList);
             }
@@ -100,14 +96,10 @@ public class RollbackItemHandler {
      *            The amount to increment the item count by
      */
     public static void updateItemCount(String userString, int increment) {
-        int[] rollbackHashData = ConfigHandler.rollbackHash.get(userString);
-        int itemCount = rollbackHashData[0];
-        int blockCount = rollbackHashData[1];
-        int entityCount = rollbackHashData[2];
-        int scannedWorlds = rollbackHashData[4];
-
-        itemCount += increment;
-        ConfigHandler.rollbackHash.put(userString, new int[] { itemCount, blockCount, entityCount, 0, scannedWorlds });
+        AtomicIntegerArray rollbackHashData = ConfigHandler.rollbackHash.get(userString);
+        if (rollbackHashData != null && increment != 0) {
+            rollbackHashData.addAndGet(0, increment);
+        }
     }
 
 }
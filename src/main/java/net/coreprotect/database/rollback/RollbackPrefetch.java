@@ -0,0 +1,143 @@
+package net.coreprotect.database.rollback;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import net.coreprotect.CoreProtect;
+import net.coreprotect.bukkit.BukkitAdapter;
+import net.coreprotect.config.ConfigHandler;
+import net.coreprotect.paper.PaperAdapter;
+import net.coreprotect.thread.Scheduler;
+
+/**
+ * Loads the chunks of a rollback before they're applied.
+ *
+ * Chunks are loaded in the order they're submitted, up to "rollback-prefetch-chunks" at a time, and
+ * each chunk is only handed to the rollback executor once it's loaded. On Paper, chunks are loaded
+ * asynchronously, so the server thread doesn't wait on the disk while applying a chunk. Elsewhere,
+ * each chunk is loaded in a task of its own, ahead of the steps applying it.
+ *
+ * A plugin ticket keeps each chunk loaded until it's been applied (Minecraft 1.14+).
+ */
+public class RollbackPrefetch {
+
+    private final int limit;
+    private final Deque<Request> waiting = new ArrayDeque<>();
+    private final List<Request> active = new ArrayList<>();
+
+    private class Request {
+        private final Location location;
+        private final World world;
+        private final int chunkX;
+        private final int chunkZ;
+        private final CompletableFuture<Boolean> loaded = new CompletableFuture<>();
+        private boolean ticket = false;
+        private boolean released = false;
+
+        private Request(Location location) {
+            this.location = location;
+            this.world = location.getWorld();
+            this.chunkX = location.getBlockX() >> 4;
+            this.chunkZ = location.getBlockZ() >> 4;
+        }
+    }
+
+    public RollbackPrefetch(int limit) {
+        this.limit = Math.max(1, limit);
+    }
+
+    /**
+     * Queues the steps once the chunk at the location is loaded. Returns a future that completes like
+     * one returned by {@link RollbackExecutor#submit(Location, List)}.
+     */
+    public CompletableFuture<Boolean> submit(Location location, List<BooleanSupplier> steps) {
+        Request request = new Request(location);
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        request.loaded.thenAccept(result -> {
+            if (future.isDone()) {
+                return;
+            }
+
+            // the chunk is loaded on first access if it couldn't be prefetched
+            CompletableFuture<Boolean> work = RollbackExecutor.submit(location, steps);
+            work.thenAccept(future::complete);
+            future.thenAccept(value -> {
+                if (!value) {
+                    work.complete(false);
+                }
+            });
+        });
+        future.whenComplete((result, e) -> release(request));
+
+        synchronized (this) {
+            if (active.size() < limit) {
+                start(request);
+            }
+            else {
+                waiting.add(request);
+            }
+        }
+
+        return future;
+    }
+
+    private void start(Request request) {
+        active.add(request);
+        Scheduler.runTask(CoreProtect.getInstance(), () -> {
+            try {
+                PaperAdapter.ADAPTER.getChunkAtAsync(request.world, request.chunkX, request.chunkZ).whenComplete((chunk, e) -> {
+                    synchronized (this) {
+                        if (chunk != null && !request.released && ConfigHandler.SERVER_VERSION >= BukkitAdapter.BUKKIT_V1_14) {
+                            chunk.addPluginChunkTicket(CoreProtect.getInstance());
+                            request.ticket = true;
+                        }
+                    }
+                    request.loaded.complete(chunk != null);
+                });
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+                request.loaded.complete(false);
+            }
+        }, request.location);
+    }
+
+    private synchronized void release(Request request) {
+        if (request.released) {
+            return;
+        }
+
+        request.released = true;
+        if (!active.remove(request)) {
+            waiting.remove(request);
+            return;
+        }
+
+        if (request.ticket) {
+            request.ticket = false;
+            Scheduler.runTask(CoreProtect.getInstance(), () -> request.world.removePluginChunkTicket(request.chunkX, request.chunkZ, CoreProtect.getInstance()), request.location);
+        }
+
+        Request next = waiting.poll();
+        if (next != null) {
+            start(next);
+        }
+    }
+
+    /**
+     * Releases the tickets of any chunks that haven't been applied, such as when a rollback is aborted.
+     */
+    public synchronized void close() {
+        waiting.clear();
+        for (Request request : new ArrayList<>(active)) {
+            release(request);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package net.coreprotect.database.rollback;
 
 import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -10,6 +11,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
@@ -68,9 +70,11 @@ public class RollbackProcessor {
      *            The user performing the rollback
      * @param bukkitRollbackWorld
      *            The world to process
+     * @param history
+     *            The superseded block changes of each row, as collapsed by RollbackCollapse (may be null)
      * @return True if successful, false if there was an error
      */
-    public static boolean processChunk(int finalChunkX, int finalChunkZ, long chunkKey, ArrayList<Object[]> blockList, ArrayList<Object[]> itemList, int rollbackType, int preview, String finalUserString, Player finalUser, World bukkitRollbackWorld, boolean inventoryRollback) {
+    public static boolean processChunk(int finalChunkX, int finalChunkZ, long chunkKey, ArrayList<Object[]> blockList, ArrayList<Object[]> itemList, int rollbackType, int preview, String finalUserString, Player finalUser, World bukkitRollbackWorld, boolean inventoryRollback, Map<Object[], List<Object[]>> history) {
         try {
             boolean clearInventories = Config.getGlobal().ROLLBACK_ITEMS;
             ArrayList<Object[]> data = blockList != null ? blockList : new ArrayList<>();
@@ -78,12 +82,28 @@ public class RollbackProcessor {
             Map<Block, BlockData> chunkChanges = new LinkedHashMap<>();
 
             // Process blocks
-            for (Object[] row : data) {
-                int[] rollbackHashData = ConfigHandler.rollbackHash.get(finalUserString);
-                int itemCount = rollbackHashData[0];
-                int blockCount = rollbackHashData[1];
-                int entityCount = rollbackHashData[2];
-                int scannedWorlds = rollbackHashData[4];
+            ArrayDeque<Object[]> rows = new ArrayDeque<>(data);
+            int skippedCount = 0;
+            while (!rows.isEmpty()) {
+                Object[] row = rows.poll();
+                List<Object[]> rowHistory = history != null ? history.remove(row) : null;
+                if (rowHistory != null) {
+                    Block historyBlock = bukkitRollbackWorld.getBlockAt((Integer) row[3], (Integer) row[4], (Integer) row[5]);
+                    if (preview > 0 || RollbackCollapse.canSkip(chunkChanges, historyBlock)) {
+                        skippedCount += rowHistory.size();
+                    }
+                    else {
+                        // replay the earlier changes to this block first
+                        rows.addFirst(row);
+                        for (int i = rowHistory.size() - 1; i >= 0; i--) {
+                            rows.addFirst(rowHistory.get(i));
+                        }
+                        continue;
+                    }
+                }
+
+                int blockCount = 0;
+                int entityCount = 0;
 
                 int rowX = (Integer) row[3];
                 int rowY = (Integer) row[4];
@@ -95,7 +115,6 @@ public class RollbackProcessor {
                 int rowWorldId = (Integer) row[10];
                 byte[] rowMeta = (byte[]) row[12];
                 byte[] rowBlockData = (byte[]) row[13];
-                String blockDataString = BlockUtils.byteDataToString(rowBlockData, rowTypeRaw);
                 Material rowType = MaterialUtils.getType(rowTypeRaw);
 
                 List<Object> meta = null;
@@ -103,15 +122,8 @@ public class RollbackProcessor {
                     meta = RollbackUtil.deserializeMetadata(rowMeta);
                 }
 
-                BlockData blockData = null;
-                if (blockDataString != null && blockDataString.contains(":")) {
-                    try {
-                        blockData = Bukkit.getServer().createBlockData(blockDataString);
-                    }
-                    catch (Exception e) {
-                        // corrupt BlockData, let the server automatically set the BlockData instead
-                    }
-                }
+                // corrupt BlockData is returned as null, letting the server automatically set the BlockData instead
+                BlockData blockData = BlockUtils.byteDataToBlockData(rowBlockData, rowTypeRaw);
 
                 BlockData rawBlockData = null;
                 if (blockData != null) {
@@ -240,14 +252,22 @@ public class RollbackProcessor {
                         }
                     }
 
-                    if (RollbackBlockHandler.processBlockChange(bukkitWorld, block, row, rollbackType, clearInventories, chunkChanges, countBlock, oldTypeMaterial, pendingChangeType, pendingChangeData, finalUserString, rawBlockData, changeType, changeBlock, changeBlockData, meta != null ? new ArrayList<>(meta) : null, blockData, rowUser, rowType, rowX, rowY, rowZ, rowTypeRaw, rowData, rowAction, rowWorldId, BlockUtils.byteDataToString((byte[]) row[13], rowTypeRaw)) && countBlock) {
+                    // the blockdata string is only used to place or remove hanging entities
+                    String blockDataString = null;
+                    if (BukkitAdapter.ADAPTER.isItemFrame(oldTypeMaterial) || oldTypeMaterial == Material.PAINTING) {
+                        blockDataString = BlockUtils.byteDataToString(rowBlockData, rowTypeRaw);
+                    }
+
+                    if (RollbackBlockHandler.processBlockChange(bukkitWorld, block, row, rollbackType, clearInventories, chunkChanges, countBlock, oldTypeMaterial, pendingChangeType, pendingChangeData, finalUserString, rawBlockData, changeType, changeBlock, changeBlockData, meta != null ? new ArrayList<>(meta) : null, blockData, rowUser, rowType, rowX, rowY, rowZ, rowTypeRaw, rowData, rowAction, rowWorldId, blockDataString) && countBlock) {
                         blockCount++;
                     }
                 }
 
-                ConfigHandler.rollbackHash.put(finalUserString, new int[] { itemCount, blockCount, entityCount, 0, scannedWorlds });
+                RollbackBlockHandler.updateBlockCount(finalUserString, blockCount);
+                RollbackEntityHandler.updateEntityCount(finalUserString, entityCount);
             }
             data.clear();
+            RollbackCollapse.updateSkippedCount(finalUserString, skippedCount);
 
             // Apply cached block changes
             RollbackBlockHandler.applyBlockChanges(chunkChanges, preview, finalUser instanceof Player ? (Player) finalUser : null);
@@ -264,11 +284,7 @@ public class RollbackProcessor {
             String lastFace = "";
 
             for (Object[] row : itemData) {
-                int[] rollbackHashData1 = ConfigHandler.rollbackHash.get(finalUserString);
-                int itemCount1 = rollbackHashData1[0];
-                int blockCount1 = rollbackHashData1[1];
-                int entityCount1 = rollbackHashData1[2];
-                int scannedWorlds = rollbackHashData1[4];
+                int itemCount = 0;
                 int rowX = (Integer) row[3];
                 int rowY = (Integer) row[4];
                 int rowZ = (Integer) row[5];
@@ -327,8 +343,7 @@ public class RollbackProcessor {
                             sortPlayers.put(player, currentSortList);
                         }
 
-                        itemCount1 = itemCount1 + rowAmount;
-                        ConfigHandler.rollbackHash.put(finalUserString, new int[] { itemCount1, blockCount1, entityCount1, 0, scannedWorlds });
+                        RollbackItemHandler.updateItemCount(finalUserString, rowAmount);
                         continue; // remove this for merged rollbacks in future? (be sure to re-enable chunk sorting)
                     }
 
@@ -409,19 +424,19 @@ public class RollbackProcessor {
                             // Check if we should use preserved slot information
                             if (Config.getGlobal().PRESERVE_CONTAINER_SLOTS && action == 1) {
                                 if (restoreContainerUsingPreservedSlots(finalUserString, containerType, container, slot, itemstack, rowX, rowY, rowZ)) {
-                                    itemCount1 = itemCount1 + rowAmount;
+                                    RollbackItemHandler.updateItemCount(finalUserString, rowAmount);
                                     continue; // Skip the normal processing as we've already handled it
                                 }
                             }
 
                             RollbackUtil.modifyContainerItems(containerType, container, slot, itemstack, action);
-                            itemCount1 = itemCount1 + rowAmount;
+                            itemCount = itemCount + rowAmount;
                         }
                         containerInit = true;
                     }
                 }
 
-                ConfigHandler.rollbackHash.put(finalUserString, new int[] { itemCount1, blockCount1, entityCount1, 0, scannedWorlds });
+                RollbackItemHandler.updateItemCount(finalUserString, itemCount);
             }
             itemData.clear();
 
@@ -430,12 +445,7 @@ public class RollbackProcessor {
             }
             sortPlayers.clear();
 
-            int[] rollbackHashData = ConfigHandler.rollbackHash.get(finalUserString);
-            int itemCount = rollbackHashData[0];
-            int blockCount = rollbackHashData[1];
-            int entityCount = rollbackHashData[2];
-            int scannedWorlds = rollbackHashData[4];
-            ConfigHandler.rollbackHash.put(finalUserString, new int[] { itemCount, blockCount, entityCount, 1, (scannedWorlds + 1) });
+            updateProgress(finalUserString, 1);
 
             // Teleport players out of danger if they're within this chunk
             if (preview == 0) {
@@ -455,17 +465,22 @@ public class RollbackProcessor {
         }
         catch (Exception e) {
             e.printStackTrace();
-            int[] rollbackHashData = ConfigHandler.rollbackHash.get(finalUserString);
-            int itemCount = rollbackHashData[0];
-            int blockCount = rollbackHashData[1];
-            int entityCount = rollbackHashData[2];
-            int scannedWorlds = rollbackHashData[4];
-
-            ConfigHandler.rollbackHash.put(finalUserString, new int[] { itemCount, blockCount, entityCount, 2, (scannedWorlds + 1) });
+            updateProgress(finalUserString, 2);
             return false;
         }
     }
 
+    /**
+     * Marks a chunk as processed (1) or aborted (2), and counts the world it was processed in.
+     */
+    private static void updateProgress(String userString, int next) {
+        AtomicIntegerArray rollbackHashData = ConfigHandler.rollbackHash.get(userString);
+        if (rollbackHashData != null) {
+            rollbackHashData.set(3, next);
+            rollbackHashData.incrementAndGet(4);
+        }
+    }
+
     /**
      * Attempts to restore a container's items using preserved slot information
      * 
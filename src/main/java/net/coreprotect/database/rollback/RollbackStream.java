@@ -0,0 +1,149 @@
+package net.coreprotect.database.rollback;
+
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import net.coreprotect.config.ConfigHandler;
+import net.coreprotect.consumer.Queue;
+import net.coreprotect.consumer.process.Process;
+import net.coreprotect.database.LookupCursor;
+import net.coreprotect.database.statement.UserStatement;
+import net.coreprotect.utility.WorldUtils;
+
+/**
+ * Reads a rollback chunk by chunk, and submits each chunk as soon as all of its rows have been read.
+ *
+ * The block and container cursors are both sorted by world and chunk, so a chunk is complete once
+ * neither cursor holds a row for it. Only the chunks that have been submitted but not yet applied are
+ * held in memory, as the next chunk is only read when the rollback is ready for it. The rolled_back
+ * flags are queued with each chunk.
+ */
+public class RollbackStream extends Queue implements Iterator<CompletableFuture<Boolean>> {
+
+    private final Statement statement;
+    private final LookupCursor blockCursor;
+    private final LookupCursor itemCursor;
+    private final Location location;
+    private final int rollbackType;
+    private final int preview;
+    private final String userString;
+    private final Player user;
+    private final RollbackPrefetch prefetch;
+    private final List<Object[]> resultList;
+    private final Map<Integer, World> worldMap = new HashMap<>();
+
+    /**
+     * Either cursor and the prefetch may be null. If a result list is given, the block rows read are added to it.
+     */
+    protected RollbackStream(Statement statement, LookupCursor blockCursor, LookupCursor itemCursor, Location location, int rollbackType, int preview, String userString, Player user, RollbackPrefetch prefetch, List<Object[]> resultList) {
+        this.statement = statement;
+        this.blockCursor = blockCursor;
+        this.itemCursor = itemCursor;
+        this.location = location;
+        this.rollbackType = rollbackType;
+        this.preview = preview;
+        this.userString = userString;
+        this.user = user;
+        this.prefetch = prefetch;
+        this.resultList = resultList;
+    }
+
+    private static Object[] peek(LookupCursor cursor) {
+        return cursor != null ? cursor.peek() : null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return peek(blockCursor) != null || peek(itemCursor) != null;
+    }
+
+    /**
+     * Reads the next chunk and submits it, returning the chunk's future.
+     */
+    @Override
+    public CompletableFuture<Boolean> next() {
+        try {
+            Object[] chunkRow = peek(blockCursor);
+            Object[] itemRow = peek(itemCursor);
+            if (chunkRow == null || (itemRow != null && LookupCursor.compareChunks(itemRow, chunkRow) < 0)) {
+                chunkRow = itemRow;
+            }
+
+            ArrayList<Object[]> blockData = readChunk(blockCursor, chunkRow);
+            ArrayList<Object[]> itemData = readChunk(itemCursor, chunkRow);
+            if (resultList != null) {
+                resultList.addAll(blockData);
+            }
+            if (rollbackType == 1) { // Restore
+                Collections.reverse(blockData);
+                Collections.reverse(itemData);
+            }
+
+            if (preview == 0 && !blockData.isEmpty()) {
+                Queue.queueRollbackUpdate(userString, location, blockData, Process.ROLLBACK_UPDATE, rollbackType);
+            }
+            if (preview == 0 && !itemData.isEmpty()) {
+                Queue.queueRollbackUpdate(userString, location, itemData, Process.CONTAINER_ROLLBACK_UPDATE, rollbackType);
+            }
+
+            World world = getWorld((Integer) chunkRow[10]);
+            if (world == null) {
+                return CompletableFuture.completedFuture(true);
+            }
+
+            int chunkX = (Integer) chunkRow[3] >> 4;
+            int chunkZ = (Integer) chunkRow[5] >> 4;
+            long chunkKey = (chunkX & 0xffffffffL | (chunkZ & 0xffffffffL) << 32);
+            return Rollback.submitRows(world, chunkKey, blockData, itemData, rollbackType, preview, userString, user, false, prefetch);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        return CompletableFuture.completedFuture(false);
+    }
+
+    private ArrayList<Object[]> readChunk(LookupCursor cursor, Object[] chunkRow) throws Exception {
+        ArrayList<Object[]> rows = new ArrayList<>();
+        while (peek(cursor) != null && LookupCursor.compareChunks(cursor.peek(), chunkRow) == 0) {
+            Object[] row = cursor.next();
+            int userId = (Integer) row[2];
+            if (ConfigHandler.playerIdCacheReversed.get(userId) == null) {
+                UserStatement.loadName(statement.getConnection(), userId);
+            }
+
+            rows.add(row);
+        }
+
+        return rows;
+    }
+
+    private World getWorld(int worldId) {
+        if (!worldMap.containsKey(worldId)) {
+            String worldName = WorldUtils.getWorldName(worldId);
+            worldMap.put(worldId, worldName.length() > 0 ? Bukkit.getServer().getWorld(worldName) : null);
+        }
+
+        return worldMap.get(worldId);
+    }
+
+    public void close() {
+        if (blockCursor != null) {
+            blockCursor.close();
+        }
+        if (itemCursor != null) {
+            itemCursor.close();
+        }
+    }
+}
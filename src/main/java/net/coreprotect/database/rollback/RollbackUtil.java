@@ -1,6 +1,5 @@
 package net.coreprotect.database.rollback;
 
-import java.io.ByteArrayInputStream;
 import java.util.List;
 import java.util.Map;
 
@@ -31,13 +30,13 @@ import org.bukkit.inventory.meta.MapMeta;
 import org.bukkit.inventory.meta.PotionMeta;
 import org.bukkit.inventory.meta.SuspiciousStewMeta;
 import org.bukkit.potion.PotionEffect;
-import org.bukkit.util.io.BukkitObjectInputStream;
 
 import net.coreprotect.bukkit.BukkitAdapter;
 import net.coreprotect.consumer.Queue;
 import net.coreprotect.database.Lookup;
 import net.coreprotect.model.BlockGroup;
 import net.coreprotect.utility.ItemUtils;
+import net.coreprotect.utility.serialize.MetadataCodec;
 import net.coreprotect.config.Config;
 
 public class RollbackUtil extends Lookup {
@@ -448,11 +447,7 @@ public class RollbackUtil extends Lookup {
     public static Object[] populateItemStack(ItemStack itemstack, byte[] metadata) {
         if (metadata != null) {
             try {
-                ByteArrayInputStream metaByteStream = new ByteArrayInputStream(metadata);
-                BukkitObjectInputStream metaObjectStream = new BukkitObjectInputStream(metaByteStream);
-                Object metaList = metaObjectStream.readObject();
-                metaObjectStream.close();
-                metaByteStream.close();
+                Object metaList = MetadataCodec.decode(metadata);
 
                 return populateItemStack(itemstack, metaList);
             }
@@ -477,12 +472,8 @@ public class RollbackUtil extends Lookup {
         }
 
         try {
-            ByteArrayInputStream metaByteStream = new ByteArrayInputStream(metadata);
-            BukkitObjectInputStream metaObjectStream = new BukkitObjectInputStream(metaByteStream);
             @SuppressWarnings("unchecked")
-            List<Object> metaList = (List<Object>) metaObjectStream.readObject();
-            metaObjectStream.close();
-            metaByteStream.close();
+            List<Object> metaList = (List<Object>) MetadataCodec.decode(metadata);
             return metaList;
         }
         catch (Exception e) {
@@ -18,7 +18,7 @@ public class BlockStatement {
             byte[] byteData = null;
 
             if (meta != null) {
-                byteData = ItemUtils.convertByteData(meta);
+                byteData = MetaBlobStatement.store(preparedStmt.getConnection(), ItemUtils.convertByteData(meta));
             }
 
             preparedStmt.setInt(1, time);
@@ -12,7 +12,7 @@ public class ContainerStatement {
 
     public static void insert(PreparedStatement preparedStmt, int batchCount, int time, int id, int wid, int x, int y, int z, int type, int data, int amount, Object metadata, int action, int rolledBack) {
         try {
-            byte[] byteData = ItemUtils.convertByteData(metadata);
+            byte[] byteData = MetaBlobStatement.store(preparedStmt.getConnection(), ItemUtils.convertByteData(metadata));
             preparedStmt.setInt(1, time);
             preparedStmt.setInt(2, id);
             preparedStmt.setInt(3, wid);
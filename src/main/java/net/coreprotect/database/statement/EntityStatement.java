@@ -1,7 +1,5 @@
 package net.coreprotect.database.statement;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Statement;
@@ -9,11 +7,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.bukkit.block.BlockState;
-import org.bukkit.util.io.BukkitObjectInputStream;
-import org.bukkit.util.io.BukkitObjectOutputStream;
 
 import net.coreprotect.config.ConfigHandler;
 import net.coreprotect.database.Database;
+import net.coreprotect.utility.serialize.MetadataCodec;
 
 public class EntityStatement {
 
@@ -23,14 +20,7 @@ public class EntityStatement {
 
     public static ResultSet insert(PreparedStatement preparedStmt, int time, List<Object> data) {
         try {
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            BukkitObjectOutputStream oos = new BukkitObjectOutputStream(bos);
-            oos.writeObject(data);
-            oos.flush();
-            oos.close();
-            bos.close();
-
-            byte[] byte_data = bos.toByteArray();
+            byte[] byte_data = MetadataCodec.encode(data);
             preparedStmt.setInt(1, time);
             preparedStmt.setObject(2, byte_data);
             if (Database.hasReturningKeys()) {
@@ -54,12 +44,8 @@ public class EntityStatement {
             ResultSet resultSet = statement.executeQuery(query);
             while (resultSet.next()) {
                 byte[] data = resultSet.getBytes("data");
-                ByteArrayInputStream bais = new ByteArrayInputStream(data);
-                BukkitObjectInputStream ins = new BukkitObjectInputStream(bais);
                 @SuppressWarnings("unchecked")
-                List<Object> input = (List<Object>) ins.readObject();
-                ins.close();
-                bais.close();
+                List<Object> input = (List<Object>) MetadataCodec.decode(data);
                 result = input;
             }
 
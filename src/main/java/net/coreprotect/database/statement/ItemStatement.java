@@ -12,7 +12,7 @@ public class ItemStatement {
 
     public static void insert(PreparedStatement preparedStmt, int batchCount, int time, int id, int wid, int x, int y, int z, int type, Object data, int amount, int action) {
         try {
-            byte[] byteData = ItemUtils.convertByteData(data);
+            byte[] byteData = MetaBlobStatement.store(preparedStmt.getConnection(), ItemUtils.convertByteData(data));
             preparedStmt.setInt(1, time);
             preparedStmt.setInt(2, id);
             preparedStmt.setInt(3, wid);
@@ -0,0 +1,247 @@
+package net.coreprotect.database.statement;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.coreprotect.config.Config;
+import net.coreprotect.config.ConfigHandler;
+import net.coreprotect.utility.serialize.MetadataCodec;
+
+/**
+ * Shared storage for container, item and block metadata.
+ *
+ * Each distinct metadata value is stored once in the meta_blob table, keyed by its SHA-256 hash, and
+ * rows only store a reference to it. Recently written hashes are kept in memory, so writing the same
+ * item again costs a hash and a map lookup. A hash is only remembered once the transaction that wrote
+ * it has been committed, as the consumer's shards write on separate connections.
+ *
+ * Each value also stores the last time a row referred to it. The time is only rewritten once it's older than
+ * TOUCH_INTERVAL, so a value that is no longer referenced can be found without reading the tables that refer
+ * to it. Values last referenced before the end of a global purge are deleted along with the purged rows.
+ */
+public class MetaBlobStatement {
+
+    // smaller values are stored in the row itself, where they take about as much space as a reference
+    private static final int MIN_SIZE = 32;
+    private static final int HASH_CACHE_SIZE = 10000;
+    private static final int DATA_CACHE_SIZE = 512;
+    private static final int DELETE_BATCH = 1000;
+    // seconds
+    private static final int TOUCH_INTERVAL = 86400;
+
+    // hash to { rowid, time last referenced }
+    private static final Map<ByteBuffer, long[]> hashCache = new LinkedHashMap<ByteBuffer, long[]>(HASH_CACHE_SIZE, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteBuffer, long[]> eldest) {
+            return size() > HASH_CACHE_SIZE;
+        }
+    };
+
+    private static final Map<Long, byte[]> dataCache = new LinkedHashMap<Long, byte[]>(DATA_CACHE_SIZE, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+            return size() > DATA_CACHE_SIZE;
+        }
+    };
+
+    // hashes written by this thread's open transaction
+    private static final ThreadLocal<Map<ByteBuffer, long[]>> pending = ThreadLocal.withInitial(LinkedHashMap::new);
+
+    private MetaBlobStatement() {
+        throw new IllegalStateException("Database class");
+    }
+
+    /**
+     * Returns the value to store in a metadata column: a reference to the shared copy of the data,
+     * or the data itself if it's too small to be worth sharing or can't be stored.
+     */
+    public static byte[] store(Connection connection, byte[] data) {
+        if (data == null || data.length < MIN_SIZE) {
+            return data;
+        }
+
+        try {
+            ByteBuffer hash = ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(data));
+            long time = System.currentTimeMillis() / 1000L;
+            long[] cached;
+            synchronized (hashCache) {
+                cached = hashCache.get(hash);
+            }
+            if (cached == null) {
+                cached = pending.get().get(hash);
+            }
+
+            long[] entry = cached;
+            if (entry == null) {
+                entry = load(connection, hash.array(), false);
+            }
+            if (entry != null && time - entry[1] >= TOUCH_INTERVAL) {
+                // no update means a purge deleted it since it was read
+                entry = touch(connection, entry[0], time) ? new long[] { entry[0], time } : null;
+            }
+            if (entry == null) {
+                // another shard may insert the same value, so the unique hash decides which row is kept
+                insert(connection, hash.array(), data, time);
+                entry = load(connection, hash.array(), Config.getGlobal().MYSQL);
+                if (entry == null) {
+                    return data;
+                }
+            }
+            if (entry != cached) {
+                pending.get().put(hash, entry);
+            }
+
+            return MetadataCodec.encodeReference(entry[0]);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        return data;
+    }
+
+    /**
+     * Returns the metadata a column value refers to, or the value itself if it isn't a reference.
+     */
+    public static byte[] resolve(Connection connection, byte[] data) {
+        long id = MetadataCodec.decodeReference(data);
+        if (id == -1) {
+            return data;
+        }
+
+        byte[] result;
+        synchronized (dataCache) {
+            result = dataCache.get(id);
+        }
+        if (result != null) {
+            return result;
+        }
+
+        try (PreparedStatement preparedStmt = connection.prepareStatement("SELECT data FROM " + ConfigHandler.prefix + "meta_blob WHERE rowid = ? LIMIT 1")) {
+            preparedStmt.setLong(1, id);
+            try (ResultSet resultSet = preparedStmt.executeQuery()) {
+                if (resultSet.next()) {
+                    result = resultSet.getBytes("data");
+                }
+            }
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        if (result != null) {
+            synchronized (dataCache) {
+                dataCache.put(id, result);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Forgets the hashes written by this thread's previous transaction, if it was never committed.
+     */
+    public static void begin() {
+        pending.get().clear();
+    }
+
+    /**
+     * Makes the hashes written by this thread's committed transaction available to every connection.
+     */
+    public static void commit() {
+        Map<ByteBuffer, long[]> written = pending.get();
+        if (written.isEmpty()) {
+            return;
+        }
+
+        List<Map.Entry<ByteBuffer, long[]>> entries = new ArrayList<>(written.entrySet());
+        synchronized (hashCache) {
+            for (Map.Entry<ByteBuffer, long[]> entry : entries) {
+                hashCache.put(entry.getKey(), entry.getValue());
+            }
+        }
+        written.clear();
+    }
+
+    /**
+     * Deletes a batch of the shared metadata last referenced before a global purge that ended at timeEnd.
+     * Only the time of each value is read, so this can run while the consumer is writing.
+     * Returns the number of values deleted, 0 once there are none left.
+     */
+    public static int purge(Connection connection, String prefix, long timeEnd) throws Exception {
+        // rows written up to TOUCH_INTERVAL after the stored time may refer to a value
+        long maxTime = timeEnd - TOUCH_INTERVAL;
+        List<Long> unused = new ArrayList<>();
+        try (PreparedStatement preparedStmt = connection.prepareStatement("SELECT rowid as id FROM " + prefix + "meta_blob WHERE time < ? LIMIT " + DELETE_BATCH)) {
+            preparedStmt.setLong(1, maxTime);
+            try (ResultSet resultSet = preparedStmt.executeQuery()) {
+                while (resultSet.next()) {
+                    unused.add(resultSet.getLong("id"));
+                }
+            }
+        }
+        if (unused.isEmpty()) {
+            return 0;
+        }
+
+        StringBuilder ids = new StringBuilder();
+        for (Long id : unused) {
+            if (ids.length() > 0) {
+                ids.append(",");
+            }
+            ids.append(id);
+        }
+
+        // checked again, in case a value was referenced since it was read
+        try (PreparedStatement preparedStmt = connection.prepareStatement("DELETE FROM " + prefix + "meta_blob WHERE rowid IN(" + ids + ") AND time < ?")) {
+            preparedStmt.setLong(1, maxTime);
+            preparedStmt.executeUpdate();
+        }
+
+        return unused.size();
+    }
+
+    private static long[] load(Connection connection, byte[] hash, boolean lock) throws Exception {
+        long[] entry = null;
+        // a locking read sees a row committed by another shard after this transaction started
+        try (PreparedStatement preparedStmt = connection.prepareStatement("SELECT rowid as id, time FROM " + ConfigHandler.prefix + "meta_blob WHERE hash = ? LIMIT 1" + (lock ? " LOCK IN SHARE MODE" : ""))) {
+            preparedStmt.setBytes(1, hash);
+            try (ResultSet resultSet = preparedStmt.executeQuery()) {
+                if (resultSet.next()) {
+                    entry = new long[] { resultSet.getLong("id"), resultSet.getLong("time") };
+                }
+            }
+        }
+
+        return entry;
+    }
+
+    private static boolean touch(Connection connection, long id, long time) throws Exception {
+        try (PreparedStatement preparedStmt = connection.prepareStatement("UPDATE " + ConfigHandler.prefix + "meta_blob SET time = ? WHERE rowid = ?")) {
+            preparedStmt.setLong(1, time);
+            preparedStmt.setLong(2, id);
+            return preparedStmt.executeUpdate() > 0;
+        }
+    }
+
+    private static void insert(Connection connection, byte[] hash, byte[] data, long time) throws Exception {
+        String query = "INSERT " + (Config.getGlobal().MYSQL ? "IGNORE" : "OR IGNORE") + " INTO " + ConfigHandler.prefix + "meta_blob (hash, data, time) VALUES (?, ?, ?)";
+        try (PreparedStatement preparedStmt = connection.prepareStatement(query)) {
+            preparedStmt.setBytes(1, hash);
+            preparedStmt.setBytes(2, data);
+            preparedStmt.setLong(3, time);
+            preparedStmt.executeUpdate();
+        }
+    }
+}
@@ -127,6 +127,8 @@ public class Language {
         phrases.put(Phrase.INVALID_SELECTION, "{0} selection not found.");
         phrases.put(Phrase.INVALID_USERNAME, "\"{0}\" is an invalid username.");
         phrases.put(Phrase.INVALID_WORLD, "Please specify a valid world.");
+        phrases.put(Phrase.JOURNAL_FULL, "Consumer journal is full. New data won't be recoverable until the queue has been saved.");
+        phrases.put(Phrase.JOURNAL_RECOVERED, "Recovered {0} unsaved {entry|entries} from the consumer journal.");
         phrases.put(Phrase.LATEST_VERSION, "Latest Version: {0}");
         phrases.put(Phrase.LINK_DISCORD, "Discord: {0}");
         phrases.put(Phrase.LINK_DOWNLOAD, "Download: {0}");
@@ -185,8 +187,12 @@ public class Language {
         phrases.put(Phrase.PURGE_MINIMUM_TIME, "You can only purge data older than {0} {days|hours}.");
         phrases.put(Phrase.PURGE_NOTICE_1, "Please note that this may take some time.");
         phrases.put(Phrase.PURGE_NOTICE_2, "Do not restart your server until completed.");
+        phrases.put(Phrase.PURGE_ONLINE, "Logging continues while the purge runs. It resumes automatically after a restart.");
         phrases.put(Phrase.PURGE_OPTIMIZING, "Optimizing database. Please wait...");
+        phrases.put(Phrase.PURGE_PARTITIONING, "Partitioning {0} data. Please wait...");
+        phrases.put(Phrase.PURGE_PARTITION_REQUIRED, "Some tables aren't partitioned yet ({0}). Run \"{1}\" to partition them.");
         phrases.put(Phrase.PURGE_PROCESSING, "Processing {0} data...");
+        phrases.put(Phrase.PURGE_RATE, "{0} {row|rows} deleted from {1} ({2} rows/sec).");
         phrases.put(Phrase.PURGE_REPAIRING, "Attempting to repair. This may take some time...");
         phrases.put(Phrase.PURGE_ROWS, "{0} {row|rows} of data deleted.");
         phrases.put(Phrase.PURGE_STARTED, "Data purge started on \"{0}\".");
@@ -195,6 +201,7 @@ public class Language {
         phrases.put(Phrase.RELOAD_STARTED, "Reloading configuration - please wait.");
         phrases.put(Phrase.RELOAD_SUCCESS, "Configuration successfully reloaded.");
         phrases.put(Phrase.ROLLBACK_ABORTED, "Rollback or restore aborted.");
+        phrases.put(Phrase.ROLLBACK_CHUNKS_APPLIED, "Modified {0} {chunk|chunks}.");
         phrases.put(Phrase.ROLLBACK_CHUNKS_FOUND, "Found {0} {chunk|chunks} to modify.");
         phrases.put(Phrase.ROLLBACK_CHUNKS_MODIFIED, "Modified {0}/{1} {chunk|chunks}.");
         phrases.put(Phrase.ROLLBACK_COMPLETED, "{Rollback|Restore|Preview} completed for \"{0}\".");
@@ -205,16 +212,20 @@ public class Language {
         phrases.put(Phrase.ROLLBACK_MODIFIED, "{Modified|Modifying} {0}.");
         phrases.put(Phrase.ROLLBACK_RADIUS, "Radius: {0} {block|blocks}.");
         phrases.put(Phrase.ROLLBACK_SELECTION, "Radius set to \"{0}\".");
+        phrases.put(Phrase.ROLLBACK_SKIPPED, "Skipped {0} superseded block {change|changes}.");
         phrases.put(Phrase.ROLLBACK_STARTED, "{Rollback|Restore|Preview} started on \"{0}\".");
         phrases.put(Phrase.ROLLBACK_TIME, "Time range: {0}.");
         phrases.put(Phrase.ROLLBACK_WORLD_ACTION, "Restricted to {world|action} \"{0}\".");
         phrases.put(Phrase.SIGN_HEADER, "Sign Messages");
         phrases.put(Phrase.STATUS_CONSUMER, "Consumer: {0} {item|items} in queue.");
         phrases.put(Phrase.STATUS_DATABASE, "Database: Using {0}.");
+        phrases.put(Phrase.STATUS_FLUSH, "Batches: {0} {item|items} committed in {1}ms (average {2} in {3}ms).");
         phrases.put(Phrase.STATUS_INTEGRATION, "{0}: Integration {enabled|disabled}.");
         phrases.put(Phrase.STATUS_LICENSE, "License: {0}");
+        phrases.put(Phrase.STATUS_SPILL, "Spilled: {0} {item|items} on disk ({1}MB). Estimated drain time: {2}.");
         phrases.put(Phrase.STATUS_SYSTEM, "System: {0}");
         phrases.put(Phrase.STATUS_VERSION, "Version: {0}");
+        phrases.put(Phrase.STATUS_WAL, "Write-ahead log: {0}MB. Last checkpoint: {1}ms ({2}).");
         phrases.put(Phrase.TELEPORTED, "Teleported to {0}.");
         phrases.put(Phrase.TELEPORTED_SAFETY, "Teleported you to safety.");
         phrases.put(Phrase.TELEPORT_PLAYERS, "Teleport command can only be used by players.");
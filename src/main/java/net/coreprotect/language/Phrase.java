@@ -124,6 +124,8 @@ public enum Phrase {
     INVALID_SELECTION,
     INVALID_USERNAME,
     INVALID_WORLD,
+    JOURNAL_FULL,
+    JOURNAL_RECOVERED,
     LATEST_VERSION,
     LINK_DISCORD,
     LINK_DOWNLOAD,
@@ -182,8 +184,12 @@ public enum Phrase {
     PURGE_MINIMUM_TIME,
     PURGE_NOTICE_1,
     PURGE_NOTICE_2,
+    PURGE_ONLINE,
     PURGE_OPTIMIZING,
+    PURGE_PARTITIONING,
+    PURGE_PARTITION_REQUIRED,
     PURGE_PROCESSING,
+    PURGE_RATE,
     PURGE_REPAIRING,
     PURGE_ROWS,
     PURGE_STARTED,
@@ -192,6 +198,7 @@ public enum Phrase {
     RELOAD_STARTED,
     RELOAD_SUCCESS,
     ROLLBACK_ABORTED,
+    ROLLBACK_CHUNKS_APPLIED,
     ROLLBACK_CHUNKS_FOUND,
     ROLLBACK_CHUNKS_MODIFIED,
     ROLLBACK_COMPLETED,
@@ -202,16 +209,20 @@ public enum Phrase {
     ROLLBACK_MODIFIED,
     ROLLBACK_RADIUS,
     ROLLBACK_SELECTION,
+    ROLLBACK_SKIPPED,
     ROLLBACK_STARTED,
     ROLLBACK_TIME,
     ROLLBACK_WORLD_ACTION,
     SIGN_HEADER,
     STATUS_CONSUMER,
     STATUS_DATABASE,
+    STATUS_FLUSH,
     STATUS_INTEGRATION,
     STATUS_LICENSE,
+    STATUS_SPILL,
     STATUS_SYSTEM,
     STATUS_VERSION,
+    STATUS_WAL,
     TELEPORTED,
     TELEPORTED_SAFETY,
     TELEPORT_PLAYERS,
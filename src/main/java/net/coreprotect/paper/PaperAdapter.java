@@ -1,10 +1,13 @@
 package net.coreprotect.paper;
 
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.Server;
+import org.bukkit.World;
 import org.bukkit.block.Sign;
 import org.bukkit.block.Skull;
 import org.bukkit.entity.Entity;
@@ -67,6 +70,12 @@ public class PaperAdapter implements PaperInterface {
         return false;
     }
 
+    @Override
+    public double getTPS(Server server) {
+        // not available outside of Paper
+        return 20.0;
+    }
+
     @Override
     public String getLine(Sign sign, int line) {
         return BukkitAdapter.ADAPTER.getLine(sign, line);
@@ -99,4 +108,10 @@ public class PaperAdapter implements PaperInterface {
         return;
     }
 
+    @Override
+    public CompletableFuture<Chunk> getChunkAtAsync(World world, int chunkX, int chunkZ) {
+        // not available outside of Paper, loaded on the calling thread
+        return CompletableFuture.completedFuture(world.getChunkAt(chunkX, chunkZ));
+    }
+
 }
@@ -1,7 +1,11 @@
 package net.coreprotect.paper;
 
+import java.util.concurrent.CompletableFuture;
+
+import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.Server;
+import org.bukkit.World;
 import org.bukkit.entity.Entity;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.InventoryHolder;
@@ -13,6 +17,16 @@ public class PaperHandler extends PaperAdapter {
         return server.isStopping();
     }
 
+    @Override
+    public double getTPS(Server server) {
+        try {
+            return server.getTPS()[0];
+        }
+        catch (UnsupportedOperationException e) {
+            return 20.0;
+        }
+    }
+
     @Override
     public void teleportAsync(Entity entity, Location location) {
         entity.teleportAsync(location);
@@ -23,4 +37,9 @@ public class PaperHandler extends PaperAdapter {
         return holder.getHolder(useSnapshot);
     }
 
+    @Override
+    public CompletableFuture<Chunk> getChunkAtAsync(World world, int chunkX, int chunkZ) {
+        return world.getChunkAtAsync(chunkX, chunkZ);
+    }
+
 }
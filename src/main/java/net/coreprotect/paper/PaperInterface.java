@@ -1,7 +1,11 @@
 package net.coreprotect.paper;
 
+import java.util.concurrent.CompletableFuture;
+
+import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.Server;
+import org.bukkit.World;
 import org.bukkit.block.Sign;
 import org.bukkit.block.Skull;
 import org.bukkit.entity.Entity;
@@ -14,6 +18,8 @@ public interface PaperInterface {
 
     public boolean isStopping(Server server);
 
+    public double getTPS(Server server);
+
     public String getLine(Sign sign, int line);
 
     public void teleportAsync(Entity entity, Location location);
@@ -26,4 +32,6 @@ public interface PaperInterface {
 
     public void setSkullSkin(Skull skull, String skin);
 
+    public CompletableFuture<Chunk> getChunkAtAsync(World world, int chunkX, int chunkZ);
+
 }
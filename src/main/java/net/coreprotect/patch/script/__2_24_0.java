@@ -0,0 +1,54 @@
+package net.coreprotect.patch.script;
+
+import java.sql.Statement;
+
+import net.coreprotect.config.Config;
+import net.coreprotect.config.ConfigHandler;
+import net.coreprotect.database.SpatialIndex;
+import net.coreprotect.language.Phrase;
+import net.coreprotect.language.Selector;
+import net.coreprotect.patch.Patch;
+import net.coreprotect.utility.Chat;
+
+public class __2_24_0 {
+
+    protected static boolean patch(Statement statement) {
+        try {
+            if (Config.getGlobal().MYSQL) {
+                try {
+                    statement.executeUpdate("ALTER TABLE " + ConfigHandler.prefix + "block ADD COLUMN " + SpatialIndex.getColumnDefinition(true) + ", ADD INDEX(" + SpatialIndex.COLUMN + ",time)");
+                }
+                catch (Exception e) {
+                    Chat.console(Phrase.build(Phrase.PATCH_SKIP_UPDATE, ConfigHandler.prefix + "block", Selector.FIRST, Selector.FIRST));
+                }
+            }
+            else {
+                try {
+                    statement.executeUpdate("ALTER TABLE " + ConfigHandler.prefix + "block ADD COLUMN " + SpatialIndex.getColumnDefinition(false) + ";");
+                }
+                catch (Exception e) {
+                    Chat.console(Phrase.build(Phrase.PATCH_SKIP_UPDATE, ConfigHandler.prefix + "block", Selector.FIRST, Selector.FIRST));
+                }
+
+                if (!Patch.continuePatch()) {
+                    return false;
+                }
+
+                try {
+                    statement.executeUpdate("CREATE INDEX IF NOT EXISTS block_chunk_index ON " + ConfigHandler.prefix + "block(" + SpatialIndex.COLUMN + ",time);");
+                }
+                catch (Exception e) {
+                    Chat.console(Phrase.build(Phrase.PATCH_SKIP_UPDATE, ConfigHandler.prefix + "block", Selector.SECOND, Selector.SECOND));
+                }
+            }
+
+            SpatialIndex.reset();
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        return true;
+    }
+
+}
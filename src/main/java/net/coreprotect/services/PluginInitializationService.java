@@ -13,12 +13,17 @@ import net.coreprotect.command.TabHandler;
 import net.coreprotect.config.Config;
 import net.coreprotect.config.ConfigHandler;
 import net.coreprotect.consumer.Consumer;
+import net.coreprotect.consumer.ConsumerJournal;
+import net.coreprotect.consumer.ConsumerSpill;
 import net.coreprotect.language.Language;
 import net.coreprotect.language.Phrase;
 import net.coreprotect.listener.ListenerHandler;
+import net.coreprotect.thread.BlockDataEncoder;
 import net.coreprotect.thread.CacheHandler;
+import net.coreprotect.thread.CheckpointHandler;
 import net.coreprotect.thread.InspectorStatusTask;
 import net.coreprotect.thread.NetworkHandler;
+import net.coreprotect.thread.OnlinePurge;
 import net.coreprotect.thread.Scheduler;
 import net.coreprotect.utility.Chat;
 import net.coreprotect.utility.ChatUtils;
@@ -158,8 +163,22 @@ public class PluginInitializationService {
         Thread cacheCleanUpThread = new Thread(new CacheHandler());
         cacheCleanUpThread.start();
 
-        // Start consumer
+        // Start WAL checkpoint thread
+        Thread checkpointThread = new Thread(new CheckpointHandler());
+        checkpointThread.start();
+
+        // Start blockdata re-encoding thread (only runs if enabled)
+        Thread blockDataEncoderThread = new Thread(new BlockDataEncoder());
+        blockDataEncoderThread.start();
+
+        // Resume an unfinished purge
+        OnlinePurge.resume();
+
+        // Open the consumer journal and start consumer
+        ConsumerJournal.open();
+        ConsumerSpill.startSpill();
         Consumer.startConsumer();
+        ConsumerJournal.replay();
     }
 
     /**
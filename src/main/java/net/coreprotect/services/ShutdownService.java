@@ -10,10 +10,12 @@ import org.bukkit.plugin.Plugin;
 
 import net.coreprotect.config.ConfigHandler;
 import net.coreprotect.consumer.Consumer;
+import net.coreprotect.consumer.ConsumerJournal;
 import net.coreprotect.consumer.process.Process;
 import net.coreprotect.language.Phrase;
 import net.coreprotect.listener.player.PlayerQuitListener;
 import net.coreprotect.paper.PaperAdapter;
+import net.coreprotect.thread.CheckpointHandler;
 import net.coreprotect.thread.InspectorStatusTask;
 import net.coreprotect.utility.Chat;
 import net.coreprotect.utility.Teleport;
@@ -70,6 +72,8 @@ public class ShutdownService {
             }
 
             waitForPendingOperations(shutdownTime, nextAlertTime);
+            ConsumerJournal.close();
+            CheckpointHandler.checkpoint(true);
 
             ConfigHandler.performDisable();
             Chat.console(Phrase.build(Phrase.DISABLE_SUCCESS, "CoreProtect v" + plugin.getDescription().getVersion()));
@@ -0,0 +1,160 @@
+package net.coreprotect.thread;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import net.coreprotect.config.Config;
+import net.coreprotect.config.ConfigHandler;
+import net.coreprotect.consumer.Consumer;
+import net.coreprotect.database.Database;
+import net.coreprotect.utility.BlockUtils;
+
+/**
+ * Rewrites blockdata values stored in the legacy text format ("12,57,3") to the binary format.
+ *
+ * Rows are converted in small rowid ranges, oldest first, up to the newest row that existed when
+ * the encoder started (newer rows are already written in the binary format). Progress is saved to
+ * disk, so the encoder resumes where it left off after a restart. Disabled unless
+ * "blockdata-reencode" is set in the config.
+ */
+public class BlockDataEncoder implements Runnable {
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int MAX_CONSUMER_BACKLOG = 10000;
+    private static final String PROGRESS_FILE = "blockdata-reencode.dat";
+    private static final long COMPLETE = -1;
+
+    private static File getProgressFile() {
+        return new File(ConfigHandler.path + PROGRESS_FILE);
+    }
+
+    private static long readProgress() {
+        try {
+            File file = getProgressFile();
+            if (file.exists()) {
+                return Long.parseLong(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim());
+            }
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        return 0;
+    }
+
+    private static void writeProgress(long rowId) {
+        try {
+            Files.write(getProgressFile().toPath(), Long.toString(rowId).getBytes(StandardCharsets.UTF_8));
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static long getMaxRowId(Connection connection) throws Exception {
+        long rowId = 0;
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery("SELECT MAX(rowid) as id FROM " + ConfigHandler.prefix + "block")) {
+            if (resultSet.next()) {
+                rowId = resultSet.getLong("id");
+            }
+        }
+
+        return rowId;
+    }
+
+    /**
+     * Converts the legacy blockdata values in the given rowid range. Returns the number of rows updated.
+     */
+    private static int encode(Connection connection, long start, long end) throws Exception {
+        int count = 0;
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (PreparedStatement select = connection.prepareStatement("SELECT rowid as id, blockdata FROM " + ConfigHandler.prefix + "block WHERE rowid > ? AND rowid <= ? AND blockdata IS NOT NULL"); PreparedStatement update = connection.prepareStatement("UPDATE " + ConfigHandler.prefix + "block SET blockdata = ? WHERE rowid = ?")) {
+            select.setLong(1, start);
+            select.setLong(2, end);
+            try (ResultSet resultSet = select.executeQuery()) {
+                while (resultSet.next()) {
+                    byte[] blockData = resultSet.getBytes("blockdata");
+                    if (!BlockUtils.isLegacyByteData(blockData)) {
+                        continue;
+                    }
+
+                    int[] ids = BlockUtils.decodeBlockDataIds(blockData);
+                    if (ids == null) {
+                        continue;
+                    }
+
+                    update.setBytes(1, BlockUtils.encodeBlockDataIds(ids, ids.length));
+                    update.setLong(2, resultSet.getLong("id"));
+                    update.addBatch();
+                    count++;
+                }
+            }
+
+            if (count > 0) {
+                update.executeBatch();
+            }
+            connection.commit();
+        }
+        catch (Exception e) {
+            connection.rollback();
+            throw e;
+        }
+        finally {
+            connection.setAutoCommit(autoCommit);
+        }
+
+        return count;
+    }
+
+    @Override
+    public void run() {
+        if (!Config.getGlobal().BLOCKDATA_REENCODE) {
+            return;
+        }
+
+        long position = readProgress();
+        long end = -1;
+        while (ConfigHandler.serverRunning && position != COMPLETE) {
+            try {
+                Thread.sleep(100);
+                if (ConfigHandler.converterRunning || ConfigHandler.purgeRunning || (Consumer.getConsumerSize(0) + Consumer.getConsumerSize(1)) > MAX_CONSUMER_BACKLOG) {
+                    continue;
+                }
+
+                try (Connection connection = Database.getConnection(false, 1000)) {
+                    if (connection == null) {
+                        continue;
+                    }
+
+                    if (end == -1) {
+                        end = getMaxRowId(connection);
+                    }
+
+                    long next = Math.min(end, position + BATCH_SIZE);
+                    if (position < end) {
+                        encode(connection, position, next);
+                    }
+
+                    position = (next >= end) ? COMPLETE : next;
+                    writeProgress(position);
+                }
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+                try {
+                    Thread.sleep(30000);
+                }
+                catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package net.coreprotect.thread;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import net.coreprotect.config.Config;
+import net.coreprotect.config.ConfigHandler;
+import net.coreprotect.database.Database;
+import net.coreprotect.database.SQLiteConnection;
+
+/**
+ * Checkpoints the SQLite write-ahead log in the background.
+ *
+ * A PASSIVE checkpoint runs at every interval, copying what it can without waiting on readers or
+ * the consumer (automatic checkpoints are disabled on the consumer's connection). The WAL is only
+ * truncated once it reaches the configured size and no lookups are running, and on shutdown.
+ */
+public class CheckpointHandler implements Runnable {
+
+    private static volatile long walSize = 0;
+    private static volatile long lastCheckpointTime = 0;
+    private static volatile long lastCheckpointDuration = 0;
+    private static volatile String lastCheckpointMode = null;
+
+    private static File getWalFile() {
+        return new File(ConfigHandler.path + ConfigHandler.sqlite + "-wal");
+    }
+
+    private static boolean isEnabled() {
+        return !Config.getGlobal().MYSQL && !Config.getGlobal().DISABLE_WAL;
+    }
+
+    /**
+     * Runs a checkpoint in the given mode (PASSIVE or TRUNCATE) on a connection of its own.
+     */
+    public static synchronized void checkpoint(boolean truncate) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        String mode = truncate ? "TRUNCATE" : "PASSIVE";
+        long startTime = System.currentTimeMillis();
+        try (Connection connection = Database.getConnection(true, 0)) {
+            if (connection == null) {
+                return;
+            }
+
+            try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery("PRAGMA wal_checkpoint(" + mode + ")")) {
+                while (resultSet.next()) {
+                    // busy, log, checkpointed
+                }
+            }
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            return;
+        }
+
+        lastCheckpointDuration = System.currentTimeMillis() - startTime;
+        lastCheckpointTime = System.currentTimeMillis();
+        lastCheckpointMode = mode;
+        walSize = getWalFile().length();
+    }
+
+    public static long getWalSize() {
+        return walSize;
+    }
+
+    public static long getLastCheckpointTime() {
+        return lastCheckpointTime;
+    }
+
+    public static long getLastCheckpointDuration() {
+        return lastCheckpointDuration;
+    }
+
+    public static String getLastCheckpointMode() {
+        return lastCheckpointMode;
+    }
+
+    @Override
+    public void run() {
+        while (ConfigHandler.serverRunning && isEnabled()) {
+            try {
+                Thread.sleep(1000);
+                if (ConfigHandler.converterRunning || ConfigHandler.purgeRunning) {
+                    continue;
+                }
+
+                long size = getWalFile().length();
+                walSize = size;
+
+                long interval = Math.max(1, Config.getGlobal().WAL_CHECKPOINT_INTERVAL) * 1000L;
+                long truncateSize = Config.getGlobal().WAL_TRUNCATE_SIZE * 1024L * 1024L;
+                if (truncateSize > 0 && size >= truncateSize && SQLiteConnection.getActiveReaders() == 0) {
+                    checkpoint(true);
+                }
+                else if (size > 0 && (System.currentTimeMillis() - lastCheckpointTime) >= interval) {
+                    checkpoint(false);
+                }
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package net.coreprotect.thread;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+
+import net.coreprotect.config.ConfigHandler;
+import net.coreprotect.consumer.Consumer;
+import net.coreprotect.database.Database;
+import net.coreprotect.database.TablePartitions;
+import net.coreprotect.database.statement.MetaBlobStatement;
+import net.coreprotect.language.Phrase;
+import net.coreprotect.language.Selector;
+import net.coreprotect.paper.PaperAdapter;
+import net.coreprotect.utility.Chat;
+
+/**
+ * Purges old data while the server keeps logging.
+ *
+ * Rows are deleted in small rowid ranges, each in a transaction of its own, so the consumer is never
+ * paused. The purge backs off while the server is lagging or the consumer is behind, and after each
+ * range it waits at least as long as the delete took. Progress is saved to disk after every range, and
+ * an unfinished purge is resumed when the server starts.
+ */
+public class OnlinePurge implements Runnable {
+
+    private static final List<String> PURGE_TABLES = Arrays.asList("sign", "container", "item", "skull", "session", "chat", "command", "entity", "block");
+    private static final List<String> WORLD_TABLES = Arrays.asList("sign", "container", "item", "session", "chat", "command", "block");
+    private static final List<String> RESTRICT_TABLES = Arrays.asList("block");
+    private static final String PROGRESS_FILE = "purge.dat";
+    private static final int CHUNK_SIZE = 5000;
+    private static final int MIN_DELAY = 50;
+    private static final int LAG_DELAY = 1000;
+    private static final double MIN_TPS = 18.0;
+    private static final int MAX_CONSUMER_BACKLOG = 10000;
+
+    private static volatile boolean running = false;
+
+    private final CommandSender sender;
+    private final long timeStart;
+    private final long timeEnd;
+    private final int wid;
+    private final String includeBlock;
+    private int table;
+    private long position;
+    private long removed;
+
+    private OnlinePurge(CommandSender sender, long timeStart, long timeEnd, int wid, String includeBlock, int table, long position, long removed) {
+        this.sender = sender;
+        this.timeStart = timeStart;
+        this.timeEnd = timeEnd;
+        this.wid = wid;
+        this.includeBlock = includeBlock;
+        this.table = table;
+        this.position = position;
+        this.removed = removed;
+    }
+
+    public static boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Starts purging the data between the given times (unix timestamps, a start of 0 for everything older than the end).
+     * Returns false if a purge is already running.
+     */
+    public static synchronized boolean start(CommandSender sender, long timeStart, long timeEnd, int wid, String includeBlock) {
+        if (running) {
+            return false;
+        }
+
+        OnlinePurge purge = new OnlinePurge(sender, timeStart, timeEnd, wid, includeBlock, 0, 0, 0);
+        purge.writeProgress();
+        running = true;
+        new Thread(purge, "CoreProtect Purge").start();
+        return true;
+    }
+
+    /**
+     * Resumes a purge left unfinished when the server stopped.
+     */
+    public static synchronized void resume() {
+        File file = getProgressFile();
+        if (running || !file.exists()) {
+            return;
+        }
+
+        try (FileInputStream input = new FileInputStream(file)) {
+            Properties properties = new Properties();
+            properties.load(input);
+            long timeStart = Long.parseLong(properties.getProperty("start"));
+            long timeEnd = Long.parseLong(properties.getProperty("end"));
+            int wid = Integer.parseInt(properties.getProperty("wid"));
+            String includeBlock = properties.getProperty("blocks", "");
+            int table = Integer.parseInt(properties.getProperty("table"));
+            long position = Long.parseLong(properties.getProperty("position"));
+            long removed = Long.parseLong(properties.getProperty("removed", "0"));
+
+            running = true;
+            new Thread(new OnlinePurge(Bukkit.getServer().getConsoleSender(), timeStart, timeEnd, wid, includeBlock, table, position, removed), "CoreProtect Purge").start();
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            file.delete();
+        }
+    }
+
+    private static File getProgressFile() {
+        return new File(ConfigHandler.path + PROGRESS_FILE);
+    }
+
+    private void writeProgress() {
+        Properties properties = new Properties();
+        properties.setProperty("start", Long.toString(timeStart));
+        properties.setProperty("end", Long.toString(timeEnd));
+        properties.setProperty("wid", Integer.toString(wid));
+        properties.setProperty("blocks", includeBlock);
+        properties.setProperty("table", Integer.toString(table));
+        properties.setProperty("position", Long.toString(position));
+        properties.setProperty("removed", Long.toString(removed));
+        try (FileOutputStream output = new FileOutputStream(getProgressFile())) {
+            properties.store(output, null);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private boolean isPurged(String tableName) {
+        if (!PURGE_TABLES.contains(tableName)) {
+            return false;
+        }
+        if (includeBlock.length() > 0 && !RESTRICT_TABLES.contains(tableName)) {
+            return false;
+        }
+        return wid == 0 || WORLD_TABLES.contains(tableName);
+    }
+
+    private String getRestriction(String tableName) {
+        StringBuilder restriction = new StringBuilder(" AND time < " + timeEnd + " AND time >= " + timeStart);
+        if (wid > 0 && WORLD_TABLES.contains(tableName)) {
+            restriction.append(" AND wid = ").append(wid);
+        }
+        if (includeBlock.length() > 0 && RESTRICT_TABLES.contains(tableName)) {
+            restriction.append(" AND type IN(").append(includeBlock).append(")");
+        }
+
+        return restriction.toString();
+    }
+
+    private static long queryLong(Statement statement, String query) throws Exception {
+        try (ResultSet resultSet = statement.executeQuery(query)) {
+            if (resultSet.next()) {
+                long value = resultSet.getLong(1);
+                return resultSet.wasNull() ? -1 : value;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Waits while the server is lagging or the consumer has fallen behind.
+     */
+    private static void throttle() throws InterruptedException {
+        while (ConfigHandler.serverRunning) {
+            boolean lagging = PaperAdapter.ADAPTER.getTPS(Bukkit.getServer()) < MIN_TPS;
+            boolean behind = (Consumer.getConsumerSize(0) + Consumer.getConsumerSize(1)) > MAX_CONSUMER_BACKLOG;
+            if (!lagging && !behind && !ConfigHandler.converterRunning && !ConfigHandler.purgeRunning) {
+                return;
+            }
+            Thread.sleep(LAG_DELAY);
+        }
+    }
+
+    /**
+     * Purges a single table from the saved position. Returns false if the server is stopping.
+     */
+    private boolean purgeTable(String tableName) throws Exception {
+        String tablePrefix = ConfigHandler.prefix + tableName;
+        long tableStart = System.currentTimeMillis();
+        long tableRemoved = 0;
+        long end;
+
+        try (Connection connection = Database.getConnection(false, 1000)) {
+            if (connection == null) {
+                throw new IllegalStateException("Database connection unavailable");
+            }
+
+            try (Statement statement = connection.createStatement()) {
+                if (position == 0 && timeStart == 0 && wid == 0 && includeBlock.length() == 0 && TablePartitions.isPartitioned(tableName)) {
+                    tableRemoved += TablePartitions.dropPartitions(statement, ConfigHandler.prefix, tableName, timeEnd);
+                }
+                if (position == 0) {
+                    position = Math.max(0, queryLong(statement, "SELECT MIN(rowid) FROM " + tablePrefix) - 1);
+                }
+                end = queryLong(statement, "SELECT MAX(rowid) FROM " + tablePrefix);
+            }
+        }
+
+        String restriction = getRestriction(tableName);
+        while (position < end) {
+            if (!ConfigHandler.serverRunning) {
+                return false;
+            }
+            throttle();
+
+            long next = Math.min(end, position + CHUNK_SIZE);
+            long deleteStart = System.currentTimeMillis();
+            try (Connection connection = Database.getConnection(false, 1000)) {
+                if (connection == null) {
+                    Thread.sleep(LAG_DELAY);
+                    continue;
+                }
+
+                try (PreparedStatement preparedStmt = connection.prepareStatement("DELETE FROM " + tablePrefix + " WHERE rowid > ? AND rowid <= ?" + restriction)) {
+                    preparedStmt.setLong(1, position);
+                    preparedStmt.setLong(2, next);
+                    tableRemoved += preparedStmt.executeUpdate();
+                }
+            }
+
+            position = next;
+            writeProgress();
+
+            // leave the database at least as much time as the delete took
+            Thread.sleep(Math.max(MIN_DELAY, System.currentTimeMillis() - deleteStart));
+        }
+
+        long seconds = Math.max(1, (System.currentTimeMillis() - tableStart) / 1000L);
+        removed += tableRemoved;
+        Chat.sendGlobalMessage(sender, Phrase.build(Phrase.PURGE_RATE, NumberFormat.getInstance().format(tableRemoved), (tableRemoved == 1 ? Selector.FIRST : Selector.SECOND), tableName.replaceAll("_", " "), NumberFormat.getInstance().format(tableRemoved / seconds)));
+        return true;
+    }
+
+    /**
+     * Removes the shared metadata only referenced by purged rows. Returns false if the server is stopping.
+     */
+    private boolean purgeMetadata() throws Exception {
+        int deleted = -1;
+        while (deleted != 0) {
+            if (!ConfigHandler.serverRunning) {
+                return false;
+            }
+            throttle();
+
+            long deleteStart = System.currentTimeMillis();
+            try (Connection connection = Database.getConnection(false, 1000)) {
+                if (connection == null) {
+                    Thread.sleep(LAG_DELAY);
+                    continue;
+                }
+
+                deleted = MetaBlobStatement.purge(connection, ConfigHandler.prefix, timeEnd);
+            }
+
+            Thread.sleep(Math.max(MIN_DELAY, System.currentTimeMillis() - deleteStart));
+        }
+
+        return true;
+    }
+
+    @Override
+    public void run() {
+        try {
+            for (; table < PURGE_TABLES.size(); table++) {
+                String tableName = PURGE_TABLES.get(table);
+                if (!isPurged(tableName)) {
+                    continue;
+                }
+
+                Chat.sendGlobalMessage(sender, Phrase.build(Phrase.PURGE_PROCESSING, tableName.replaceAll("_", " ")));
+                if (!purgeTable(tableName)) {
+                    return;
+                }
+
+                position = 0;
+                writeProgress();
+            }
+
+            if (timeStart == 0 && wid == 0 && includeBlock.length() == 0 && !purgeMetadata()) {
+                return;
+            }
+
+            getProgressFile().delete();
+            Chat.sendGlobalMessage(sender, Phrase.build(Phrase.PURGE_SUCCESS));
+            Chat.sendGlobalMessage(sender, Phrase.build(Phrase.PURGE_ROWS, NumberFormat.getInstance().format(removed), (removed == 1 ? Selector.FIRST : Selector.SECOND)));
+        }
+        catch (Exception e) {
+            // progress is kept, the purge resumes on the next startup
+            Chat.sendGlobalMessage(sender, Phrase.build(Phrase.PURGE_FAILED));
+            e.printStackTrace();
+        }
+        finally {
+            running = false;
+        }
+    }
+}
@@ -125,5 +125,8 @@ public class Scheduler {
             BukkitTask bukkitTask = (BukkitTask) task;
             bukkitTask.cancel();
         }
+        else if (task instanceof Integer) {
+            Bukkit.getServer().getScheduler().cancelTask((Integer) task);
+        }
     }
 }
@@ -1,11 +1,13 @@
 package net.coreprotect.utility;
 
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.bukkit.Bukkit;
 import org.bukkit.Material;
 import org.bukkit.block.Banner;
 import org.bukkit.block.Block;
@@ -28,6 +30,17 @@ public class BlockUtils {
 
     private static final String NAMESPACE = "minecraft:";
 
+    // first byte of a binary blockdata value, legacy text values only start with a digit or comma
+    private static final byte BLOCKDATA_VARINT = 1;
+    // a single id of a whole block state (e.g. "minecraft:oak_stairs[facing=north,...]")
+    private static final byte BLOCKDATA_STATE = 2;
+    private static final int MAX_STATE_LENGTH = 255;
+    private static final int MAX_CACHED_STATES = 65536;
+
+    // parsed block states, keyed by whole-state id or (for rows in the per-property format) by string
+    private static final Map<Integer, BlockData> stateCache = new ConcurrentHashMap<>();
+    private static final Map<String, BlockData> stringCache = new ConcurrentHashMap<>();
+
     private BlockUtils() {
         throw new IllegalStateException("Utility class");
     }
@@ -40,22 +53,31 @@ public class BlockUtils {
                 return result;
             }
 
+            int[] ids;
+            int count = 0;
             if (material.isBlock() && !createBlockData(material).getAsString().equals(string) && string.startsWith(NAMESPACE + material.name().toLowerCase(Locale.ROOT) + "[") && string.endsWith("]")) {
+                if (string.length() <= MAX_STATE_LENGTH) {
+                    int id = MaterialUtils.getBlockdataId(string, true);
+                    if (id > -1) {
+                        return encodeBlockStateId(id);
+                    }
+                }
+
                 String substring = string.substring(material.name().length() + 11, string.length() - 1);
                 String[] blockDataSplit = substring.split(",");
-                ArrayList<String> blockDataArray = new ArrayList<>();
+                ids = new int[blockDataSplit.length];
                 for (String data : blockDataSplit) {
                     int id = MaterialUtils.getBlockdataId(data, true);
                     if (id > -1) {
-                        blockDataArray.add(Integer.toString(id));
+                        ids[count++] = id;
                     }
                 }
-                string = String.join(",", blockDataArray);
             }
             else if (!string.contains(":") && (material == Material.PAINTING || BukkitAdapter.ADAPTER.isItemFrame(material))) {
                 int id = MaterialUtils.getBlockdataId(string, true);
                 if (id > -1) {
-                    string = Integer.toString(id);
+                    ids = new int[] { id };
+                    count = 1;
                 }
                 else {
                     return result;
@@ -65,7 +87,7 @@ public class BlockUtils {
                 return result;
             }
 
-            result = string.getBytes(StandardCharsets.UTF_8);
+            result = encodeBlockDataIds(ids, count);
         }
 
         return result;
@@ -79,35 +101,214 @@ public class BlockUtils {
                 return result;
             }
 
-            result = new String(data, StandardCharsets.UTF_8);
-            if (result.length() > 0) {
-                if (result.matches("\\d+")) {
-                    result = result + ",";
-                }
-                if (result.contains(",")) {
-                    String[] blockDataSplit = result.split(",");
-                    ArrayList<String> blockDataArray = new ArrayList<>();
-                    for (String blockData : blockDataSplit) {
-                        String block = MaterialUtils.getBlockDataString(Integer.parseInt(blockData));
-                        if (block.length() > 0) {
-                            blockDataArray.add(block);
+            int stateId = decodeBlockStateId(data);
+            if (stateId > -1) {
+                return MaterialUtils.getBlockDataString(stateId);
+            }
+
+            int[] ids = decodeBlockDataIds(data);
+            if (ids != null && ids.length > 0) {
+                StringBuilder blockDataString = new StringBuilder();
+                for (int id : ids) {
+                    String block = MaterialUtils.getBlockDataString(id);
+                    if (block.length() > 0) {
+                        if (blockDataString.length() > 0) {
+                            blockDataString.append(",");
                         }
+                        blockDataString.append(block);
                     }
+                }
 
-                    if (material == Material.PAINTING || BukkitAdapter.ADAPTER.isItemFrame(material)) {
-                        result = String.join(",", blockDataArray);
+                if (material == Material.PAINTING || BukkitAdapter.ADAPTER.isItemFrame(material)) {
+                    result = blockDataString.toString();
+                }
+                else {
+                    result = NAMESPACE + material.name().toLowerCase(Locale.ROOT) + "[" + blockDataString + "]";
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the BlockData stored in a blockdata column value, or null if there is none or it can't be parsed.
+     * Each distinct state is only parsed once; callers receive a copy they're free to modify.
+     */
+    public static BlockData byteDataToBlockData(byte[] data, int type) {
+        if (data == null) {
+            return null;
+        }
+
+        BlockData blockData;
+        int stateId = decodeBlockStateId(data);
+        if (stateId > -1) {
+            blockData = stateCache.get(stateId);
+            if (blockData == null) {
+                blockData = parseBlockData(MaterialUtils.getBlockDataString(stateId));
+                if (blockData == null) {
+                    return null;
+                }
+                if (stateCache.size() >= MAX_CACHED_STATES) {
+                    stateCache.clear();
+                }
+                stateCache.put(stateId, blockData);
+            }
+        }
+        else {
+            String string = byteDataToString(data, type);
+            blockData = stringCache.get(string);
+            if (blockData == null) {
+                blockData = parseBlockData(string);
+                if (blockData == null) {
+                    return null;
+                }
+                if (stringCache.size() >= MAX_CACHED_STATES) {
+                    stringCache.clear();
+                }
+                stringCache.put(string, blockData);
+            }
+        }
+
+        return blockData.clone();
+    }
+
+    private static BlockData parseBlockData(String string) {
+        if (string == null || !string.contains(":")) {
+            return null;
+        }
+
+        try {
+            return Bukkit.getServer().createBlockData(string);
+        }
+        catch (Exception e) {
+            // corrupt BlockData
+            return null;
+        }
+    }
+
+    private static int writeVarInt(byte[] buffer, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+    private static byte[] encodeBlockStateId(int id) {
+        byte[] buffer = new byte[6];
+        buffer[0] = BLOCKDATA_STATE;
+        return Arrays.copyOf(buffer, writeVarInt(buffer, 1, id));
+    }
+
+    /**
+     * Returns the whole-state dictionary id stored in a blockdata column value, or -1 if the value is in another format.
+     */
+    public static int decodeBlockStateId(byte[] data) {
+        if (data == null || data.length < 2 || data.length > 6 || data[0] != BLOCKDATA_STATE) {
+            return -1;
+        }
+
+        int value = 0;
+        int shift = 0;
+        for (int i = 1; i < data.length; i++) {
+            int current = data[i];
+            value |= (current & 0x7F) << shift;
+            if ((current & 0x80) == 0) {
+                return (i == data.length - 1) ? value : -1;
+            }
+            shift += 7;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Packs blockdata dictionary ids as unsigned varints, behind the binary format marker.
+     * Returns an empty array if there are no ids, as the text format did.
+     */
+    public static byte[] encodeBlockDataIds(int[] ids, int count) {
+        if (count == 0) {
+            return new byte[0];
+        }
+
+        byte[] buffer = new byte[1 + (count * 5)];
+        buffer[0] = BLOCKDATA_VARINT;
+        int position = 1;
+        for (int i = 0; i < count; i++) {
+            position = writeVarInt(buffer, position, ids[i]);
+        }
+
+        return Arrays.copyOf(buffer, position);
+    }
+
+    /**
+     * Returns the blockdata dictionary ids stored in a blockdata column value, in the per-property formats.
+     * Legacy values are UTF-8 text of comma separated ids (e.g. "12,57,3").
+     * Returns null if the value can't be decoded.
+     */
+    public static int[] decodeBlockDataIds(byte[] data) {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+
+        int[] ids = new int[data.length];
+        int count = 0;
+        if (data[0] == BLOCKDATA_VARINT) {
+            int value = 0;
+            int shift = 0;
+            for (int i = 1; i < data.length; i++) {
+                int current = data[i];
+                value |= (current & 0x7F) << shift;
+                if ((current & 0x80) == 0) {
+                    ids[count++] = value;
+                    value = 0;
+                    shift = 0;
+                }
+                else {
+                    shift += 7;
+                    if (shift > 28) {
+                        return null;
                     }
-                    else {
-                        result = NAMESPACE + material.name().toLowerCase(Locale.ROOT) + "[" + String.join(",", blockDataArray) + "]";
+                }
+            }
+            if (shift != 0) {
+                return null;
+            }
+        }
+        else {
+            int value = 0;
+            boolean digits = false;
+            for (byte current : data) {
+                if (current >= '0' && current <= '9') {
+                    value = (value * 10) + (current - '0');
+                    digits = true;
+                }
+                else if (current == ',') {
+                    if (digits) {
+                        ids[count++] = value;
                     }
+                    value = 0;
+                    digits = false;
                 }
                 else {
-                    result = "";
+                    return null;
                 }
             }
+            if (digits) {
+                ids[count++] = value;
+            }
         }
 
-        return result;
+        return Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * Returns true if a blockdata column value is stored in the legacy text format.
+     */
+    public static boolean isLegacyByteData(byte[] data) {
+        return data != null && data.length > 0 && ((data[0] >= '0' && data[0] <= '9') || data[0] == ',');
     }
 
     public static Waterlogged checkWaterlogged(BlockData blockData, BlockState blockReplacedState) {
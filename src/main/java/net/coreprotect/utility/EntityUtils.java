@@ -29,16 +29,21 @@ public class EntityUtils extends Queue {
         int id = -1;
         name = name.toLowerCase(Locale.ROOT).trim();
 
-        if (ConfigHandler.entities.get(name) != null) {
-            id = ConfigHandler.entities.get(name);
+        Integer value = ConfigHandler.entities.get(name);
+        if (value != null) {
+            id = value;
         }
         else if (internal) {
-            int entityID = ConfigHandler.entityId + 1;
-            ConfigHandler.entities.put(name, entityID);
-            ConfigHandler.entitiesReversed.put(entityID, name);
-            ConfigHandler.entityId = entityID;
-            Queue.queueEntityInsert(entityID, name);
-            id = ConfigHandler.entities.get(name);
+            synchronized (ConfigHandler.entities) {
+                if (ConfigHandler.entities.get(name) == null) {
+                    int entityID = ConfigHandler.entityId + 1;
+                    ConfigHandler.entities.put(name, entityID);
+                    ConfigHandler.entitiesReversed.put(entityID, name);
+                    ConfigHandler.entityId = entityID;
+                    Queue.queueEntityInsert(entityID, name);
+                }
+                id = ConfigHandler.entities.get(name);
+            }
         }
 
         return id;
@@ -31,16 +31,21 @@ public class MaterialUtils extends Queue {
             name = NAMESPACE + name;
         }
 
-        if (ConfigHandler.materials.get(name) != null) {
-            id = ConfigHandler.materials.get(name);
+        Integer value = ConfigHandler.materials.get(name);
+        if (value != null) {
+            id = value;
         }
         else if (internal) {
-            int mid = ConfigHandler.materialId + 1;
-            ConfigHandler.materials.put(name, mid);
-            ConfigHandler.materialsReversed.put(mid, name);
-            ConfigHandler.materialId = mid;
-            Queue.queueMaterialInsert(mid, name);
-            id = ConfigHandler.materials.get(name);
+            synchronized (ConfigHandler.materials) {
+                if (ConfigHandler.materials.get(name) == null) {
+                    int mid = ConfigHandler.materialId + 1;
+                    ConfigHandler.materials.put(name, mid);
+                    ConfigHandler.materialsReversed.put(mid, name);
+                    ConfigHandler.materialId = mid;
+                    Queue.queueMaterialInsert(mid, name);
+                }
+                id = ConfigHandler.materials.get(name);
+            }
         }
 
         return id;
@@ -50,16 +55,21 @@ public class MaterialUtils extends Queue {
         int id = -1;
         data = data.toLowerCase(Locale.ROOT).trim();
 
-        if (ConfigHandler.blockdata.get(data) != null) {
-            id = ConfigHandler.blockdata.get(data);
+        Integer value = ConfigHandler.blockdata.get(data);
+        if (value != null) {
+            id = value;
         }
         else if (internal) {
-            int bid = ConfigHandler.blockdataId + 1;
-            ConfigHandler.blockdata.put(data, bid);
-            ConfigHandler.blockdataReversed.put(bid, data);
-            ConfigHandler.blockdataId = bid;
-            Queue.queueBlockDataInsert(bid, data);
-            id = ConfigHandler.blockdata.get(data);
+            synchronized (ConfigHandler.blockdata) {
+                if (ConfigHandler.blockdata.get(data) == null) {
+                    int bid = ConfigHandler.blockdataId + 1;
+                    ConfigHandler.blockdata.put(data, bid);
+                    ConfigHandler.blockdataReversed.put(bid, data);
+                    ConfigHandler.blockdataId = bid;
+                    Queue.queueBlockDataInsert(bid, data);
+                }
+                id = ConfigHandler.blockdata.get(data);
+            }
         }
 
         return id;
@@ -131,16 +141,21 @@ public class MaterialUtils extends Queue {
         int id = -1;
         name = name.toLowerCase(Locale.ROOT).trim();
 
-        if (ConfigHandler.art.get(name) != null) {
-            id = ConfigHandler.art.get(name);
+        Integer value = ConfigHandler.art.get(name);
+        if (value != null) {
+            id = value;
         }
         else if (internal) {
-            int artID = ConfigHandler.artId + 1;
-            ConfigHandler.art.put(name, artID);
-            ConfigHandler.artReversed.put(artID, name);
-            ConfigHandler.artId = artID;
-            Queue.queueArtInsert(artID, name);
-            id = ConfigHandler.art.get(name);
+            synchronized (ConfigHandler.art) {
+                if (ConfigHandler.art.get(name) == null) {
+                    int artID = ConfigHandler.artId + 1;
+                    ConfigHandler.art.put(name, artID);
+                    ConfigHandler.artReversed.put(artID, name);
+                    ConfigHandler.artId = artID;
+                    Queue.queueArtInsert(artID, name);
+                }
+                id = ConfigHandler.art.get(name);
+            }
         }
 
         return id;
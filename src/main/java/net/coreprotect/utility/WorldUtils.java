@@ -15,14 +15,21 @@ public class WorldUtils extends Queue {
     public static int getWorldId(String name) {
         int id = -1;
         try {
-            if (ConfigHandler.worlds.get(name) == null) {
-                int wid = ConfigHandler.worldId + 1;
-                ConfigHandler.worlds.put(name, wid);
-                ConfigHandler.worldsReversed.put(wid, name);
-                ConfigHandler.worldId = wid;
-                Queue.queueWorldInsert(wid, name);
+            // a single read, as the map may be reloaded in between
+            Integer value = ConfigHandler.worlds.get(name);
+            if (value == null) {
+                synchronized (ConfigHandler.worlds) {
+                    value = ConfigHandler.worlds.get(name);
+                    if (value == null) {
+                        value = ConfigHandler.worldId + 1;
+                        ConfigHandler.worlds.put(name, value);
+                        ConfigHandler.worldsReversed.put(value, name);
+                        ConfigHandler.worldId = value;
+                        Queue.queueWorldInsert(value, name);
+                    }
+                }
             }
-            id = ConfigHandler.worlds.get(name);
+            id = value;
         }
         catch (Exception e) {
             e.printStackTrace();
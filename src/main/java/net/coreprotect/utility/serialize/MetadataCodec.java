@@ -0,0 +1,520 @@
+package net.coreprotect.utility.serialize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.bukkit.configuration.serialization.ConfigurationSerializable;
+import org.bukkit.configuration.serialization.ConfigurationSerialization;
+import org.bukkit.util.io.BukkitObjectInputStream;
+import org.bukkit.util.io.BukkitObjectOutputStream;
+
+import net.coreprotect.config.Config;
+
+/**
+ * Binary encoding of the metadata and entity data stored in the database.
+ *
+ * Values are written with a one byte type tag. Integers are zigzag varints, and each distinct string
+ * (map keys in particular) is only written once per value, later occurrences refer back to it by index.
+ * Bukkit objects are stored as their serialized maps, and anything else falls back to Bukkit object
+ * serialization. Values above the configured size are deflated. Values written before this format
+ * (Java serialization streams) are still read.
+ */
+public class MetadataCodec {
+
+    private static final int FORMAT = 0xC1;
+    private static final int FORMAT_DEFLATED = 0xC2;
+    private static final int FORMAT_REFERENCE = 0xC3;
+
+    private static final int NULL = 0;
+    private static final int FALSE = 1;
+    private static final int TRUE = 2;
+    private static final int INTEGER = 3;
+    private static final int LONG = 4;
+    private static final int SHORT = 5;
+    private static final int BYTE = 6;
+    private static final int FLOAT = 7;
+    private static final int DOUBLE = 8;
+    private static final int STRING = 9;
+    private static final int STRING_REF = 10;
+    private static final int LIST = 11;
+    private static final int MAP = 12;
+    private static final int OBJECT = 13;
+    private static final int ENUM = 14;
+    private static final int BYTES = 15;
+    private static final int SERIALIZED = 16;
+
+    private static final ThreadLocal<MetadataCodec> CODEC = ThreadLocal.withInitial(MetadataCodec::new);
+
+    private final Map<String, Integer> strings = new HashMap<>();
+    private byte[] buffer = new byte[256];
+    private int length = 0;
+
+    /**
+     * Encodes a value for storage in a metadata or entity data column.
+     */
+    public static byte[] encode(Object value) throws IOException {
+        MetadataCodec codec = CODEC.get();
+        codec.length = 0;
+        codec.strings.clear();
+        try {
+            codec.writeByte(FORMAT);
+            codec.writeValue(value);
+        }
+        finally {
+            codec.strings.clear();
+        }
+
+        int threshold = Config.getGlobal().METADATA_COMPRESSION_THRESHOLD;
+        if (threshold > 0 && codec.length >= threshold) {
+            byte[] compressed = deflate(codec.buffer, 1, codec.length - 1);
+            if (compressed != null) {
+                return compressed;
+            }
+        }
+
+        byte[] result = new byte[codec.length];
+        System.arraycopy(codec.buffer, 0, result, 0, codec.length);
+        return result;
+    }
+
+    /**
+     * Decodes a value written by {@link #encode}, or by Java serialization in earlier versions.
+     */
+    public static Object decode(byte[] data) throws IOException {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+
+        int format = data[0] & 0xFF;
+        if (format == FORMAT) {
+            return new Input(data, 1, data.length).readValue();
+        }
+        else if (format == FORMAT_REFERENCE) {
+            throw new IOException("Unresolved metadata reference");
+        }
+        else if (format == FORMAT_DEFLATED) {
+            Input input = new Input(data, 1, data.length);
+            int size = (int) input.readVarLong();
+            byte[] inflated = inflate(data, input.position, data.length - input.position, size);
+            return new Input(inflated, 0, inflated.length).readValue();
+        }
+
+        try (BukkitObjectInputStream ois = new BukkitObjectInputStream(new ByteArrayInputStream(data))) {
+            return ois.readObject();
+        }
+        catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Returns a column value referring to a shared metadata blob (see {@link net.coreprotect.database.statement.MetaBlobStatement}).
+     */
+    public static byte[] encodeReference(long id) {
+        byte[] result = new byte[11];
+        int position = 0;
+        result[position++] = (byte) FORMAT_REFERENCE;
+        while ((id & ~0x7FL) != 0) {
+            result[position++] = (byte) ((id & 0x7F) | 0x80);
+            id >>>= 7;
+        }
+        result[position++] = (byte) id;
+
+        byte[] reference = new byte[position];
+        System.arraycopy(result, 0, reference, 0, position);
+        return reference;
+    }
+
+    /**
+     * Returns the shared metadata blob id a column value refers to, or -1 if it holds the value itself.
+     */
+    public static long decodeReference(byte[] data) {
+        if (data == null || data.length < 2 || (data[0] & 0xFF) != FORMAT_REFERENCE) {
+            return -1;
+        }
+
+        try {
+            Input input = new Input(data, 1, data.length);
+            long id = input.readVarLong();
+            return input.position == data.length ? id : -1;
+        }
+        catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns a deflated copy of the encoded value, or null if it doesn't get any smaller.
+     */
+    private static byte[] deflate(byte[] data, int offset, int size) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data, offset, size);
+            deflater.finish();
+
+            // header, raw length, then the deflated value, which has to fit within the raw size
+            byte[] result = new byte[size + 6];
+            int position = 0;
+            result[position++] = (byte) FORMAT_DEFLATED;
+            long value = size;
+            while ((value & ~0x7FL) != 0) {
+                result[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            result[position++] = (byte) value;
+
+            while (!deflater.finished() && position < result.length) {
+                position += deflater.deflate(result, position, result.length - position);
+            }
+            if (!deflater.finished() || position >= size + 1) {
+                return null;
+            }
+
+            byte[] compressed = new byte[position];
+            System.arraycopy(result, 0, compressed, 0, position);
+            return compressed;
+        }
+        finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data, int offset, int size, int inflatedSize) throws IOException {
+        if (inflatedSize < 0) {
+            throw new IOException("Malformed metadata");
+        }
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, offset, size);
+            byte[] result = new byte[inflatedSize];
+            int position = 0;
+            while (position < inflatedSize && !inflater.finished()) {
+                int count = inflater.inflate(result, position, inflatedSize - position);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                position += count;
+            }
+            if (position != inflatedSize) {
+                throw new IOException("Truncated metadata");
+            }
+
+            return result;
+        }
+        catch (DataFormatException e) {
+            throw new IOException(e);
+        }
+        finally {
+            inflater.end();
+        }
+    }
+
+    private void ensure(int size) {
+        if (length + size > buffer.length) {
+            byte[] resized = new byte[Math.max(buffer.length * 2, length + size)];
+            System.arraycopy(buffer, 0, resized, 0, length);
+            buffer = resized;
+        }
+    }
+
+    private void writeByte(int value) {
+        ensure(1);
+        buffer[length++] = (byte) value;
+    }
+
+    private void writeVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[length++] = (byte) value;
+    }
+
+    private void writeInt(int value) {
+        writeVarLong(((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+    }
+
+    private void writeLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    private void writeBytes(byte[] value) {
+        writeVarLong(value.length);
+        ensure(value.length);
+        System.arraycopy(value, 0, buffer, length, value.length);
+        length += value.length;
+    }
+
+    private void writeString(String value) {
+        Integer index = strings.get(value);
+        if (index != null) {
+            writeByte(STRING_REF);
+            writeVarLong(index);
+            return;
+        }
+
+        strings.put(value, strings.size());
+        writeByte(STRING);
+        writeBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeValue(Object value) throws IOException {
+        if (value == null) {
+            writeByte(NULL);
+        }
+        else if (value instanceof String) {
+            writeString((String) value);
+        }
+        else if (value instanceof Integer) {
+            writeByte(INTEGER);
+            writeInt((Integer) value);
+        }
+        else if (value instanceof Boolean) {
+            writeByte((Boolean) value ? TRUE : FALSE);
+        }
+        else if (value instanceof Long) {
+            writeByte(LONG);
+            writeLong((Long) value);
+        }
+        else if (value instanceof Short) {
+            writeByte(SHORT);
+            writeInt((Short) value);
+        }
+        else if (value instanceof Byte) {
+            writeByte(BYTE);
+            writeByte((Byte) value);
+        }
+        else if (value instanceof Float) {
+            writeByte(FLOAT);
+            writeInt(Float.floatToIntBits((Float) value));
+        }
+        else if (value instanceof Double) {
+            writeByte(DOUBLE);
+            writeLong(Double.doubleToLongBits((Double) value));
+        }
+        else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            writeByte(LIST);
+            writeVarLong(list.size());
+            for (Object element : list) {
+                writeValue(element);
+            }
+        }
+        else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            writeByte(MAP);
+            writeVarLong(map.size());
+            for (Entry<?, ?> entry : map.entrySet()) {
+                writeValue(entry.getKey());
+                writeValue(entry.getValue());
+            }
+        }
+        else if (value instanceof ConfigurationSerializable) {
+            Map<String, Object> map = ((ConfigurationSerializable) value).serialize();
+            writeByte(OBJECT);
+            writeString(ConfigurationSerialization.getAlias(((ConfigurationSerializable) value).getClass()));
+            writeVarLong(map.size());
+            for (Entry<String, Object> entry : map.entrySet()) {
+                writeString(entry.getKey());
+                writeValue(entry.getValue());
+            }
+        }
+        else if (value instanceof Enum) {
+            writeByte(ENUM);
+            writeString(((Enum<?>) value).getDeclaringClass().getName());
+            writeString(((Enum<?>) value).name());
+        }
+        else if (value instanceof byte[]) {
+            writeByte(BYTES);
+            writeBytes((byte[]) value);
+        }
+        else {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            BukkitObjectOutputStream oos = new BukkitObjectOutputStream(bos);
+            oos.writeObject(value);
+            oos.flush();
+            oos.close();
+            writeByte(SERIALIZED);
+            writeBytes(bos.toByteArray());
+        }
+    }
+
+    private static class Input {
+
+        private final byte[] data;
+        private final int limit;
+        private final List<String> strings = new ArrayList<>();
+        private int position;
+
+        private Input(byte[] data, int position, int limit) {
+            this.data = data;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        private int readByte() throws IOException {
+            if (position >= limit) {
+                throw new IOException("Truncated metadata");
+            }
+            return data[position++] & 0xFF;
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            int shift = 0;
+            while (shift < 64) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+                shift += 7;
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        private int readInt() throws IOException {
+            int value = (int) readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private long readLong() throws IOException {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private int readSize() throws IOException {
+            long size = readVarLong();
+            if (size < 0 || size > limit - position) {
+                throw new IOException("Truncated metadata");
+            }
+            return (int) size;
+        }
+
+        private byte[] readBytes() throws IOException {
+            int size = readSize();
+            byte[] value = new byte[size];
+            System.arraycopy(data, position, value, 0, size);
+            position += size;
+            return value;
+        }
+
+        private String readString() throws IOException {
+            int tag = readByte();
+            if (tag == STRING) {
+                int size = readSize();
+                String value = new String(data, position, size, StandardCharsets.UTF_8);
+                position += size;
+                strings.add(value);
+                return value;
+            }
+            else if (tag == STRING_REF) {
+                int index = (int) readVarLong();
+                if (index < 0 || index >= strings.size()) {
+                    throw new IOException("Malformed metadata");
+                }
+                return strings.get(index);
+            }
+
+            throw new IOException("Expected a string, found tag " + tag);
+        }
+
+        private Object readValue() throws IOException {
+            int tag = readByte();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case FALSE:
+                    return false;
+                case TRUE:
+                    return true;
+                case INTEGER:
+                    return readInt();
+                case LONG:
+                    return readLong();
+                case SHORT:
+                    return (short) readInt();
+                case BYTE:
+                    return (byte) readByte();
+                case FLOAT:
+                    return Float.intBitsToFloat(readInt());
+                case DOUBLE:
+                    return Double.longBitsToDouble(readLong());
+                case STRING:
+                case STRING_REF:
+                    position--;
+                    return readString();
+                case LIST: {
+                    int size = readSize();
+                    List<Object> list = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        list.add(readValue());
+                    }
+                    return list;
+                }
+                case MAP: {
+                    int size = readSize();
+                    Map<Object, Object> map = new LinkedHashMap<>();
+                    for (int i = 0; i < size; i++) {
+                        Object key = readValue();
+                        map.put(key, readValue());
+                    }
+                    return map;
+                }
+                case OBJECT: {
+                    String alias = readString();
+                    int size = readSize();
+                    Map<String, Object> map = new LinkedHashMap<>();
+                    map.put(ConfigurationSerialization.SERIALIZED_TYPE_KEY, alias);
+                    for (int i = 0; i < size; i++) {
+                        String key = readString();
+                        map.put(key, readValue());
+                    }
+                    return ConfigurationSerialization.deserializeObject(map);
+                }
+                case ENUM: {
+                    String className = readString();
+                    String name = readString();
+                    try {
+                        Class<?> enumClass = Class.forName(className, true, MetadataCodec.class.getClassLoader());
+                        for (Object constant : enumClass.getEnumConstants()) {
+                            if (((Enum<?>) constant).name().equals(name)) {
+                                return constant;
+                            }
+                        }
+                    }
+                    catch (Exception e) {
+                        // the enum is no longer available
+                    }
+                    return null;
+                }
+                case BYTES:
+                    return readBytes();
+                case SERIALIZED: {
+                    byte[] bytes = readBytes();
+                    try (BukkitObjectInputStream ois = new BukkitObjectInputStream(new ByteArrayInputStream(bytes))) {
+                        return ois.readObject();
+                    }
+                    catch (ClassNotFoundException e) {
+                        throw new IOException(e);
+                    }
+                }
+                default:
+                    throw new IOException("Unknown value tag " + tag);
+            }
+        }
+    }
+}